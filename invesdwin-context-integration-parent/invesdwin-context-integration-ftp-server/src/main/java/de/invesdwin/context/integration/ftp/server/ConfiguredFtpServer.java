@@ -1,29 +1,47 @@
 package de.invesdwin.context.integration.ftp.server;
 
 import java.io.IOException;
-import java.util.Arrays;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
 import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
 import org.apache.ftpserver.FtpServer;
 import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ftplet.Authority;
 import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.Ftplet;
+import org.apache.ftpserver.listener.Listener;
 import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.listener.nio.NioListener;
 import org.apache.ftpserver.usermanager.Md5PasswordEncryptor;
 import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.usermanager.impl.TransferRatePermission;
 import org.apache.ftpserver.usermanager.impl.WritePermission;
+import org.apache.mina.transport.socket.SocketAcceptor;
 
 import de.invesdwin.context.integration.ftp.FtpClientProperties;
+import de.invesdwin.context.integration.ftp.server.internal.AgeIndexFtplet;
 import de.invesdwin.context.integration.ftp.server.internal.InMemoryUserManager;
+import de.invesdwin.context.integration.ws.filechannel.FileAgeIndex;
+import de.invesdwin.context.integration.ws.filechannel.LocalFileChannels;
 import de.invesdwin.context.log.Log;
 import de.invesdwin.util.assertions.Assertions;
 import de.invesdwin.util.lang.Files;
+import de.invesdwin.util.time.date.FTimeUnit;
 
 @ThreadSafe
 public class ConfiguredFtpServer implements FtpServer {
 
+    private static final String DEFAULT_LISTENER_NAME = "default";
+    //the mina acceptor is only created when the listener is started and it is not exposed
+    private static final String NIOLISTENER_ACCEPTOR_FIELD = "acceptor";
+
     private final Log log = new Log(this);
 
     @GuardedBy("this")
@@ -43,10 +61,19 @@ public class ConfiguredFtpServer implements FtpServer {
         connectionConfig.setMaxLogins(0); //unlimited logins
         serverFactory.setConnectionConfig(connectionConfig.createConnectionConfig());
 
+        final DataConnectionConfigurationFactory dataConnectionConfig = new DataConnectionConfigurationFactory();
+        dataConnectionConfig.setIdleTime(FtpServerProperties.DATA_CONNECTION_IDLE_TIMEOUT.intValue(FTimeUnit.SECONDS));
+        if (FtpServerProperties.PASSIVE_PORTS != null) {
+            dataConnectionConfig.setPassivePorts(FtpServerProperties.PASSIVE_PORTS);
+        }
+
         // replace the default listener port
         final ListenerFactory factory = new ListenerFactory();
         factory.setPort(FtpServerProperties.PORT);
-        serverFactory.addListener("default", factory.createListener());
+        factory.setIdleTimeout(FtpServerProperties.IDLE_TIMEOUT.intValue(FTimeUnit.SECONDS));
+        factory.setDataConnectionConfiguration(dataConnectionConfig.createDataConnectionConfiguration());
+        final Listener listener = factory.createListener();
+        serverFactory.addListener(DEFAULT_LISTENER_NAME, listener);
 
         // create user
         final InMemoryUserManager userManager = new InMemoryUserManager(new Md5PasswordEncryptor(), "admin_disabled");
@@ -60,7 +87,14 @@ public class ConfiguredFtpServer implements FtpServer {
             throw new RuntimeException(e);
         }
         user.setHomeDirectory(FtpServerProperties.WORKING_DIRECTORY.getAbsolutePath());
-        user.setAuthorities(Arrays.asList(new WritePermission()));
+        final List<Authority> authorities = new ArrayList<Authority>();
+        authorities.add(new WritePermission());
+        if (FtpServerProperties.MAX_UPLOAD_RATE != null || FtpServerProperties.MAX_DOWNLOAD_RATE != null) {
+            //0 means unlimited
+            authorities.add(new TransferRatePermission(nullToZero(FtpServerProperties.MAX_DOWNLOAD_RATE),
+                    nullToZero(FtpServerProperties.MAX_UPLOAD_RATE)));
+        }
+        user.setAuthorities(authorities);
         try {
             userManager.save(user);
         } catch (final FtpException e) {
@@ -68,6 +102,11 @@ public class ConfiguredFtpServer implements FtpServer {
         }
         serverFactory.setUserManager(userManager);
 
+        //remember written files so that old ones can be purged without walking the working directory
+        final FileAgeIndex ageIndex = FtpServerProperties.getAgeIndex();
+        serverFactory.setFtplets(Collections.<String, Ftplet> singletonMap(AgeIndexFtplet.class.getSimpleName(),
+                new AgeIndexFtplet(FtpServerProperties.WORKING_DIRECTORY, ageIndex)));
+
         ftpServer = serverFactory.createServer();
 
         try {
@@ -75,10 +114,44 @@ public class ConfiguredFtpServer implements FtpServer {
         } catch (final FtpException e) {
             throw new RuntimeException(e);
         }
+        if (FtpServerProperties.TCP_NODELAY) {
+            setTcpNoDelay(listener);
+        }
+        //clients in this process can work on the directory directly
+        LocalFileChannels.registerServerDirectory(FtpServerProperties.getServerBindUri(), ageIndex);
+    }
+
+    /**
+     * Each FTP transfer needs a few commands on the control connection, replies to them should not wait for delayed
+     * acknowledgements. The data connections are plain sockets that are created by FtpServer itself and keep the
+     * buffer sizes that the operating system tunes for them.
+     */
+    private void setTcpNoDelay(final Listener listener) {
+        if (!(listener instanceof NioListener)) {
+            return;
+        }
+        try {
+            final Field acceptorField = NioListener.class.getDeclaredField(NIOLISTENER_ACCEPTOR_FIELD);
+            acceptorField.setAccessible(true);
+            final SocketAcceptor acceptor = (SocketAcceptor) acceptorField.get(listener);
+            //applies to all sessions that are accepted from now on
+            acceptor.getSessionConfig().setTcpNoDelay(true);
+        } catch (final NoSuchFieldException | IllegalAccessException e) {
+            log.warn("Unable to enable TCP_NODELAY for the ftp control connections: %s", e.toString());
+        }
+    }
+
+    private static int nullToZero(final Integer value) {
+        if (value == null) {
+            return 0;
+        } else {
+            return value;
+        }
     }
 
     @Override
     public synchronized void stop() {
+        LocalFileChannels.unregisterServerDirectory(FtpServerProperties.getServerBindUri());
         if (ftpServer != null) {
             ftpServer.stop();
         }
@@ -7,6 +7,7 @@ import javax.annotation.concurrent.Immutable;
 
 import de.invesdwin.context.ContextProperties;
 import de.invesdwin.context.integration.IntegrationProperties;
+import de.invesdwin.context.integration.ws.filechannel.FileAgeIndex;
 import de.invesdwin.context.system.properties.SystemProperties;
 import de.invesdwin.util.lang.uri.URIs;
 import de.invesdwin.util.time.duration.Duration;
@@ -16,23 +17,60 @@ public final class FtpServerProperties {
 
     public static final boolean STARTUP_ENABLED;
     public static final File WORKING_DIRECTORY;
+    public static final File AGE_INDEX_DIRECTORY;
     public static final Integer PORT;
     public static final int MAX_THREADS;
+    public static final Duration IDLE_TIMEOUT;
+    public static final Duration DATA_CONNECTION_IDLE_TIMEOUT;
+    public static final String PASSIVE_PORTS;
+    public static final boolean TCP_NODELAY;
+    public static final Integer MAX_UPLOAD_RATE;
+    public static final Integer MAX_DOWNLOAD_RATE;
     public static final Duration PURGE_FILES_OLDER_THAN_DURATION;
+    public static final Long QUOTA_MAX_BYTES;
 
     private static final String KEY_PURGE_FILES_OLDER_THAN_DURATION = "PURGE_FILES_OLDER_THAN_DURATION";
+    private static final String KEY_QUOTA_MAX_BYTES = "QUOTA_MAX_BYTES";
+    private static final String KEY_PASSIVE_PORTS = "PASSIVE_PORTS";
+    private static final String KEY_MAX_UPLOAD_RATE = "MAX_UPLOAD_RATE";
+    private static final String KEY_MAX_DOWNLOAD_RATE = "MAX_DOWNLOAD_RATE";
 
     static {
         final SystemProperties systemProperties = new SystemProperties(FtpServerProperties.class);
         STARTUP_ENABLED = systemProperties.getBoolean("STARTUP_ENABLED");
         PORT = systemProperties.getPort("PORT", true);
         MAX_THREADS = systemProperties.getInteger("MAX_THREADS");
+        IDLE_TIMEOUT = systemProperties.getDuration("IDLE_TIMEOUT");
+        DATA_CONNECTION_IDLE_TIMEOUT = systemProperties.getDuration("DATA_CONNECTION_IDLE_TIMEOUT");
+        if (systemProperties.containsValue(KEY_PASSIVE_PORTS)) {
+            PASSIVE_PORTS = systemProperties.getString(KEY_PASSIVE_PORTS);
+        } else {
+            PASSIVE_PORTS = null;
+        }
+        TCP_NODELAY = systemProperties.getBoolean("TCP_NODELAY");
+        if (systemProperties.containsValue(KEY_MAX_UPLOAD_RATE)) {
+            MAX_UPLOAD_RATE = systemProperties.getInteger(KEY_MAX_UPLOAD_RATE);
+        } else {
+            MAX_UPLOAD_RATE = null;
+        }
+        if (systemProperties.containsValue(KEY_MAX_DOWNLOAD_RATE)) {
+            MAX_DOWNLOAD_RATE = systemProperties.getInteger(KEY_MAX_DOWNLOAD_RATE);
+        } else {
+            MAX_DOWNLOAD_RATE = null;
+        }
         if (systemProperties.containsValue(KEY_PURGE_FILES_OLDER_THAN_DURATION)) {
             PURGE_FILES_OLDER_THAN_DURATION = systemProperties.getDuration(KEY_PURGE_FILES_OLDER_THAN_DURATION);
         } else {
             PURGE_FILES_OLDER_THAN_DURATION = null;
         }
+        if (systemProperties.containsValue(KEY_QUOTA_MAX_BYTES)) {
+            QUOTA_MAX_BYTES = systemProperties.getLong(KEY_QUOTA_MAX_BYTES);
+        } else {
+            QUOTA_MAX_BYTES = null;
+        }
         WORKING_DIRECTORY = new File(ContextProperties.getCacheDirectory(), ConfiguredFtpServer.class.getSimpleName());
+        AGE_INDEX_DIRECTORY = new File(ContextProperties.getCacheDirectory(),
+                ConfiguredFtpServer.class.getSimpleName() + "_" + FileAgeIndex.class.getSimpleName());
     }
 
     private FtpServerProperties() {}
@@ -41,4 +79,10 @@ public final class FtpServerProperties {
         return URIs.asUri("p://" + IntegrationProperties.HOSTNAME + ":" + PORT);
     }
 
+    public static FileAgeIndex getAgeIndex() {
+        final FileAgeIndex ageIndex = FileAgeIndex.getInstance(WORKING_DIRECTORY, AGE_INDEX_DIRECTORY);
+        ageIndex.setMaxBytes(QUOTA_MAX_BYTES);
+        return ageIndex;
+    }
+
 }
@@ -0,0 +1,142 @@
+package de.invesdwin.context.integration.ftp.server.internal;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.ftpserver.ftplet.DefaultFtplet;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ftplet.FtpletResult;
+
+import de.invesdwin.context.integration.ws.filechannel.FileAgeIndex;
+
+/**
+ * Adds uploaded and renamed files to the age index and records downloads and deletions for the quota. The home
+ * directory of the user is the working directory, thus the virtual path of a file is relative to it.
+ */
+@ThreadSafe
+public class AgeIndexFtplet extends DefaultFtplet {
+
+    //the length before a command is remembered in the session since a session handles one command at a time
+    private static final String PREVIOUS_LENGTH_ATTRIBUTE = AgeIndexFtplet.class.getName() + ".previousLength";
+
+    private final File homeDirectory;
+    private final FileAgeIndex ageIndex;
+
+    public AgeIndexFtplet(final File homeDirectory, final FileAgeIndex ageIndex) {
+        this.homeDirectory = homeDirectory;
+        this.ageIndex = ageIndex;
+    }
+
+    @Override
+    public FtpletResult onUploadStart(final FtpSession session, final FtpRequest request)
+            throws FtpException, IOException {
+        rememberLength(session, request);
+        return super.onUploadStart(session, request);
+    }
+
+    @Override
+    public FtpletResult onUploadEnd(final FtpSession session, final FtpRequest request)
+            throws FtpException, IOException {
+        add(session, request);
+        return super.onUploadEnd(session, request);
+    }
+
+    @Override
+    public FtpletResult onAppendStart(final FtpSession session, final FtpRequest request)
+            throws FtpException, IOException {
+        rememberLength(session, request);
+        return super.onAppendStart(session, request);
+    }
+
+    @Override
+    public FtpletResult onAppendEnd(final FtpSession session, final FtpRequest request)
+            throws FtpException, IOException {
+        add(session, request);
+        return super.onAppendEnd(session, request);
+    }
+
+    /**
+     * The renamed file keeps its modification time, it is indexed again to be found under the new name.
+     */
+    @Override
+    public FtpletResult onRenameEnd(final FtpSession session, final FtpRequest request)
+            throws FtpException, IOException {
+        final File file = getFile(session, request);
+        if (file != null) {
+            //the size did not change
+            ageIndex.add(file, file.length());
+        }
+        return super.onRenameEnd(session, request);
+    }
+
+    @Override
+    public FtpletResult onDownloadStart(final FtpSession session, final FtpRequest request)
+            throws FtpException, IOException {
+        final File file = getFile(session, request);
+        if (file != null) {
+            ageIndex.touch(file);
+        }
+        return super.onDownloadStart(session, request);
+    }
+
+    @Override
+    public FtpletResult onDeleteStart(final FtpSession session, final FtpRequest request)
+            throws FtpException, IOException {
+        rememberLength(session, request);
+        return super.onDeleteStart(session, request);
+    }
+
+    @Override
+    public FtpletResult onDeleteEnd(final FtpSession session, final FtpRequest request)
+            throws FtpException, IOException {
+        final Long previousLength = takePreviousLength(session);
+        if (previousLength != null && previousLength > 0) {
+            ageIndex.addUsedBytes(-previousLength);
+        }
+        return super.onDeleteEnd(session, request);
+    }
+
+    private void rememberLength(final FtpSession session, final FtpRequest request) throws FtpException {
+        final File file = getFile(session, request);
+        if (file != null) {
+            session.setAttribute(PREVIOUS_LENGTH_ATTRIBUTE, file.length());
+        } else {
+            session.removeAttribute(PREVIOUS_LENGTH_ATTRIBUTE);
+        }
+    }
+
+    private Long takePreviousLength(final FtpSession session) {
+        final Long previousLength = (Long) session.getAttribute(PREVIOUS_LENGTH_ATTRIBUTE);
+        session.removeAttribute(PREVIOUS_LENGTH_ATTRIBUTE);
+        return previousLength;
+    }
+
+    private void add(final FtpSession session, final FtpRequest request) throws FtpException {
+        final Long previousLength = takePreviousLength(session);
+        final File file = getFile(session, request);
+        if (file != null && file.isFile()) {
+            if (previousLength != null) {
+                ageIndex.add(file, previousLength);
+            } else {
+                ageIndex.add(file);
+            }
+        }
+    }
+
+    private File getFile(final FtpSession session, final FtpRequest request) throws FtpException {
+        if (!request.hasArgument()) {
+            return null;
+        }
+        final FtpFile file = session.getFileSystemView().getFile(request.getArgument());
+        if (file == null) {
+            return null;
+        }
+        return new File(homeDirectory, file.getAbsolutePath());
+    }
+
+}
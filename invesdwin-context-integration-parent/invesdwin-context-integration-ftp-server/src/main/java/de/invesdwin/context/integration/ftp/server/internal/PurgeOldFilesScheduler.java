@@ -8,20 +8,55 @@ import org.springframework.scheduling.annotation.Scheduled;
 import de.invesdwin.aspects.annotation.SkipParallelExecution;
 import de.invesdwin.context.beans.hook.IStartupHook;
 import de.invesdwin.context.integration.ftp.server.FtpServerProperties;
-import de.invesdwin.util.lang.Files;
+import de.invesdwin.context.integration.ws.filechannel.FileAgeIndex;
+import de.invesdwin.context.integration.ws.filechannel.FileAgeIndex.PurgeStatistics;
+import de.invesdwin.context.log.Log;
+import de.invesdwin.util.time.date.FDate;
 
 @Named
 @NotThreadSafe
 public class PurgeOldFilesScheduler implements IStartupHook {
 
+    private final Log log = new Log(this);
+
+    /**
+     * Only the expired hour buckets of the age index are read, so this can run often without walking the working
+     * directory. The quota is enforced on each write already, this is just a fallback.
+     */
     @SkipParallelExecution
-    @Scheduled(cron = "0 0 0 * * ?") //check every day
+    @Scheduled(cron = "0 */10 * * * ?") //check every 10 minutes
     public void purgeOldFiles() {
-        if (FtpServerProperties.PURGE_FILES_OLDER_THAN_DURATION == null
-                || !FtpServerProperties.WORKING_DIRECTORY.exists()) {
+        final boolean purgeEnabled = FtpServerProperties.PURGE_FILES_OLDER_THAN_DURATION != null;
+        final boolean quotaEnabled = FtpServerProperties.QUOTA_MAX_BYTES != null;
+        if (!purgeEnabled && !quotaEnabled || !FtpServerProperties.WORKING_DIRECTORY.exists()) {
             return;
         }
-        Files.purgeOldFiles(FtpServerProperties.WORKING_DIRECTORY, FtpServerProperties.PURGE_FILES_OLDER_THAN_DURATION);
+        final FileAgeIndex ageIndex = FtpServerProperties.getAgeIndex();
+        if (!ageIndex.isComplete()) {
+            //files from before the index existed need to be indexed once
+            ageIndex.rebuild();
+        } else if (quotaEnabled && ageIndex.getUsedBytes() < 0) {
+            //the used bytes are not persisted
+            ageIndex.recount();
+        }
+        if (purgeEnabled) {
+            final FDate threshold = new FDate().subtract(FtpServerProperties.PURGE_FILES_OLDER_THAN_DURATION);
+            final PurgeStatistics statistics = ageIndex.purgeOlderThan(threshold);
+            if (statistics.getFiles() > 0) {
+                log.info("Purged %s files with %s bytes from %s buckets in %s (total %s files with %s bytes)",
+                        statistics.getFiles(), statistics.getBytes(), statistics.getBuckets(),
+                        statistics.getDuration(), ageIndex.getPurgedFilesCount(), ageIndex.getPurgedBytesCount());
+            }
+        }
+        if (quotaEnabled) {
+            final PurgeStatistics statistics = ageIndex.evictToQuota();
+            if (statistics.getFiles() > 0) {
+                log.info("Evicted %s files with %s bytes from %s buckets in %s for the quota of %s bytes (total %s "
+                        + "files with %s bytes)", statistics.getFiles(), statistics.getBytes(),
+                        statistics.getBuckets(), statistics.getDuration(), FtpServerProperties.QUOTA_MAX_BYTES,
+                        ageIndex.getEvictedFilesCount(), ageIndex.getEvictedBytesCount());
+            }
+        }
     }
 
     @Override
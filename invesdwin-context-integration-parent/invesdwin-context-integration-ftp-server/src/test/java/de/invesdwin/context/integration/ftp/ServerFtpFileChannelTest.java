@@ -4,8 +4,13 @@ import java.net.URI;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
+import org.junit.Test;
+
+import de.invesdwin.context.integration.filechannel.IFileChannel;
 import de.invesdwin.context.integration.ftp.server.FtpServerProperties;
 import de.invesdwin.context.integration.ftp.server.test.FtpServerTest;
+import de.invesdwin.context.integration.ws.filechannel.LocalFileChannel;
+import de.invesdwin.util.assertions.Assertions;
 import de.invesdwin.util.lang.uri.URIs;
 
 @FtpServerTest
@@ -17,4 +22,26 @@ public class ServerFtpFileChannelTest extends FtpFileChannelTest {
         return URIs.asUri("p://localhost:" + FtpServerProperties.PORT);
     }
 
+    @Test
+    public void testLocalFileChannel() {
+        final URI destination = getDestination();
+        final IFileChannel<?> localChannel = FtpFileChannel.newFileChannel(destination,
+                ServerFtpFileChannelTest.class.getSimpleName());
+        //the server runs in this process
+        Assertions.assertThat(localChannel).isInstanceOf(LocalFileChannel.class);
+        localChannel.connect();
+        localChannel.createUniqueFile();
+        final byte[] write = "hello world".getBytes();
+        localChannel.upload(write);
+        final FtpFileChannel channel = new FtpFileChannel(destination,
+                ServerFtpFileChannelTest.class.getSimpleName());
+        channel.setFilename(localChannel.getFilename());
+        channel.connect();
+        Assertions.assertThat(channel.download()).isEqualTo(write);
+        channel.delete();
+        Assertions.checkFalse(localChannel.exists());
+        channel.close();
+        localChannel.close();
+    }
+
 }
@@ -0,0 +1,82 @@
+package de.invesdwin.context.integration.ftp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Collects the outcome of each file of a batch operation. A failing file does not stop the batch, instead its error is
+ * recorded here. Downloads of missing files succeed with a null value, just like download() does.
+ */
+@ThreadSafe
+public class FtpBatchResult<V> {
+
+    @GuardedBy("this")
+    private final Map<String, V> succeeded = new LinkedHashMap<>();
+    @GuardedBy("this")
+    private final Map<String, Throwable> failed = new LinkedHashMap<>();
+
+    synchronized void putSucceeded(final String filename, final V value) {
+        succeeded.put(filename, value);
+    }
+
+    synchronized void putFailed(final String filename, final Throwable cause) {
+        failed.put(filename, cause);
+    }
+
+    public synchronized Map<String, V> getSucceeded() {
+        return new LinkedHashMap<>(succeeded);
+    }
+
+    public synchronized Map<String, Throwable> getFailed() {
+        return new LinkedHashMap<>(failed);
+    }
+
+    public synchronized boolean isSucceeded(final String filename) {
+        return succeeded.containsKey(filename);
+    }
+
+    public synchronized V getValue(final String filename) {
+        return succeeded.get(filename);
+    }
+
+    public synchronized Throwable getFailure(final String filename) {
+        return failed.get(filename);
+    }
+
+    public synchronized boolean isSuccess() {
+        return failed.isEmpty();
+    }
+
+    public synchronized int size() {
+        return succeeded.size() + failed.size();
+    }
+
+    /**
+     * Throws the first failure with the others attached as suppressed exceptions.
+     */
+    public synchronized FtpBatchResult<V> checkSuccess() {
+        if (failed.isEmpty()) {
+            return this;
+        }
+        RuntimeException exception = null;
+        for (final Map.Entry<String, Throwable> e : failed.entrySet()) {
+            final RuntimeException cause = new RuntimeException("Batch operation failed for [" + e.getKey() + "]",
+                    e.getValue());
+            if (exception == null) {
+                exception = cause;
+            } else {
+                exception.addSuppressed(cause);
+            }
+        }
+        throw exception;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return getClass().getSimpleName() + "[succeeded=" + succeeded.size() + ", failed=" + failed.keySet() + "]";
+    }
+
+}
@@ -14,14 +14,41 @@ public final class FtpClientProperties {
     public static final File TEMP_DIRECTORY = new File(ContextProperties.TEMP_DIRECTORY,
             FtpFileChannel.class.getSimpleName());
     public static final Duration PURGE_TEMP_FILES_OLDER_THAN_DURATION = Duration.ONE_DAY;
+    public static final int STREAMING_BUFFER_SIZE = 64 * 1024;
+    public static final String COMPRESSION_FILE_SUFFIX = ".lz4";
     public static final String SERVICE_NAME = "invesdwin-context-integration-ftp-server";
     public static final String USERNAME;
     public static final String PASSWORD;
+    public static final int ASYNC_EXECUTOR_THREADS;
+    public static final int CONNECTION_POOL_MAX_CONNECTIONS_PER_SERVER;
+    public static final Duration CONNECTION_POOL_IDLE_TIMEOUT;
+    public static final boolean COMPRESSION_ENABLED;
+    public static final boolean RESUME_ENABLED;
+    public static final boolean DIRECTORY_CACHE_ENABLED;
+    public static final Duration DIRECTORY_CACHE_TTL;
+    public static final int SEGMENTED_TRANSFER_SEGMENTS;
+    public static final int SEGMENTED_TRANSFER_MIN_SEGMENT_SIZE;
+    public static final int BATCH_CONNECTIONS;
+    public static final boolean DOWNLOAD_CACHE_ENABLED;
+    public static final long DOWNLOAD_CACHE_MAX_SIZE;
 
     static {
         final SystemProperties systemProperties = new SystemProperties(FtpClientProperties.class);
         USERNAME = systemProperties.getString("USERNAME");
         PASSWORD = systemProperties.getStringWithSecurityWarning("PASSWORD", "invesdwin");
+        ASYNC_EXECUTOR_THREADS = systemProperties.getInteger("ASYNC_EXECUTOR_THREADS");
+        CONNECTION_POOL_MAX_CONNECTIONS_PER_SERVER = systemProperties
+                .getInteger("CONNECTION_POOL_MAX_CONNECTIONS_PER_SERVER");
+        CONNECTION_POOL_IDLE_TIMEOUT = systemProperties.getDuration("CONNECTION_POOL_IDLE_TIMEOUT");
+        COMPRESSION_ENABLED = systemProperties.getBoolean("COMPRESSION_ENABLED");
+        RESUME_ENABLED = systemProperties.getBoolean("RESUME_ENABLED");
+        DIRECTORY_CACHE_ENABLED = systemProperties.getBoolean("DIRECTORY_CACHE_ENABLED");
+        DIRECTORY_CACHE_TTL = systemProperties.getDuration("DIRECTORY_CACHE_TTL");
+        SEGMENTED_TRANSFER_SEGMENTS = systemProperties.getInteger("SEGMENTED_TRANSFER_SEGMENTS");
+        SEGMENTED_TRANSFER_MIN_SEGMENT_SIZE = systemProperties.getInteger("SEGMENTED_TRANSFER_MIN_SEGMENT_SIZE");
+        BATCH_CONNECTIONS = systemProperties.getInteger("BATCH_CONNECTIONS");
+        DOWNLOAD_CACHE_ENABLED = systemProperties.getBoolean("DOWNLOAD_CACHE_ENABLED");
+        DOWNLOAD_CACHE_MAX_SIZE = systemProperties.getLong("DOWNLOAD_CACHE_MAX_SIZE");
     }
 
     private FtpClientProperties() {}
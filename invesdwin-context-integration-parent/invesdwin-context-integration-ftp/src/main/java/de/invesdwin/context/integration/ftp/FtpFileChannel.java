@@ -4,27 +4,58 @@ import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
 import org.apache.commons.io.IOUtils;
 
-import de.invesdwin.context.ContextProperties;
 import de.invesdwin.context.integration.filechannel.IFileChannel;
+import de.invesdwin.context.integration.ftp.internal.AFtpResumableTransfer;
+import de.invesdwin.context.integration.ftp.internal.FtpDownloadInputStream;
+import de.invesdwin.context.integration.ftp.internal.FtpSegmentedTransfer;
+import de.invesdwin.context.integration.ftp.internal.FtpUploadOutputStream;
+import de.invesdwin.context.integration.ftp.internal.IFtpConnectionProvider;
+import de.invesdwin.context.integration.ftp.pool.FtpConnection;
+import de.invesdwin.context.integration.ftp.pool.FtpConnectionKey;
+import de.invesdwin.context.integration.ftp.pool.FtpConnectionPool;
+import de.invesdwin.context.integration.streams.LZ4Streams;
+import de.invesdwin.context.integration.ws.filechannel.DirectoryCache;
+import de.invesdwin.context.integration.ws.filechannel.DownloadCache;
+import de.invesdwin.context.integration.ws.filechannel.LocalFileChannels;
+import de.invesdwin.context.integration.ws.filechannel.LocalTransfers;
 import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.concurrent.Executors;
+import de.invesdwin.util.concurrent.WrappedExecutorService;
 import de.invesdwin.util.lang.Files;
 import de.invesdwin.util.lang.Objects;
 import de.invesdwin.util.lang.Strings;
@@ -36,15 +67,23 @@ import de.invesdwin.util.streams.ADelegateInputStream;
 import de.invesdwin.util.streams.ADelegateOutputStream;
 import de.invesdwin.util.streams.DeletingFileInputStream;
 import de.invesdwin.util.time.date.FDate;
-import de.invesdwin.util.time.date.FTimeUnit;
 import it.sauronsoftware.ftp4j.FTPClient;
 import it.sauronsoftware.ftp4j.FTPCodes;
 import it.sauronsoftware.ftp4j.FTPException;
 import it.sauronsoftware.ftp4j.FTPFile;
-import it.sauronsoftware.ftp4j.FTPIllegalReplyException;
 
 @ThreadSafe
-public class FtpFileChannel implements IFileChannel<FTPFile> {
+public class FtpFileChannel implements IFileChannel<FTPFile>, Cloneable {
+
+    public static final DownloadCache DOWNLOAD_CACHE = new DownloadCache(
+            new File(FtpClientProperties.TEMP_DIRECTORY, "FtpDownloadCache"),
+            FtpClientProperties.DOWNLOAD_CACHE_MAX_SIZE);
+    public static final DirectoryCache<FTPFile> DIRECTORY_CACHE = new DirectoryCache<>(
+            FtpClientProperties.DIRECTORY_CACHE_TTL);
+    private static final WrappedExecutorService TRANSFER_EXECUTOR = Executors
+            .newCachedThreadPool(FtpFileChannel.class.getSimpleName() + "_transfer");
+    private static final WrappedExecutorService ASYNC_EXECUTOR = Executors.newFixedThreadPool(
+            FtpFileChannel.class.getSimpleName() + "_async", FtpClientProperties.ASYNC_EXECUTOR_THREADS);
 
     private final URI serverUri;
     private final String directory;
@@ -52,6 +91,27 @@ public class FtpFileChannel implements IFileChannel<FTPFile> {
     private String filename;
     @GuardedBy("this")
     private byte[] emptyFileContent = Bytes.EMPTY_ARRAY;
+    @GuardedBy("this")
+    private boolean downloadTempFileEnabled = false;
+    @GuardedBy("this")
+    private boolean uploadTempFileEnabled = false;
+    @GuardedBy("this")
+    private boolean compressionEnabled = FtpClientProperties.COMPRESSION_ENABLED;
+    @GuardedBy("this")
+    private boolean directoryCacheEnabled = FtpClientProperties.DIRECTORY_CACHE_ENABLED;
+    @GuardedBy("this")
+    private boolean downloadCacheEnabled = FtpClientProperties.DOWNLOAD_CACHE_ENABLED;
+    @GuardedBy("this")
+    private boolean resumeEnabled = FtpClientProperties.RESUME_ENABLED;
+    @GuardedBy("this")
+    private int transferSegments = FtpClientProperties.SEGMENTED_TRANSFER_SEGMENTS;
+    @GuardedBy("this")
+    private int transferMinSegmentSize = FtpClientProperties.SEGMENTED_TRANSFER_MIN_SEGMENT_SIZE;
+    @GuardedBy("this")
+    private int batchConnections = FtpClientProperties.BATCH_CONNECTIONS;
+
+    @GuardedBy("this")
+    private transient ByteBuffer reusableDownloadBuffer;
 
     @GuardedBy("this")
     private transient FtpFileChannelFinalizer finalizer;
@@ -65,6 +125,19 @@ public class FtpFileChannel implements IFileChannel<FTPFile> {
                 "/");
     }
 
+    /**
+     * Works on the directory directly when the destination points to a server in this process or uses the "memory" or
+     * "file" scheme, see LocalFileChannels. Otherwise a FtpFileChannel is returned.
+     */
+    public static IFileChannel<?> newFileChannel(final URI serverUri, final String directory) {
+        final IFileChannel<?> localFileChannel = LocalFileChannels.newLocalFileChannel(serverUri, directory);
+        if (localFileChannel != null) {
+            return localFileChannel;
+        } else {
+            return new FtpFileChannel(serverUri, directory);
+        }
+    }
+
     public URI getServerUri() {
         return serverUri;
     }
@@ -97,6 +170,117 @@ public class FtpFileChannel implements IFileChannel<FTPFile> {
         this.emptyFileContent = emptyFileContent;
     }
 
+    public synchronized boolean isDownloadTempFileEnabled() {
+        return downloadTempFileEnabled;
+    }
+
+    /**
+     * Enable this to download into getLocalTempFile() first instead of streaming from the data connection.
+     */
+    public synchronized void setDownloadTempFileEnabled(final boolean downloadTempFileEnabled) {
+        this.downloadTempFileEnabled = downloadTempFileEnabled;
+    }
+
+    public synchronized boolean isUploadTempFileEnabled() {
+        return uploadTempFileEnabled;
+    }
+
+    /**
+     * Enable this to write uploadOutputStream() into getLocalTempFile() first instead of streaming to the data
+     * connection.
+     */
+    public synchronized void setUploadTempFileEnabled(final boolean uploadTempFileEnabled) {
+        this.uploadTempFileEnabled = uploadTempFileEnabled;
+    }
+
+    public synchronized boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    /**
+     * When enabled, transfers are compressed via MODE Z if the server supports it. Otherwise the content is stored with
+     * LZ4 framing under the filename plus FtpClientProperties.COMPRESSION_FILE_SUFFIX, in which case size() returns the
+     * compressed size. Readers need to enable compression as well. Compressed transfers are neither segmented nor
+     * resumed.
+     */
+    public synchronized void setCompressionEnabled(final boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+        if (isConnected() && finalizer.connection != null) {
+            finalizer.connection.getFtpClient().setCompressionEnabled(compressionEnabled);
+        }
+    }
+
+    public synchronized boolean isDirectoryCacheEnabled() {
+        return directoryCacheEnabled;
+    }
+
+    /**
+     * When enabled, the listing of the directory is shared between channels for FtpClientProperties.DIRECTORY_CACHE_TTL
+     * and used to answer metadata lookups. Changes by other clients only become visible after the listing expired.
+     */
+    public synchronized void setDirectoryCacheEnabled(final boolean directoryCacheEnabled) {
+        this.directoryCacheEnabled = directoryCacheEnabled;
+    }
+
+    public synchronized boolean isDownloadCacheEnabled() {
+        return downloadCacheEnabled;
+    }
+
+    /**
+     * When enabled, download() and downloadInputStream() keep the content in a local disk cache that is shared between
+     * channels. As long as size and modification time of the remote file stay the same, the content is read from disk
+     * after a single metadata lookup, which can also be answered by the directory cache.
+     */
+    public synchronized void setDownloadCacheEnabled(final boolean downloadCacheEnabled) {
+        this.downloadCacheEnabled = downloadCacheEnabled;
+    }
+
+    public synchronized boolean isResumeEnabled() {
+        return resumeEnabled;
+    }
+
+    /**
+     * When enabled, upload(File), upload(InputStream), download() and downloadInputStream() continue a transfer that
+     * broke in the middle from the last acknowledged offset instead of starting from zero. This requires the server to
+     * support REST. Streams for upload(InputStream) can only be resumed for a FileInputStream or ByteArrayInputStream.
+     * The streaming uploadOutputStream() is not resumable.
+     */
+    public synchronized void setResumeEnabled(final boolean resumeEnabled) {
+        this.resumeEnabled = resumeEnabled;
+    }
+
+    public synchronized int getTransferSegments() {
+        return transferSegments;
+    }
+
+    /**
+     * Files that are larger than getTransferMinSegmentSize() multiplied by this value are split into this many ranges
+     * that are transferred in parallel over separate connections by upload(File), download() and the temp file
+     * download. This requires the server to support REST.
+     */
+    public synchronized void setTransferSegments(final int transferSegments) {
+        this.transferSegments = transferSegments;
+    }
+
+    public synchronized int getTransferMinSegmentSize() {
+        return transferMinSegmentSize;
+    }
+
+    public synchronized void setTransferMinSegmentSize(final int transferMinSegmentSize) {
+        this.transferMinSegmentSize = transferMinSegmentSize;
+    }
+
+    public synchronized int getBatchConnections() {
+        return batchConnections;
+    }
+
+    /**
+     * The number of connections that the batch operations use in parallel.
+     */
+    public synchronized void setBatchConnections(final int batchConnections) {
+        this.batchConnections = batchConnections;
+    }
+
     @Override
     public synchronized void createUniqueFile() {
         createUniqueFile(FtpFileChannel.class.getSimpleName() + "_", ".channel");
@@ -116,57 +300,147 @@ public class FtpFileChannel implements IFileChannel<FTPFile> {
         }
     }
 
+    /**
+     * With LZ4 framing the compressed content is stored with a file suffix, so that it does not get mixed up with
+     * uncompressed content.
+     */
+    private String getRemoteFilename() {
+        if (isLz4Framing()) {
+            return getFilename() + FtpClientProperties.COMPRESSION_FILE_SUFFIX;
+        } else {
+            return getFilename();
+        }
+    }
+
+    /**
+     * MODE Z is preferred since it only compresses on the wire, so the stored content is the same as without
+     * compression.
+     */
+    private boolean isLz4Framing() {
+        return compressionEnabled && !getConnection().getFtpClient().isCompressionSupported();
+    }
+
     public synchronized FTPClient getFtpClient() {
         assertConnected();
-        return finalizer.ftpClient;
+        return getConnection().getFtpClient();
     }
 
     @Override
     public synchronized void connect() {
         try {
-            if (finalizer == null) {
-                finalizer = new FtpFileChannelFinalizer();
-            }
-            if (finalizer.ftpClient != null && (!finalizer.ftpClient.isConnected() || !isAuthenticated())) {
+            if (finalizer != null && finalizer.connection != null && finalizer.connection.isBroken()) {
                 close();
             }
-            Assertions.checkNull(finalizer.ftpClient, "Already connected");
-            finalizer.ftpClient = new FTPClient();
-            //be a bit more firewall friendly
-            finalizer.ftpClient.setPassive(true);
-
-            final int timeoutSeconds = ContextProperties.DEFAULT_NETWORK_TIMEOUT.intValue(FTimeUnit.SECONDS);
-            finalizer.ftpClient.setAutoNoopTimeout(timeoutSeconds * FTimeUnit.MILLISECONDS_IN_SECOND);
-            finalizer.ftpClient.getConnector().setConnectionTimeout(timeoutSeconds);
-            finalizer.ftpClient.getConnector().setReadTimeout(timeoutSeconds);
-            finalizer.ftpClient.getConnector().setCloseTimeout(timeoutSeconds);
-            finalizer.ftpClient.setType(FTPClient.TYPE_BINARY);
-            finalizer.ftpClient.connect(serverUri.getHost(), serverUri.getPort());
+            //the session might be handed over to a stream at the moment
+            Assertions.checkNull(finalizer, "Already connected");
+            finalizer = new FtpFileChannelFinalizer();
+            finalizer.connection = borrowConnection();
             finalizer.register(this);
-            login();
-            createAndChangeDirectory();
         } catch (final Throwable e) {
             close();
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Sessions are taken from the FtpConnectionPool, so that consecutive channels to the same server can skip the
+     * connect and login roundtrips.
+     */
+    private FtpConnection borrowConnection() throws Exception {
+        final FtpConnection connection = FtpConnectionPool.INSTANCE
+                .borrow(new FtpConnectionKey(serverUri, getUsername(), getPassword()));
+        try {
+            //only has an effect when the server supports MODE Z
+            connection.getFtpClient().setCompressionEnabled(compressionEnabled);
+            changeDirectory(connection);
+        } catch (final Throwable t) {
+            connection.markBroken();
+            connection.close();
+            throw t;
+        }
+        return connection;
+    }
+
+    /**
+     * Borrows a session again when the previous one was handed over to a stream or given back to the pool.
+     */
+    private FtpConnection getConnection() {
+        if (finalizer.connection == null) {
+            try {
+                finalizer.connection = borrowConnection();
+            } catch (final Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return finalizer.connection;
+    }
+
+    /**
+     * Streams take over the session of this channel instead of borrowing a second one, otherwise channels that hold
+     * all sessions of the pool would wait for each other. The stream gives the session back to the pool when it is
+     * closed and this channel borrows one again when it is used in the meantime or afterwards.
+     */
+    private FtpConnection handOverConnection() {
+        final FtpConnection connection = getConnection();
+        finalizer.connection = null;
+        return connection;
+    }
+
+    /**
+     * Segmented transfers and batch operations borrow their own sessions, thus the one of this channel is given back
+     * to the pool for them.
+     */
+    private void releaseConnection() {
+        if (finalizer.connection != null) {
+            finalizer.connection.close();
+            finalizer.connection = null;
+        }
+    }
+
+    private IFtpConnectionProvider newConnectionProvider() {
+        return new IFtpConnectionProvider() {
+            @Override
+            public FtpConnection borrowConnection() throws Exception {
+                return FtpFileChannel.this.borrowConnection();
+            }
+        };
+    }
+
     /**
      * Can be overridden to change the login credentials. We don't use properties for this since it would be wise to
      * transfer them over the wire with this object in serialized form.
      */
-    protected synchronized void login() throws IOException, FTPIllegalReplyException, FTPException {
-        finalizer.ftpClient.login(FtpClientProperties.USERNAME, FtpClientProperties.PASSWORD);
+    protected String getUsername() {
+        return FtpClientProperties.USERNAME;
+    }
+
+    protected String getPassword() {
+        return FtpClientProperties.PASSWORD;
     }
 
     protected synchronized boolean isAuthenticated() {
-        return finalizer.ftpClient.isAuthenticated();
+        return getConnection().getFtpClient().isAuthenticated();
+    }
+
+    private void changeDirectory(final FtpConnection connection) throws Exception {
+        if (directory.equals(connection.getCurrentDirectory())) {
+            return;
+        }
+        //pooled sessions might still point to the directory of a different channel
+        connection.setCurrentDirectory(null);
+        try {
+            connection.getFtpClient().changeDirectory(directory);
+        } catch (final FTPException e) {
+            createAndChangeDirectory(connection.getFtpClient());
+        }
+        connection.setCurrentDirectory(directory);
     }
 
     /**
      * http://www.codejava.net/java-se/networking/ftp/creating-nested-directory-structure-on-a-ftp-server
      */
-    private synchronized void createAndChangeDirectory() {
+    private void createAndChangeDirectory(final FTPClient ftpClient) throws Exception {
+        ftpClient.changeDirectory("/");
         final String[] pathElements = directory.split("/");
         final StringBuilder prevPathElements = new StringBuilder("/");
         if (pathElements != null && pathElements.length > 0) {
@@ -174,7 +448,7 @@ public class FtpFileChannel implements IFileChannel<FTPFile> {
                 if (singleDir.length() > 0) {
                     prevPathElements.append(singleDir).append("/");
                     try {
-                        createAndChangeSingleDirectory(singleDir);
+                        createAndChangeSingleDirectory(ftpClient, singleDir);
                     } catch (final Throwable t) {
                         throw new RuntimeException("At: " + prevPathElements, t);
                     }
@@ -183,19 +457,19 @@ public class FtpFileChannel implements IFileChannel<FTPFile> {
         }
     }
 
-    private synchronized void createAndChangeSingleDirectory(final String singleDir) throws Exception {
+    private void createAndChangeSingleDirectory(final FTPClient ftpClient, final String singleDir) throws Exception {
         try {
-            finalizer.ftpClient.changeDirectory(singleDir);
+            ftpClient.changeDirectory(singleDir);
         } catch (final FTPException e) {
-            finalizer.ftpClient.createDirectory(singleDir);
-            finalizer.ftpClient.changeDirectory(singleDir);
+            ftpClient.createDirectory(singleDir);
+            ftpClient.changeDirectory(singleDir);
         }
     }
 
     @Override
     public synchronized boolean isConnected() {
-        return finalizer != null && finalizer.ftpClient != null && finalizer.ftpClient.isConnected()
-                && isAuthenticated();
+        //no session is held while it is handed over to a stream
+        return finalizer != null && (finalizer.connection == null || !finalizer.connection.isBroken());
     }
 
     @Override
@@ -206,8 +480,17 @@ public class FtpFileChannel implements IFileChannel<FTPFile> {
     @Override
     public synchronized long size() {
         assertConnected();
+        final DirectoryCache.Entry<FTPFile> cached = lookupDirectoryCache();
+        if (cached != null) {
+            final FTPFile file = cached.getFile();
+            if (file == null || file.getType() != FTPFile.TYPE_FILE) {
+                return -1;
+            } else {
+                return file.getSize();
+            }
+        }
         try {
-            return finalizer.ftpClient.fileSize(getFilename());
+            return getConnection().getFtpClient().fileSize(getRemoteFilename());
         } catch (final FTPException e) {
             if (e.getCode() == FTPCodes.FILE_ACTION_NOT_TAKEN || e.getCode() == FTPCodes.FILE_NOT_FOUND) {
                 return -1;
@@ -222,8 +505,18 @@ public class FtpFileChannel implements IFileChannel<FTPFile> {
     @Override
     public synchronized FDate modified() {
         assertConnected();
+        final DirectoryCache.Entry<FTPFile> cached = lookupDirectoryCache();
+        if (cached != null) {
+            final FTPFile file = cached.getFile();
+            if (file == null) {
+                return null;
+            } else if (file.getModifiedDate() != null) {
+                return new FDate(file.getModifiedDate());
+            }
+            //the listing did not contain a timestamp, thus ask the server
+        }
         try {
-            final Date date = finalizer.ftpClient.modifiedDate(getFilename());
+            final Date date = getConnection().getFtpClient().modifiedDate(getRemoteFilename());
             if (date == null) {
                 return null;
             } else {
@@ -245,8 +538,20 @@ public class FtpFileChannel implements IFileChannel<FTPFile> {
     @Override
     public synchronized FTPFile info() {
         assertConnected();
+        final DirectoryCache.Entry<FTPFile> cached = lookupDirectoryCache();
+        if (cached != null) {
+            return cached.getFile();
+        }
+        final FTPFile info = infoFromServer(getRemoteFilename());
+        if (directoryCacheEnabled) {
+            DIRECTORY_CACHE.update(getDirectoryCacheKey(), getRemoteFilename(), info);
+        }
+        return info;
+    }
+
+    private FTPFile infoFromServer(final String filename) {
         try {
-            final FTPFile[] listFiles = finalizer.ftpClient.list(getFilename());
+            final FTPFile[] listFiles = getConnection().getFtpClient().list(filename);
             if (listFiles.length == 0) {
                 return null;
             } else if (listFiles.length == 1) {
@@ -265,11 +570,38 @@ public class FtpFileChannel implements IFileChannel<FTPFile> {
         }
     }
 
+    /**
+     * With the directory cache enabled, the listing is kept in memory so that subsequent calls and metadata lookups
+     * like exists(), size(), modified() and info() for files in this directory don't need further roundtrips.
+     */
     @Override
     public synchronized List<FTPFile> list() {
         assertConnected();
+        if (!directoryCacheEnabled) {
+            return listFromServer();
+        }
+        final String cacheKey = getDirectoryCacheKey();
+        //only the entries that were invalidated by uploads are looked up again instead of listing everything
+        for (final String name : DIRECTORY_CACHE.getInvalidated(cacheKey)) {
+            DIRECTORY_CACHE.update(cacheKey, name, infoFromServer(name));
+        }
+        final List<FTPFile> cached = DIRECTORY_CACHE.list(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        final List<FTPFile> list = listFromServer();
+        final Map<String, FTPFile> files = new LinkedHashMap<>();
+        for (final FTPFile file : list) {
+            files.put(file.getName(), file);
+        }
+        DIRECTORY_CACHE.put(cacheKey, null, files);
+        return list;
+    }
+
+    private List<FTPFile> listFromServer() {
         try {
-            return Arrays.asList(finalizer.ftpClient.list());
+            //uses MLSD if the server supports it, which gives exact sizes and timestamps in one go
+            return Arrays.asList(getConnection().getFtpClient().list());
         } catch (final FTPException e) {
             if (e.getCode() == FTPCodes.FILE_ACTION_NOT_TAKEN || e.getCode() == FTPCodes.FILE_NOT_FOUND) {
                 return Collections.emptyList();
@@ -281,6 +613,26 @@ public class FtpFileChannel implements IFileChannel<FTPFile> {
         }
     }
 
+    public synchronized FtpFileIterator listIterator() {
+        return listIterator(null);
+    }
+
+    /**
+     * Streams the listing from the data connection instead of materializing it, which keeps memory usage flat for huge
+     * directories and allows the caller to process the first entries while the rest is still being received. Only
+     * entries whose name starts with the given prefix are returned (null for all). The iterator takes over the session
+     * of this channel, which is not reused afterwards. This channel stays usable while iterating by borrowing another
+     * session. Close the iterator when it is not consumed completely.
+     */
+    public synchronized FtpFileIterator listIterator(final String namePrefix) {
+        assertConnected();
+        try {
+            return FtpFileIterator.list(handOverConnection(), namePrefix);
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public synchronized List<FTPFile> listFiles() {
         final List<FTPFile> list = list();
@@ -305,6 +657,40 @@ public class FtpFileChannel implements IFileChannel<FTPFile> {
         return directories;
     }
 
+    /**
+     * Returns null when the cache is disabled or can not answer for the current file. A missing listing is loaded with
+     * a single roundtrip, so that lookups for the other files in this directory are served from memory.
+     */
+    private DirectoryCache.Entry<FTPFile> lookupDirectoryCache() {
+        if (!directoryCacheEnabled) {
+            return null;
+        }
+        final String cacheKey = getDirectoryCacheKey();
+        final DirectoryCache.Entry<FTPFile> entry = DIRECTORY_CACHE.lookup(cacheKey, getRemoteFilename());
+        if (entry != null || DIRECTORY_CACHE.isListed(cacheKey)) {
+            return entry;
+        }
+        list();
+        return DIRECTORY_CACHE.lookup(cacheKey, getRemoteFilename());
+    }
+
+    private String getDirectoryCacheKey() {
+        return new FtpConnectionKey(serverUri, getUsername(), getPassword()) + directory;
+    }
+
+    private void invalidateDirectoryCache(final String filename) {
+        if (directoryCacheEnabled) {
+            DIRECTORY_CACHE.invalidate(getDirectoryCacheKey(), filename);
+        }
+    }
+
+    /**
+     * Discards the cached listing of this directory, e.g. when other clients are known to have modified it.
+     */
+    public synchronized void clearDirectoryCache() {
+        DIRECTORY_CACHE.remove(getDirectoryCacheKey());
+    }
+
     private void assertConnected() {
         Assertions.checkTrue(isConnected(), "Please call connect() first");
     }
@@ -313,7 +699,36 @@ public class FtpFileChannel implements IFileChannel<FTPFile> {
     public synchronized void upload(final File file) {
         assertConnected();
         try {
-            finalizer.ftpClient.upload(file);
+            if (isLz4Framing()) {
+                final String remoteFilename = file.getName() + FtpClientProperties.COMPRESSION_FILE_SUFFIX;
+                invalidateDirectoryCache(remoteFilename);
+                try (InputStream in = new FileInputStream(file)) {
+                    uploadCompressed(remoteFilename, in);
+                }
+                return;
+            }
+            invalidateDirectoryCache(file.getName());
+            final int segments = getTransferSegments(file.length());
+            if (segments > 1) {
+                releaseConnection();
+                FtpSegmentedTransfer.upload(TRANSFER_EXECUTOR, newConnectionProvider(), file, file.getName(),
+                        segments);
+                return;
+            }
+            final AFtpResumableTransfer transfer = new AFtpResumableTransfer(newConnectionProvider(),
+                    isResumable()) {
+                @Override
+                protected void transfer(final FTPClient ftpClient, final long offset) throws Exception {
+                    ftpClient.upload(file, offset, null);
+                }
+
+                @Override
+                protected long getResumeOffset(final FTPClient ftpClient) throws Exception {
+                    return getRemoteSize(ftpClient, file.getName());
+                }
+            };
+            transfer.run(getConnection());
+            replaceBrokenConnection();
         } catch (final Exception e) {
             throw new RuntimeException(e);
         }
@@ -327,21 +742,157 @@ public class FtpFileChannel implements IFileChannel<FTPFile> {
     @Override
     public synchronized void upload(final InputStream input) {
         assertConnected();
+        invalidateDirectoryCache(getRemoteFilename());
         try {
-            finalizer.ftpClient.upload(getFilename(), input, 0, 0, null);
+            if (isLz4Framing()) {
+                uploadCompressed(getRemoteFilename(), input);
+                return;
+            }
+            if (input instanceof FileInputStream || input instanceof ByteArrayInputStream) {
+                newUploadTransfer(getRemoteFilename(), input).run(getConnection());
+                replaceBrokenConnection();
+            } else {
+                uploadNotResumable(getRemoteFilename(), input);
+            }
         } catch (final Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Only inputs that can be repositioned can be resumed, otherwise the bytes that got lost with the broken
+     * connection could not be sent again.
+     */
+    private void uploadNotResumable(final String filename, final InputStream input) throws Exception {
+        final FtpConnection connection = getConnection();
+        try {
+            connection.getFtpClient().upload(filename, input, 0, 0, null);
+        } catch (final Throwable t) {
+            //an error reply leaves the session intact, anything else might not
+            if (!(t instanceof FTPException)) {
+                connection.markBroken();
+                replaceBrokenConnection();
+            }
+            throw t;
+        }
+    }
+
+    private AFtpResumableTransfer newUploadTransfer(final String filename, final InputStream input)
+            throws IOException {
+        if (input instanceof FileInputStream) {
+            final FileChannel inputChannel = ((FileInputStream) input).getChannel();
+            final long startPosition = inputChannel.position();
+            return new AFtpResumableTransfer(newConnectionProvider(), isResumable()) {
+                @Override
+                protected void transfer(final FTPClient ftpClient, final long offset) throws Exception {
+                    inputChannel.position(startPosition + offset);
+                    ftpClient.upload(filename, input, offset, 0, null);
+                }
+
+                @Override
+                protected long getResumeOffset(final FTPClient ftpClient) throws Exception {
+                    return getRemoteSize(ftpClient, filename);
+                }
+            };
+        } else {
+            input.mark(Integer.MAX_VALUE);
+            return new AFtpResumableTransfer(newConnectionProvider(), isResumable()) {
+                @Override
+                protected void transfer(final FTPClient ftpClient, final long offset) throws Exception {
+                    input.reset();
+                    ftpClient.upload(filename, input, offset, offset, null);
+                }
+
+                @Override
+                protected long getResumeOffset(final FTPClient ftpClient) throws Exception {
+                    return getRemoteSize(ftpClient, filename);
+                }
+            };
+        }
+    }
+
+    private void uploadCompressed(final String remoteFilename, final InputStream input) throws Exception {
+        try (OutputStream out = LZ4Streams.newDefaultLZ4OutputStream(
+                FtpUploadOutputStream.upload(TRANSFER_EXECUTOR, handOverConnection(), remoteFilename))) {
+            IOUtils.copy(input, out);
+        }
+    }
+
+    private static long getRemoteSize(final FTPClient ftpClient, final String filename) throws Exception {
+        try {
+            return ftpClient.fileSize(filename);
+        } catch (final FTPException e) {
+            if (e.getCode() == FTPCodes.FILE_ACTION_NOT_TAKEN || e.getCode() == FTPCodes.FILE_NOT_FOUND) {
+                //nothing arrived yet
+                return 0;
+            } else {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Offsets are not well defined for compressed transfers, thus those are not resumed.
+     */
+    private boolean isResumable() {
+        return resumeEnabled && !compressionEnabled && getConnection().getFtpClient().isResumeSupported();
+    }
+
+    /**
+     * A transfer that was resumed leaves the original connection of this channel broken, so we switch to a fresh one
+     * when it is used next.
+     */
+    private void replaceBrokenConnection() {
+        if (finalizer.connection != null && finalizer.connection.isBroken()) {
+            releaseConnection();
+        }
+    }
+
+    /**
+     * Returns 1 when the file should not be split or the server does not support REST.
+     */
+    private int getTransferSegments(final long size) {
+        final int segments = FtpSegmentedTransfer.getSegments(size, transferSegments, transferMinSegmentSize);
+        if (segments > 1 && !compressionEnabled && getConnection().getFtpClient().isResumeSupported()) {
+            return segments;
+        } else {
+            return 1;
+        }
+    }
+
     @Override
     public synchronized byte[] download() {
+        assertConnected();
+        if (downloadCacheEnabled) {
+            try {
+                final File cachedFile = downloadCachedFile();
+                if (cachedFile == null) {
+                    return null;
+                } else {
+                    return java.nio.file.Files.readAllBytes(cachedFile.toPath());
+                }
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        long size = -1;
+        //the directory cache knows the size without a further roundtrip
+        if (!compressionEnabled && (transferSegments > 1 || directoryCacheEnabled)) {
+            size = size();
+        }
+        //arrays are limited in size, larger files can still be downloaded segmented to getLocalTempFile()
+        if (transferSegments > 1 && size < Integer.MAX_VALUE - 8) {
+            final int segments = getTransferSegments(size);
+            if (segments > 1) {
+                return downloadSegmented(size, segments);
+            }
+        }
         try {
-            try (InputStream in = downloadInputStream()) {
+            try (InputStream in = downloadUncachedInputStream()) {
                 if (in == null) {
                     return null;
                 } else {
-                    final byte[] bytes = IOUtils.toByteArray(in);
+                    final byte[] bytes = LocalTransfers.toByteArray(in, size);
                     return bytes;
                 }
             }
@@ -351,20 +902,343 @@ public class FtpFileChannel implements IFileChannel<FTPFile> {
 
     }
 
+    /**
+     * Reads the file into the remaining space of the given buffer and returns the number of bytes, or -1 when the file
+     * does not exist. A BufferOverflowException is thrown when the content does not fit. The stream is read into the
+     * buffer directly, thus direct buffers don't need a heap copy of the whole content either.
+     */
+    public synchronized int download(final ByteBuffer sink) {
+        assertConnected();
+        try (InputStream in = downloadInputStream()) {
+            if (in == null) {
+                return -1;
+            } else {
+                return LocalTransfers.read(in, sink);
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads the file into a heap buffer that belongs to this channel and is reused by the next call. Once the buffer
+     * has grown to the size of the file, frequent downloads of small files (e.g. heartbeats or control files) don't
+     * allocate anything for the content. The returned buffer is only valid until the next call and null is returned
+     * when the file does not exist. Large files should rather be downloaded via download(File).
+     */
+    public synchronized ByteBuffer downloadBuffer() {
+        assertConnected();
+        //the directory cache knows the size without a further roundtrip
+        final long size;
+        if (directoryCacheEnabled && !compressionEnabled) {
+            size = size();
+        } else {
+            size = -1;
+        }
+        try (InputStream in = downloadInputStream()) {
+            if (in == null) {
+                return null;
+            }
+            reusableDownloadBuffer = LocalTransfers.read(in, reusableDownloadBuffer, size);
+            return reusableDownloadBuffer;
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Downloads the file into the given local file, which is replaced. This avoids holding the content in memory and
+     * allows files larger than an array. Uncompressed transfers are written to the file by the ftp client (segmented if
+     * enabled), hits of the download cache are copied by the operating system. Returns false when the remote file does
+     * not exist.
+     */
+    public synchronized boolean download(final File file) {
+        assertConnected();
+        try {
+            //a partial file would be taken as the resume offset
+            Files.deleteQuietly(file);
+            if (file.getParentFile() != null) {
+                Files.forceMkdir(file.getParentFile());
+            }
+            if (downloadCacheEnabled) {
+                final File cachedFile = downloadCachedFile();
+                if (cachedFile == null) {
+                    return false;
+                }
+                LocalTransfers.copy(cachedFile, file);
+                return true;
+            }
+            if (isLz4Framing()) {
+                try (InputStream in = downloadUncachedInputStream()) {
+                    if (in == null) {
+                        return false;
+                    }
+                    LocalTransfers.write(in, file);
+                    return true;
+                }
+            }
+            return downloadFile(file);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private byte[] downloadSegmented(final long size, final int segments) {
+        final byte[] bytes = new byte[(int) size];
+        releaseConnection();
+        try {
+            FtpSegmentedTransfer.download(TRANSFER_EXECUTOR, newConnectionProvider(), getRemoteFilename(), size,
+                    segments,
+                    new FtpSegmentedTransfer.ISegmentSink() {
+                        @Override
+                        public void write(final long position, final byte[] b, final int off, final int len) {
+                            System.arraycopy(b, off, bytes, (int) position, len);
+                        }
+                    });
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+        return bytes;
+    }
+
     @Override
     public synchronized void delete() {
         assertConnected();
         try {
-            finalizer.ftpClient.deleteFile(getFilename());
+            getConnection().getFtpClient().deleteFile(getRemoteFilename());
         } catch (final FTPException e) {
-            if (e.getCode() == FTPCodes.FILE_ACTION_NOT_TAKEN || e.getCode() == FTPCodes.FILE_NOT_FOUND) {
-                return;
-            } else {
+            if (e.getCode() != FTPCodes.FILE_ACTION_NOT_TAKEN && e.getCode() != FTPCodes.FILE_NOT_FOUND) {
                 throw new RuntimeException(e);
             }
         } catch (final Exception e) {
             throw new RuntimeException(e);
         }
+        //the file is gone either way, the cache might still know it from before
+        if (directoryCacheEnabled) {
+            DIRECTORY_CACHE.update(getDirectoryCacheKey(), getRemoteFilename(), null);
+        }
+    }
+
+    /**
+     * Async operations work on a copy of this channel with the current filename and settings that uses its own pooled
+     * connection, so they neither block the caller nor this channel. They are executed by a bounded thread pool, thus
+     * many transfers can be in flight while only FtpClientProperties.ASYNC_EXECUTOR_THREADS of them are active.
+     */
+    public CompletableFuture<Void> uploadAsync(final byte[] bytes) {
+        return supplyAsync(new Function<FtpFileChannel, Void>() {
+            @Override
+            public Void apply(final FtpFileChannel channel) {
+                channel.upload(bytes);
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<Void> uploadAsync(final File file) {
+        return supplyAsync(new Function<FtpFileChannel, Void>() {
+            @Override
+            public Void apply(final FtpFileChannel channel) {
+                channel.upload(file);
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<byte[]> downloadAsync() {
+        return supplyAsync(new Function<FtpFileChannel, byte[]>() {
+            @Override
+            public byte[] apply(final FtpFileChannel channel) {
+                return channel.download();
+            }
+        });
+    }
+
+    public CompletableFuture<List<FTPFile>> listAsync() {
+        return supplyAsync(new Function<FtpFileChannel, List<FTPFile>>() {
+            @Override
+            public List<FTPFile> apply(final FtpFileChannel channel) {
+                return channel.list();
+            }
+        });
+    }
+
+    public CompletableFuture<Void> deleteAsync() {
+        return supplyAsync(new Function<FtpFileChannel, Void>() {
+            @Override
+            public Void apply(final FtpFileChannel channel) {
+                channel.delete();
+                return null;
+            }
+        });
+    }
+
+    private <T> CompletableFuture<T> supplyAsync(final Function<FtpFileChannel, T> operation) {
+        final FtpFileChannel copy = newCopy();
+        return CompletableFuture.supplyAsync(new Supplier<T>() {
+            @Override
+            public T get() {
+                copy.connect();
+                try {
+                    return operation.apply(copy);
+                } finally {
+                    copy.close();
+                }
+            }
+        }, ASYNC_EXECUTOR);
+    }
+
+    /**
+     * Uploads all given files into the directory of this channel. The batch operations distribute the files over
+     * getBatchConnections() copies of this channel, each one keeping its pooled connection for all the files it
+     * processes. A failing file does not stop the others, the outcome of each file is reported in the result.
+     */
+    public FtpBatchResult<Void> uploadBatch(final Map<String, byte[]> filenameToBytes) {
+        return batch(filenameToBytes.keySet(), new Function<FtpFileChannel, Void>() {
+            @Override
+            public Void apply(final FtpFileChannel channel) {
+                channel.upload(filenameToBytes.get(channel.getFilename()));
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Uploads the files (not recursively) of the given local directory under their names.
+     */
+    public FtpBatchResult<Void> uploadBatch(final File localDirectory) {
+        final File[] files = localDirectory.listFiles();
+        if (files == null) {
+            throw new IllegalArgumentException("Not a directory: " + localDirectory);
+        }
+        final Map<String, File> filenameToFile = new LinkedHashMap<>();
+        for (final File file : files) {
+            if (file.isFile()) {
+                filenameToFile.put(file.getName(), file);
+            }
+        }
+        return batch(filenameToFile.keySet(), new Function<FtpFileChannel, Void>() {
+            @Override
+            public Void apply(final FtpFileChannel channel) {
+                channel.upload(filenameToFile.get(channel.getFilename()));
+                return null;
+            }
+        });
+    }
+
+    public FtpBatchResult<byte[]> downloadBatch(final Collection<String> filenames) {
+        return batch(filenames, new Function<FtpFileChannel, byte[]>() {
+            @Override
+            public byte[] apply(final FtpFileChannel channel) {
+                return channel.download();
+            }
+        });
+    }
+
+    public FtpBatchResult<Void> deleteBatch(final Collection<String> filenames) {
+        return batch(filenames, new Function<FtpFileChannel, Void>() {
+            @Override
+            public Void apply(final FtpFileChannel channel) {
+                channel.delete();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Deletes the files in the directory of this channel whose name matches the given glob pattern (e.g. "*.tmp").
+     * The listing is streamed and filtered by the literal prefix of the pattern.
+     */
+    public FtpBatchResult<Void> deleteBatch(final String glob) {
+        final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        final List<String> filenames = new ArrayList<>();
+        final FtpFileChannel lister = newCopy();
+        lister.connect();
+        try (FtpFileIterator files = lister.listIterator(getGlobPrefix(glob))) {
+            while (files.hasNext()) {
+                final FTPFile file = files.next();
+                if (file.getType() == FTPFile.TYPE_FILE && matcher.matches(Paths.get(file.getName()))) {
+                    filenames.add(file.getName());
+                }
+            }
+        } finally {
+            lister.close();
+        }
+        return deleteBatch(filenames);
+    }
+
+    private static String getGlobPrefix(final String glob) {
+        for (int i = 0; i < glob.length(); i++) {
+            if ("*?[{\\".indexOf(glob.charAt(i)) >= 0) {
+                return i == 0 ? null : glob.substring(0, i);
+            }
+        }
+        return glob;
+    }
+
+    private <V> FtpBatchResult<V> batch(final Collection<String> filenames,
+            final Function<FtpFileChannel, V> operation) {
+        synchronized (this) {
+            if (finalizer != null) {
+                releaseConnection();
+            }
+        }
+        final FtpBatchResult<V> result = new FtpBatchResult<>();
+        final Queue<String> pending = new ConcurrentLinkedQueue<>(filenames);
+        final int workers = Math.min(filenames.size(), getBatchConnections());
+        final List<Future<?>> futures = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            final FtpFileChannel copy = newCopy();
+            futures.add(TRANSFER_EXECUTOR.submit(new Runnable() {
+                @Override
+                public void run() {
+                    copy.connect();
+                    try {
+                        String filename;
+                        while ((filename = pending.poll()) != null) {
+                            copy.setFilename(filename);
+                            try {
+                                result.putSucceeded(filename, operation.apply(copy));
+                            } catch (final Throwable t) {
+                                result.putFailed(filename, t);
+                            }
+                        }
+                    } finally {
+                        copy.close();
+                    }
+                }
+            }));
+        }
+        Throwable workerFailure = null;
+        for (final Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (final InterruptedException e) {
+                for (final Future<?> f : futures) {
+                    f.cancel(true);
+                }
+                throw new RuntimeException(e);
+            } catch (final ExecutionException e) {
+                //e.g. the worker could not connect, the other workers continue with its files
+                workerFailure = e.getCause();
+            }
+        }
+        String filename;
+        while ((filename = pending.poll()) != null) {
+            result.putFailed(filename, workerFailure);
+        }
+        return result;
+    }
+
+    private synchronized FtpFileChannel newCopy() {
+        try {
+            //keeps overridden credentials of subclasses
+            final FtpFileChannel copy = (FtpFileChannel) clone();
+            copy.finalizer = null;
+            copy.reusableDownloadBuffer = null;
+            return copy;
+        } catch (final CloneNotSupportedException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     @Override
@@ -375,12 +1249,41 @@ public class FtpFileChannel implements IFileChannel<FTPFile> {
         }
     }
 
+    /**
+     * Per default the written bytes are uploaded over the data connection while they are being produced, so
+     * computation and transfer overlap without staging the content on disk. The transfer takes over the session of this
+     * channel until the returned stream is closed, this channel borrows another one when it is used in the meantime.
+     * When the temp file upload is enabled, the content is first written to getLocalTempFile() and only uploaded when
+     * the stream is closed.
+     */
     @Override
     public synchronized OutputStream uploadOutputStream() {
         assertConnected();
+        final String remoteFilename = getRemoteFilename();
+        final boolean lz4Framing = isLz4Framing();
+        invalidateDirectoryCache(remoteFilename);
+        final OutputStream out;
+        if (uploadTempFileEnabled) {
+            out = uploadTempFileOutputStream();
+        } else {
+            try {
+                out = FtpUploadOutputStream.upload(TRANSFER_EXECUTOR, handOverConnection(), remoteFilename);
+            } catch (final Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+        if (lz4Framing) {
+            return LZ4Streams.newDefaultLZ4OutputStream(out);
+        } else {
+            return out;
+        }
+    }
+
+    private OutputStream uploadTempFileOutputStream() {
         return new ADelegateOutputStream(new TextDescription("%s: uploadOutputStream()", this)) {
 
             private final File file = getLocalTempFile();
+            private final String remoteFilename = getRemoteFilename();
 
             @Override
             protected OutputStream newDelegate() {
@@ -399,7 +1302,7 @@ public class FtpFileChannel implements IFileChannel<FTPFile> {
                         //write an empty file
                         Files.write(file, "", Charset.defaultCharset());
                     }
-                    finalizer.ftpClient.upload(file);
+                    uploadTempFile(file, remoteFilename);
                 } catch (final Exception e) {
                     throw new RuntimeException(e);
                 } finally {
@@ -409,6 +1312,12 @@ public class FtpFileChannel implements IFileChannel<FTPFile> {
         };
     }
 
+    private synchronized void uploadTempFile(final File file, final String remoteFilename) throws Exception {
+        try (InputStream in = new FileInputStream(file)) {
+            getConnection().getFtpClient().upload(remoteFilename, in, 0, 0, null);
+        }
+    }
+
     @Override
     public synchronized File getLocalTempFile() {
         final File directory = new File(FtpClientProperties.TEMP_DIRECTORY, getDirectory());
@@ -425,16 +1334,94 @@ public class FtpFileChannel implements IFileChannel<FTPFile> {
     @Override
     public synchronized void reconnect() {
         assertConnected();
+        //don't give a session back to the pool that we do not trust anymore
+        if (finalizer.connection != null) {
+            finalizer.connection.markBroken();
+        }
         close();
         connect();
     }
 
+    /**
+     * Per default the download is streamed directly from the data connection, so the consumer can start parsing
+     * immediately. The transfer takes over the session of this channel until the returned stream is consumed or
+     * closed, this channel borrows another one when it is used in the meantime. When the temp file download is enabled,
+     * the file is first downloaded completely to getLocalTempFile() which frees the connection before the content is
+     * consumed.
+     */
     @Override
     public synchronized InputStream downloadInputStream() {
         assertConnected();
-        final File file = getLocalTempFile();
+        if (downloadCacheEnabled) {
+            try {
+                final File cachedFile = downloadCachedFile();
+                if (cachedFile == null) {
+                    return null;
+                } else {
+                    return DownloadCache.newInputStream(cachedFile);
+                }
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return downloadUncachedInputStream();
+    }
+
+    private InputStream downloadUncachedInputStream() {
+        //the session is handed over to the stream afterwards
+        final boolean lz4Framing = isLz4Framing();
+        final InputStream in = downloadRawInputStream();
+        if (in != null && lz4Framing) {
+            return LZ4Streams.newDefaultLZ4InputStream(in);
+        } else {
+            return in;
+        }
+    }
+
+    /**
+     * Returns null when the remote file does not exist.
+     */
+    private File downloadCachedFile() throws IOException {
+        final FTPFile info = info();
+        if (info == null) {
+            return null;
+        }
+        final String cacheKey = getDownloadCacheKey(info);
+        final File cachedFile = DOWNLOAD_CACHE.get(cacheKey);
+        if (cachedFile != null) {
+            return cachedFile;
+        }
+        try (InputStream in = downloadUncachedInputStream()) {
+            if (in == null) {
+                return null;
+            } else {
+                return DOWNLOAD_CACHE.put(cacheKey, in);
+            }
+        }
+    }
+
+    /**
+     * The content is cached decompressed, thus the key needs to tell apart the compressed file.
+     */
+    private String getDownloadCacheKey(final FTPFile info) {
+        final long modified;
+        if (info.getModifiedDate() != null) {
+            modified = info.getModifiedDate().getTime();
+        } else {
+            modified = -1;
+        }
+        return getDirectoryCacheKey() + getRemoteFilename() + "?size=" + info.getSize() + "&modified=" + modified;
+    }
+
+    private InputStream downloadRawInputStream() {
+        if (downloadTempFileEnabled) {
+            return downloadTempFileInputStream();
+        }
         try {
-            finalizer.ftpClient.download(getFilename(), file);
+            final String remoteFilename = getRemoteFilename();
+            final boolean resumable = isResumable();
+            return FtpDownloadInputStream.download(TRANSFER_EXECUTOR, handOverConnection(), newConnectionProvider(),
+                    remoteFilename, resumable);
         } catch (final FTPException e) {
             if (e.getCode() == FTPCodes.FILE_NOT_FOUND) {
                 return null;
@@ -444,7 +1431,11 @@ public class FtpFileChannel implements IFileChannel<FTPFile> {
         } catch (final Exception e) {
             throw new RuntimeException(e);
         }
-        if (!file.exists()) {
+    }
+
+    private InputStream downloadTempFileInputStream() {
+        final File file = getLocalTempFile();
+        if (!downloadFile(file)) {
             return null;
         }
         return new ADelegateInputStream(new TextDescription("%s: downloadInputStream()", this)) {
@@ -459,6 +1450,69 @@ public class FtpFileChannel implements IFileChannel<FTPFile> {
         };
     }
 
+    /**
+     * Returns false when the remote file does not exist.
+     */
+    private boolean downloadFile(final File file) {
+        try {
+            final long size = transferSegments > 1 ? size() : -1;
+            final int segments = getTransferSegments(size);
+            if (segments > 1) {
+                downloadSegmented(file, size, segments);
+            } else {
+                final String filename = getRemoteFilename();
+                final AFtpResumableTransfer transfer = new AFtpResumableTransfer(newConnectionProvider(),
+                        isResumable()) {
+                    @Override
+                    protected void transfer(final FTPClient ftpClient, final long offset) throws Exception {
+                        ftpClient.download(filename, file, offset, null);
+                    }
+
+                    @Override
+                    protected long getResumeOffset(final FTPClient ftpClient) {
+                        //the partial local file contains what was received so far
+                        return file.length();
+                    }
+                };
+                transfer.run(getConnection());
+                replaceBrokenConnection();
+            }
+        } catch (final FTPException e) {
+            if (e.getCode() == FTPCodes.FILE_NOT_FOUND) {
+                return false;
+            } else {
+                throw new RuntimeException(e);
+            }
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+        return file.exists();
+    }
+
+    private void downloadSegmented(final File file, final long size, final int segments) throws Exception {
+        releaseConnection();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(size);
+            final FileChannel fileChannel = raf.getChannel();
+            FtpSegmentedTransfer.download(TRANSFER_EXECUTOR, newConnectionProvider(), getRemoteFilename(), size,
+                    segments,
+                    new FtpSegmentedTransfer.ISegmentSink() {
+                        @Override
+                        public void write(final long position, final byte[] b, final int off, final int len)
+                                throws IOException {
+                            final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                            long curPosition = position;
+                            while (buffer.hasRemaining()) {
+                                curPosition += fileChannel.write(buffer, curPosition);
+                            }
+                        }
+                    });
+        } catch (final Throwable t) {
+            file.delete();
+            throw t;
+        }
+    }
+
     @Override
     public String toString() {
         return Objects.toStringHelper(this)
@@ -470,32 +1524,20 @@ public class FtpFileChannel implements IFileChannel<FTPFile> {
 
     private static final class FtpFileChannelFinalizer extends AFinalizer {
 
-        private FTPClient ftpClient;
+        private FtpConnection connection;
 
         @Override
         protected void clean() {
-            if (ftpClient.isConnected()) {
-                try {
-                    ftpClient.logout();
-                } catch (final Throwable t) {
-                    // do nothing
-                }
-                try {
-                    ftpClient.disconnect(true);
-                } catch (final Throwable t) {
-                    try {
-                        ftpClient.disconnect(false);
-                    } catch (final Throwable t1) {
-                        // do nothing
-                    }
-                }
+            //gives the session back to the pool instead of logging out
+            if (connection != null) {
+                connection.close();
+                connection = null;
             }
-            ftpClient = null;
         }
 
         @Override
         protected boolean isCleaned() {
-            return ftpClient == null;
+            return connection == null;
         }
 
         @Override
@@ -0,0 +1,262 @@
+package de.invesdwin.context.integration.ftp;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import de.invesdwin.context.integration.ftp.pool.FtpConnection;
+import it.sauronsoftware.ftp4j.FTPClient;
+import it.sauronsoftware.ftp4j.FTPException;
+import it.sauronsoftware.ftp4j.FTPFile;
+import it.sauronsoftware.ftp4j.FTPListParser;
+import it.sauronsoftware.ftp4j.FTPReply;
+import it.sauronsoftware.ftp4j.listparsers.DOSListParser;
+import it.sauronsoftware.ftp4j.listparsers.EPLFListParser;
+import it.sauronsoftware.ftp4j.listparsers.MLSDListParser;
+import it.sauronsoftware.ftp4j.listparsers.NetWareListParser;
+import it.sauronsoftware.ftp4j.listparsers.UnixListParser;
+
+/**
+ * Parses a directory listing line by line while it is being received from the data connection, so that huge
+ * directories don't need to be materialized in memory. MLSD is used if the server supports it, otherwise LIST.
+ * Entries can be filtered by a name prefix, which for MLSD is checked before a line is even parsed.
+ *
+ * ftp4j does not expose the data connection for listings, thus the commands are sent manually. Since the final reply
+ * of the transfer can not be consumed that way, the connection is disconnected instead of being reused after the
+ * iterator was closed. The iterator closes itself when the end of the listing is reached.
+ */
+@NotThreadSafe
+public final class FtpFileIterator implements Iterator<FTPFile>, Closeable {
+
+    private static final Pattern PASV_PATTERN = Pattern.compile("(\\d+),(\\d+),(\\d+),(\\d+),(\\d+),(\\d+)");
+    private static final int[] COMMAND_NOT_IMPLEMENTED_CODES = { 500, 501, 502, 504 };
+
+    private final FtpConnection connection;
+    private final Socket dataSocket;
+    private final BufferedReader reader;
+    private final boolean mlsd;
+    private final String namePrefix;
+    private FTPListParser parser;
+    private FTPFile next;
+    private boolean closed;
+
+    private FtpFileIterator(final FtpConnection connection, final Socket dataSocket, final boolean mlsd,
+            final String namePrefix) throws IOException {
+        this.connection = connection;
+        this.dataSocket = dataSocket;
+        this.reader = new BufferedReader(
+                new InputStreamReader(dataSocket.getInputStream(), getCharset(connection.getFtpClient())),
+                FtpClientProperties.STREAMING_BUFFER_SIZE);
+        this.mlsd = mlsd;
+        if (mlsd) {
+            parser = new MLSDListParser();
+        }
+        this.namePrefix = namePrefix;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !closed) {
+            next = readNext();
+        }
+        return next != null;
+    }
+
+    @Override
+    public FTPFile next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final FTPFile file = next;
+        next = null;
+        return file;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private FTPFile readNext() {
+        try {
+            while (true) {
+                final String line = reader.readLine();
+                if (line == null) {
+                    close();
+                    return null;
+                }
+                if (line.isEmpty() || !isNameMatchingLine(line)) {
+                    continue;
+                }
+                final FTPFile file = parse(line);
+                if (file != null && isNameMatching(file.getName())) {
+                    return file;
+                }
+            }
+        } catch (final Throwable t) {
+            close();
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * MLSD lines have the format "facts; name", thus the name can be checked without parsing the facts.
+     */
+    private boolean isNameMatchingLine(final String line) {
+        if (!mlsd || namePrefix == null) {
+            return true;
+        }
+        final int nameIndex = line.indexOf("; ");
+        return nameIndex < 0 || line.startsWith(namePrefix, nameIndex + 2);
+    }
+
+    private boolean isNameMatching(final String name) {
+        if (name == null || ".".equals(name) || "..".equals(name)) {
+            return false;
+        }
+        return namePrefix == null || name.startsWith(namePrefix);
+    }
+
+    private FTPFile parse(final String line) {
+        final String[] lines = { line };
+        if (parser != null) {
+            return first(parser, lines);
+        }
+        //detect the format of LIST with the first line, like ftp4j does for the whole listing
+        final FTPListParser[] parsers = { new UnixListParser(), new DOSListParser(), new EPLFListParser(),
+                new NetWareListParser() };
+        for (final FTPListParser candidate : parsers) {
+            try {
+                final FTPFile file = first(candidate, lines);
+                parser = candidate;
+                return file;
+            } catch (final Throwable t) {
+                //try next
+            }
+        }
+        //e.g. the "total" line
+        return null;
+    }
+
+    private static FTPFile first(final FTPListParser parser, final String[] lines) {
+        try {
+            final FTPFile[] files = parser.parse(lines);
+            if (files == null || files.length == 0) {
+                return null;
+            } else {
+                return files[0];
+            }
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        next = null;
+        try {
+            dataSocket.close();
+        } catch (final Throwable t) {
+            //ignore
+        }
+        connection.close();
+    }
+
+    /**
+     * The connection is owned by the returned iterator from now on, also when an exception is thrown.
+     */
+    public static FtpFileIterator list(final FtpConnection connection, final String namePrefix) throws Exception {
+        //replies are not kept in sync with ftp4j anymore, so this connection must not be reused
+        connection.markBroken();
+        try {
+            final FTPClient ftpClient = connection.getFtpClient();
+            //an automatic noop while the consumer is slow would read the reply of the transfer
+            ftpClient.setAutoNoopTimeout(0);
+            if (ftpClient.isCompressionSupported()) {
+                //the listing is parsed from the raw data connection, thus it must not be compressed
+                ftpClient.sendCustomCommand("MODE S");
+            }
+            Socket dataSocket = openDataSocket(connection);
+            FTPReply reply = ftpClient.sendCustomCommand("MLSD");
+            boolean mlsd = true;
+            if (isCommandNotImplemented(reply)) {
+                closeQuietly(dataSocket);
+                dataSocket = openDataSocket(connection);
+                reply = ftpClient.sendCustomCommand("LIST");
+                mlsd = false;
+            }
+            if (reply.getCode() != 150 && reply.getCode() != 125) {
+                closeQuietly(dataSocket);
+                throw new FTPException(reply.getCode(), getMessage(reply));
+            }
+            return new FtpFileIterator(connection, dataSocket, mlsd, namePrefix);
+        } catch (final Throwable t) {
+            connection.close();
+            throw t;
+        }
+    }
+
+    private static Socket openDataSocket(final FtpConnection connection) throws Exception {
+        final FTPClient ftpClient = connection.getFtpClient();
+        final FTPReply reply = ftpClient.sendCustomCommand("PASV");
+        if (reply.getCode() != 227) {
+            throw new FTPException(reply.getCode(), getMessage(reply));
+        }
+        final Matcher matcher = PASV_PATTERN.matcher(getMessage(reply));
+        if (!matcher.find()) {
+            throw new IOException("Unable to parse passive mode reply: " + getMessage(reply));
+        }
+        final int port = Integer.parseInt(matcher.group(5)) * 256 + Integer.parseInt(matcher.group(6));
+        //like ftp4j we connect to the host of the control connection instead of the suggested address
+        return ftpClient.getConnector().connectForDataTransferChannel(connection.getKey().getHost(), port);
+    }
+
+    private static boolean isCommandNotImplemented(final FTPReply reply) {
+        for (final int code : COMMAND_NOT_IMPLEMENTED_CODES) {
+            if (reply.getCode() == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String getMessage(final FTPReply reply) {
+        final String[] messages = reply.getMessages();
+        if (messages == null || messages.length == 0) {
+            return String.valueOf(reply.getCode());
+        } else {
+            return messages[0];
+        }
+    }
+
+    private static Charset getCharset(final FTPClient ftpClient) {
+        final String charset = ftpClient.getCharset();
+        if (charset == null) {
+            return Charset.defaultCharset();
+        } else {
+            return Charset.forName(charset);
+        }
+    }
+
+    private static void closeQuietly(final Socket socket) {
+        try {
+            socket.close();
+        } catch (final Throwable t) {
+            //ignore
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package de.invesdwin.context.integration.ftp.internal;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.integration.ftp.pool.FtpConnection;
+import de.invesdwin.context.integration.retry.RetryLaterRuntimeException;
+import de.invesdwin.context.integration.retry.task.ARetryRunnable;
+import de.invesdwin.context.integration.retry.task.RetryOriginator;
+import it.sauronsoftware.ftp4j.FTPClient;
+import it.sauronsoftware.ftp4j.FTPException;
+
+/**
+ * Continues a transfer that failed in the middle from the last acknowledged offset via REST instead of starting again
+ * from byte zero. Each resume attempt uses a fresh pooled connection and is scheduled by the retry infrastructure, so
+ * it backs off and gives up like any other retried operation. Error replies of the server (e.g. a missing file) are not
+ * retried.
+ */
+@ThreadSafe
+public abstract class AFtpResumableTransfer {
+
+    private final IFtpConnectionProvider connections;
+    private final boolean resumable;
+    private volatile FtpConnection currentConnection;
+    private volatile boolean aborted;
+
+    public AFtpResumableTransfer(final IFtpConnectionProvider connections, final boolean resumable) {
+        this.connections = connections;
+        this.resumable = resumable;
+    }
+
+    /**
+     * The given connection stays owned by the caller, it is only marked as broken when the transfer failed. Before a
+     * resume the broken connection is given back already, so that the resume does not need a second session.
+     */
+    public void run(final FtpConnection connection) throws Exception {
+        currentConnection = connection;
+        try {
+            transfer(connection.getFtpClient(), 0);
+        } catch (final Throwable t) {
+            if (!isResumable(t)) {
+                if (!(t instanceof FTPException)) {
+                    connection.markBroken();
+                }
+                throw t;
+            }
+            connection.markBroken();
+            connection.close();
+            resume();
+        } finally {
+            currentConnection = null;
+        }
+    }
+
+    private void resume() {
+        final ARetryRunnable retry = new ARetryRunnable(new RetryOriginator(AFtpResumableTransfer.class, "resume")) {
+            @Override
+            protected void runRetry() throws Exception {
+                final FtpConnection connection;
+                try {
+                    connection = connections.borrowConnection();
+                } catch (final Throwable t) {
+                    throw new RetryLaterRuntimeException(t);
+                }
+                currentConnection = connection;
+                try {
+                    final long offset = getResumeOffset(connection.getFtpClient());
+                    transfer(connection.getFtpClient(), offset);
+                } catch (final Throwable t) {
+                    if (!isResumable(t)) {
+                        if (!(t instanceof FTPException)) {
+                            connection.markBroken();
+                        }
+                        throw t;
+                    }
+                    connection.markBroken();
+                    throw new RetryLaterRuntimeException(t);
+                } finally {
+                    currentConnection = null;
+                    connection.close();
+                }
+            }
+        };
+        retry.run();
+    }
+
+    private boolean isResumable(final Throwable t) {
+        return resumable && !aborted && !(t instanceof FTPException) && !(t instanceof InterruptedException);
+    }
+
+    /**
+     * Stops the transfer without resuming it. The current connection will not be reused.
+     */
+    public void abort() {
+        aborted = true;
+        final FtpConnection connection = currentConnection;
+        if (connection != null) {
+            connection.markBroken();
+            try {
+                connection.getFtpClient().abortCurrentDataTransfer(true);
+            } catch (final Throwable t) {
+                //ignore
+            }
+        }
+    }
+
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * Starts or continues the transfer at the given offset.
+     */
+    protected abstract void transfer(FTPClient ftpClient, long offset) throws Exception;
+
+    /**
+     * The number of bytes that reached their destination, e.g. the remote file size for uploads or the number of bytes
+     * received for downloads.
+     */
+    protected abstract long getResumeOffset(FTPClient ftpClient) throws Exception;
+
+}
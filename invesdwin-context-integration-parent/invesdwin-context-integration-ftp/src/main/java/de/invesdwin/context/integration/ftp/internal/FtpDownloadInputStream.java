@@ -0,0 +1,132 @@
+package de.invesdwin.context.integration.ftp.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.commons.io.output.CountingOutputStream;
+
+import de.invesdwin.context.integration.ftp.FtpClientProperties;
+import de.invesdwin.context.integration.ftp.pool.FtpConnection;
+import it.sauronsoftware.ftp4j.FTPClient;
+
+/**
+ * Streams a download directly from the ftp data connection through a bounded pipe. The transfer runs in a background
+ * thread that blocks when the consumer is slower than the network. Closing the stream before the end is reached aborts
+ * the transfer. A transfer that fails in the middle is reported as an IOException instead of a premature end of
+ * stream. When resuming is enabled, a transfer that broke in the middle is continued via REST at the number of bytes
+ * that were already received. The connection is given back to the pool when the transfer ended, or disconnected when it
+ * was aborted.
+ */
+@ThreadSafe
+public final class FtpDownloadInputStream extends InputStream {
+
+    private final AFtpResumableTransfer resumableTransfer;
+    private final PipedInputStream pipe;
+    private final Future<?> transfer;
+    private volatile boolean closed;
+
+    private FtpDownloadInputStream(final AFtpResumableTransfer resumableTransfer, final PipedInputStream pipe,
+            final Future<?> transfer) {
+        this.resumableTransfer = resumableTransfer;
+        this.pipe = pipe;
+        this.transfer = transfer;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = pipe.read();
+        if (b == -1) {
+            checkTransferSuccessful();
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int read = pipe.read(b, off, len);
+        if (read == -1) {
+            checkTransferSuccessful();
+        }
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return pipe.available();
+    }
+
+    private void checkTransferSuccessful() throws IOException {
+        try {
+            transfer.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (final ExecutionException e) {
+            throw new IOException("Download failed", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!transfer.isDone()) {
+            resumableTransfer.abort();
+        }
+        //unblocks the transfer thread in case it waits for free space in the pipe
+        pipe.close();
+    }
+
+    /**
+     * The connection is owned by the returned stream from now on, also when an exception is thrown.
+     */
+    public static FtpDownloadInputStream download(final ExecutorService executor, final FtpConnection connection,
+            final IFtpConnectionProvider connections, final String filename, final boolean resumable)
+            throws Exception {
+        final PipedInputStream pipe = new PipedInputStream(FtpClientProperties.STREAMING_BUFFER_SIZE);
+        final PipedOutputStream pipeOut = new PipedOutputStream(pipe);
+        final CountingOutputStream out = new CountingOutputStream(pipeOut);
+        final FtpTransferStartedListener listener = new FtpTransferStartedListener();
+        final AFtpResumableTransfer resumableTransfer = new AFtpResumableTransfer(connections, resumable) {
+            @Override
+            protected void transfer(final FTPClient ftpClient, final long offset) throws Exception {
+                ftpClient.download(filename, out, offset, listener);
+            }
+
+            @Override
+            protected long getResumeOffset(final FTPClient ftpClient) {
+                return out.getByteCount();
+            }
+        };
+        final Future<?> transfer = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                try {
+                    resumableTransfer.run(connection);
+                } finally {
+                    connection.close();
+                    out.close();
+                }
+                return null;
+            }
+        });
+        try {
+            listener.awaitStarted(transfer);
+        } catch (final Throwable t) {
+            pipe.close();
+            throw t;
+        }
+        return new FtpDownloadInputStream(resumableTransfer, pipe, transfer);
+    }
+
+}
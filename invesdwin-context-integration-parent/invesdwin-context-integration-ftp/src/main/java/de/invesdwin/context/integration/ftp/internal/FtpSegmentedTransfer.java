@@ -0,0 +1,350 @@
+package de.invesdwin.context.integration.ftp.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.commons.io.input.BoundedInputStream;
+
+import de.invesdwin.context.integration.ftp.pool.FtpConnection;
+import it.sauronsoftware.ftp4j.FTPAbortedException;
+import it.sauronsoftware.ftp4j.FTPClient;
+import it.sauronsoftware.ftp4j.FTPException;
+
+/**
+ * Splits a file into consecutive ranges that are transferred in parallel over separate pooled connections, each one
+ * positioned via REST. This works around the throughput limit of a single tcp stream on high latency links. The size
+ * is verified after the transfer.
+ */
+@ThreadSafe
+public final class FtpSegmentedTransfer {
+
+    private static final long UPLOAD_START_POLL_MILLIS = 10;
+
+    private FtpSegmentedTransfer() {}
+
+    public static int getSegments(final long size, final int maxSegments, final long minSegmentSize) {
+        final long segments = Math.min(maxSegments, size / Math.max(1, minSegmentSize));
+        return (int) Math.max(1, segments);
+    }
+
+    public static void download(final ExecutorService executor, final IFtpConnectionProvider connections,
+            final String filename, final long size, final int segments, final ISegmentSink sink) throws Exception {
+        final long segmentSize = (size + segments - 1) / segments;
+        final List<DownloadSegment> downloads = new ArrayList<>(segments);
+        for (long offset = 0; offset < size; offset += segmentSize) {
+            final long length = Math.min(segmentSize, size - offset);
+            downloads.add(new DownloadSegment(connections, filename, offset, length, offset + length == size, sink));
+        }
+        run(executor, downloads);
+    }
+
+    /**
+     * Servers might truncate the file to the REST offset when a STOR is started (e.g. Apache FtpServer), thus a segment
+     * is only started after the server has begun writing the previous one. The remote size only signals this reliably
+     * when the file grows from empty, thus an existing file is deleted first.
+     */
+    public static void upload(final ExecutorService executor, final IFtpConnectionProvider connections,
+            final File file, final String filename, final int segments) throws Exception {
+        final long size = file.length();
+        try (FtpConnection connection = connections.borrowConnection()) {
+            deleteIfExists(connection.getFtpClient(), filename);
+        }
+        final long segmentSize = (size + segments - 1) / segments;
+        final List<UploadSegment> uploads = new ArrayList<>(segments);
+        UploadSegment previous = null;
+        for (long offset = 0; offset < size; offset += segmentSize) {
+            final long length = Math.min(segmentSize, size - offset);
+            final UploadSegment upload = new UploadSegment(connections, filename, offset, length, file, previous);
+            uploads.add(upload);
+            previous = upload;
+        }
+        run(executor, uploads);
+        try (FtpConnection connection = connections.borrowConnection()) {
+            final long remoteSize = connection.getFtpClient().fileSize(filename);
+            if (remoteSize != size) {
+                throw new IOException("Segmented upload of [" + filename + "] resulted in a size of " + remoteSize
+                        + " while " + size + " was expected");
+            }
+        }
+    }
+
+    private static void deleteIfExists(final FTPClient ftpClient, final String filename) throws Exception {
+        try {
+            ftpClient.deleteFile(filename);
+        } catch (final FTPException e) {
+            //file does not exist
+        }
+    }
+
+    private static void run(final ExecutorService executor, final List<? extends ASegment> segments)
+            throws Exception {
+        final List<Future<Void>> futures = new ArrayList<>(segments.size());
+        for (final ASegment segment : segments) {
+            futures.add(executor.submit(segment));
+        }
+        try {
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (final ExecutionException e) {
+            abort(segments, futures);
+            throw new IOException("Segmented transfer failed", e.getCause());
+        } catch (final InterruptedException e) {
+            abort(segments, futures);
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for the remaining segments to finish so that nobody writes into the sink anymore.
+     */
+    private static void abort(final List<? extends ASegment> segments, final List<Future<Void>> futures) {
+        for (final ASegment segment : segments) {
+            segment.abort();
+        }
+        for (final Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (final Throwable t) {
+                //ignore
+            }
+        }
+    }
+
+    /**
+     * Segments call this concurrently for distinct ranges.
+     */
+    public interface ISegmentSink {
+
+        void write(long position, byte[] b, int off, int len) throws IOException;
+
+    }
+
+    @ThreadSafe
+    private abstract static class ASegment implements Callable<Void> {
+
+        protected final IFtpConnectionProvider connections;
+        protected final String filename;
+        protected final long offset;
+        protected final long length;
+        @GuardedBy("this")
+        private FtpConnection connection;
+        private volatile boolean aborted;
+        private volatile boolean finished;
+
+        ASegment(final IFtpConnectionProvider connections, final String filename, final long offset,
+                final long length) {
+            this.connections = connections;
+            this.filename = filename;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            try {
+                if (aborted) {
+                    throw new FTPAbortedException();
+                }
+                final FtpConnection connection = connections.borrowConnection();
+                synchronized (this) {
+                    this.connection = connection;
+                }
+                try {
+                    transfer(connection);
+                } catch (final Throwable t) {
+                    //an error reply leaves the session intact, anything else might not
+                    if (!(t instanceof FTPException)) {
+                        connection.markBroken();
+                    }
+                    throw t;
+                } finally {
+                    synchronized (this) {
+                        this.connection = null;
+                    }
+                    connection.close();
+                }
+            } finally {
+                finished = true;
+            }
+            return null;
+        }
+
+        protected abstract void transfer(FtpConnection connection) throws Exception;
+
+        protected boolean isAborted() {
+            return aborted;
+        }
+
+        public boolean isFinished() {
+            return finished;
+        }
+
+        public synchronized void abort() {
+            aborted = true;
+            if (connection != null) {
+                connection.markBroken();
+                try {
+                    connection.getFtpClient().abortCurrentDataTransfer(false);
+                } catch (final Throwable t) {
+                    //ignore
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return filename + "[" + offset + "-" + (offset + length) + ")";
+        }
+
+    }
+
+    @ThreadSafe
+    private static final class DownloadSegment extends ASegment {
+
+        private final boolean last;
+        private final ISegmentSink sink;
+
+        DownloadSegment(final IFtpConnectionProvider connections, final String filename, final long offset,
+                final long length, final boolean last, final ISegmentSink sink) {
+            super(connections, filename, offset, length);
+            this.last = last;
+            this.sink = sink;
+        }
+
+        @Override
+        protected void transfer(final FtpConnection connection) throws Exception {
+            final SegmentOutputStream out = new SegmentOutputStream(connection);
+            try {
+                connection.getFtpClient().download(filename, out, offset, null);
+            } catch (final FTPAbortedException e) {
+                //we abort the transfer ourselves when the end of the segment is reached
+                if (isAborted() || !out.isComplete()) {
+                    throw e;
+                }
+            }
+            if (!out.isComplete()) {
+                throw new IOException("Segment " + this + " ended after " + (out.position - offset) + " bytes");
+            }
+        }
+
+        @NotThreadSafe
+        private final class SegmentOutputStream extends OutputStream {
+
+            private final FtpConnection connection;
+            private long position = offset;
+            private long remaining = length;
+
+            SegmentOutputStream(final FtpConnection connection) {
+                this.connection = connection;
+            }
+
+            public boolean isComplete() {
+                return remaining == 0;
+            }
+
+            @Override
+            public void write(final int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                if (len > remaining && last) {
+                    throw new IOException("Segment " + DownloadSegment.this
+                            + " received more bytes than expected, the file seems to have been modified");
+                }
+                final int write = (int) Math.min(len, remaining);
+                if (write == 0) {
+                    return;
+                }
+                sink.write(position, b, off, write);
+                position += write;
+                remaining -= write;
+                if (remaining == 0 && !last) {
+                    //ABOR lets the server answer the transfer with 426 and the ABOR with 226, the client reads both
+                    //replies before download() returns so that the session stays usable, while reading to the end
+                    //instead would transfer the rest of the file once per segment
+                    try {
+                        connection.getFtpClient().abortCurrentDataTransfer(true);
+                    } catch (final Throwable t) {
+                        connection.markBroken();
+                        throw new IOException(t);
+                    }
+                }
+            }
+
+        }
+
+    }
+
+    @ThreadSafe
+    private static final class UploadSegment extends ASegment {
+
+        private final File file;
+        private final UploadSegment previous;
+
+        UploadSegment(final IFtpConnectionProvider connections, final String filename, final long offset,
+                final long length, final File file, final UploadSegment previous) {
+            super(connections, filename, offset, length);
+            this.file = file;
+            this.previous = previous;
+        }
+
+        @Override
+        protected void transfer(final FtpConnection connection) throws Exception {
+            final FTPClient ftpClient = connection.getFtpClient();
+            if (previous != null) {
+                awaitPreviousStarted(ftpClient);
+            }
+            try (InputStream in = newInputStream()) {
+                ftpClient.upload(filename, in, offset, 0, null);
+            }
+        }
+
+        private void awaitPreviousStarted(final FTPClient ftpClient) throws Exception {
+            while (!previous.isFinished()) {
+                if (isAborted()) {
+                    throw new FTPAbortedException();
+                }
+                try {
+                    if (ftpClient.fileSize(filename) > previous.offset) {
+                        return;
+                    }
+                } catch (final FTPException e) {
+                    //file not created yet
+                }
+                Thread.sleep(UPLOAD_START_POLL_MILLIS);
+            }
+        }
+
+        private InputStream newInputStream() throws IOException {
+            final FileInputStream in = new FileInputStream(file);
+            try {
+                in.getChannel().position(offset);
+            } catch (final IOException e) {
+                in.close();
+                throw e;
+            }
+            return new BoundedInputStream(in, length);
+        }
+
+    }
+
+}
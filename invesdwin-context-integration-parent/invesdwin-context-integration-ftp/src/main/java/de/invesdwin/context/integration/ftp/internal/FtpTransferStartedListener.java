@@ -0,0 +1,67 @@
+package de.invesdwin.context.integration.ftp.internal;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import it.sauronsoftware.ftp4j.FTPDataTransferListener;
+
+/**
+ * Allows the caller of a background transfer to wait until the server accepted the transfer command. This way errors
+ * like a missing file are thrown in the calling thread instead of being hidden inside the transfer thread.
+ */
+@ThreadSafe
+public class FtpTransferStartedListener implements FTPDataTransferListener {
+
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private final CountDownLatch startedLatch = new CountDownLatch(1);
+
+    @Override
+    public void started() {
+        startedLatch.countDown();
+    }
+
+    @Override
+    public void transferred(final int length) {}
+
+    @Override
+    public void completed() {}
+
+    @Override
+    public void aborted() {}
+
+    @Override
+    public void failed() {}
+
+    public boolean isStarted() {
+        return startedLatch.getCount() == 0;
+    }
+
+    /**
+     * Blocks until the transfer was started by the server or rethrows the error of the transfer if it failed before
+     * that.
+     */
+    public void awaitStarted(final Future<?> transfer) throws Exception {
+        while (!startedLatch.await(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (transfer.isDone()) {
+                try {
+                    transfer.get();
+                } catch (final ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    } else {
+                        throw new RuntimeException(cause);
+                    }
+                }
+                //finished without starting, e.g. nothing to transfer
+                return;
+            }
+        }
+    }
+
+}
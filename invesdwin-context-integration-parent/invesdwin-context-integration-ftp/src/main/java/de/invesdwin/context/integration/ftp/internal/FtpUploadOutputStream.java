@@ -0,0 +1,141 @@
+package de.invesdwin.context.integration.ftp.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import de.invesdwin.context.integration.ftp.FtpClientProperties;
+import de.invesdwin.context.integration.ftp.pool.FtpConnection;
+import it.sauronsoftware.ftp4j.FTPException;
+
+/**
+ * Pushes the written bytes through a bounded pipe to a background thread that uploads them over the ftp data
+ * connection while they are being produced. The producer blocks when it is faster than the network. Closing the stream
+ * finishes the upload and rethrows any error that occurred during the transfer. The connection is given back to the
+ * pool when the transfer ended.
+ */
+@NotThreadSafe
+public final class FtpUploadOutputStream extends OutputStream {
+
+    private final FtpConnection connection;
+    private final PipedOutputStream pipe;
+    private final Future<?> transfer;
+    private boolean closed;
+
+    private FtpUploadOutputStream(final FtpConnection connection, final PipedOutputStream pipe,
+            final Future<?> transfer) {
+        this.connection = connection;
+        this.pipe = pipe;
+        this.transfer = transfer;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        try {
+            pipe.write(b);
+        } catch (final IOException e) {
+            throw maybeTransferFailed(e);
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        try {
+            pipe.write(b, off, len);
+        } catch (final IOException e) {
+            throw maybeTransferFailed(e);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        try {
+            pipe.flush();
+        } catch (final IOException e) {
+            throw maybeTransferFailed(e);
+        }
+    }
+
+    /**
+     * A broken pipe is only a symptom, the actual cause is the failed transfer.
+     */
+    private IOException maybeTransferFailed(final IOException e) {
+        if (transfer.isDone()) {
+            try {
+                transfer.get();
+            } catch (final InterruptedException e1) {
+                Thread.currentThread().interrupt();
+            } catch (final ExecutionException e1) {
+                return new IOException("Upload failed", e1.getCause());
+            }
+        }
+        return e;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            pipe.close();
+        } catch (final IOException e) {
+            throw maybeTransferFailed(e);
+        }
+        try {
+            transfer.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            connection.markBroken();
+            transfer.cancel(true);
+            throw new IOException(e);
+        } catch (final ExecutionException e) {
+            throw new IOException("Upload failed", e.getCause());
+        }
+    }
+
+    /**
+     * The connection is owned by the returned stream from now on, also when an exception is thrown.
+     */
+    public static FtpUploadOutputStream upload(final ExecutorService executor, final FtpConnection connection,
+            final String filename) throws Exception {
+        final PipedInputStream in = new PipedInputStream(FtpClientProperties.STREAMING_BUFFER_SIZE);
+        final PipedOutputStream pipe = new PipedOutputStream(in);
+        final FtpTransferStartedListener listener = new FtpTransferStartedListener();
+        final Future<?> transfer = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                try {
+                    connection.getFtpClient().upload(filename, in, 0, 0, listener);
+                } catch (final Throwable t) {
+                    //an error reply leaves the session intact, anything else might not
+                    if (!(t instanceof FTPException)) {
+                        connection.markBroken();
+                    }
+                    throw t;
+                } finally {
+                    connection.close();
+                    //unblocks the producer in case it waits for free space in the pipe
+                    in.close();
+                }
+                return null;
+            }
+        });
+        try {
+            listener.awaitStarted(transfer);
+        } catch (final Throwable t) {
+            pipe.close();
+            throw t;
+        }
+        return new FtpUploadOutputStream(connection, pipe, transfer);
+    }
+
+}
@@ -0,0 +1,12 @@
+package de.invesdwin.context.integration.ftp.internal;
+
+import de.invesdwin.context.integration.ftp.pool.FtpConnection;
+
+/**
+ * Hands out pooled connections that are already changed into the working directory of a channel.
+ */
+public interface IFtpConnectionProvider {
+
+    FtpConnection borrowConnection() throws Exception;
+
+}
@@ -0,0 +1,111 @@
+package de.invesdwin.context.integration.ftp.pool;
+
+import java.io.Closeable;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import it.sauronsoftware.ftp4j.FTPClient;
+
+/**
+ * An authenticated ftp session that is borrowed from the FtpConnectionPool. Closing it gives it back to the pool
+ * instead of logging out.
+ */
+@NotThreadSafe
+public final class FtpConnection implements Closeable {
+
+    private final FtpConnectionPool pool;
+    private final FtpConnectionKey key;
+    private final FTPClient ftpClient;
+    private String currentDirectory;
+    private volatile long lastUsedMillis;
+    private volatile boolean broken;
+    private volatile boolean closed;
+
+    FtpConnection(final FtpConnectionPool pool, final FtpConnectionKey key, final FTPClient ftpClient) {
+        this.pool = pool;
+        this.key = key;
+        this.ftpClient = ftpClient;
+        this.lastUsedMillis = System.currentTimeMillis();
+    }
+
+    public FtpConnectionKey getKey() {
+        return key;
+    }
+
+    public FTPClient getFtpClient() {
+        return ftpClient;
+    }
+
+    /**
+     * The working directory is remembered so that a channel for the same directory does not need to change it again.
+     */
+    public String getCurrentDirectory() {
+        return currentDirectory;
+    }
+
+    public void setCurrentDirectory(final String currentDirectory) {
+        this.currentDirectory = currentDirectory;
+    }
+
+    long getLastUsedMillis() {
+        return lastUsedMillis;
+    }
+
+    void borrowed() {
+        closed = false;
+    }
+
+    void released() {
+        lastUsedMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Call this when the session might be in an undefined state (e.g. after an aborted transfer), so it gets
+     * disconnected instead of being reused.
+     */
+    public void markBroken() {
+        broken = true;
+    }
+
+    public boolean isBroken() {
+        return broken || !ftpClient.isConnected() || !ftpClient.isAuthenticated();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pool.release(this);
+    }
+
+    void disconnect() {
+        if (ftpClient.isConnected()) {
+            try {
+                ftpClient.logout();
+            } catch (final Throwable t) {
+                // do nothing
+            }
+            try {
+                ftpClient.disconnect(true);
+            } catch (final Throwable t) {
+                try {
+                    ftpClient.disconnect(false);
+                } catch (final Throwable t1) {
+                    // do nothing
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return key + currentDirectory;
+    }
+
+}
@@ -0,0 +1,243 @@
+package de.invesdwin.context.integration.ftp.pool;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.ContextProperties;
+import de.invesdwin.context.integration.ftp.FtpClientProperties;
+import de.invesdwin.util.concurrent.Executors;
+import de.invesdwin.util.concurrent.WrappedScheduledExecutorService;
+import de.invesdwin.util.time.date.FTimeUnit;
+import de.invesdwin.util.time.duration.Duration;
+import it.sauronsoftware.ftp4j.FTPClient;
+
+/**
+ * Keeps authenticated ftp sessions per server and credentials so that short lived channels don't have to pay the
+ * connect and login latency each time. Idle sessions are checked via NOOP before they are handed out again and get
+ * disconnected after FtpClientProperties.CONNECTION_POOL_IDLE_TIMEOUT. Borrowers wait when
+ * FtpClientProperties.CONNECTION_POOL_MAX_CONNECTIONS_PER_SERVER sessions are in use.
+ */
+@ThreadSafe
+public final class FtpConnectionPool {
+
+    private static final WrappedScheduledExecutorService EVICTOR = Executors
+            .newScheduledThreadPool(FtpConnectionPool.class.getSimpleName() + "_EVICTOR", 1);
+    //sessions that were not used for a while might have been closed by the server
+    private static final Duration VALIDATE_AFTER_IDLE = new Duration(5, FTimeUnit.SECONDS);
+
+    //needs to be initialized after the evictor
+    public static final FtpConnectionPool INSTANCE = new FtpConnectionPool();
+
+    @GuardedBy("this")
+    private final Map<FtpConnectionKey, ServerPool> serverPools = new HashMap<>();
+
+    private FtpConnectionPool() {
+        final long evictIntervalMillis = Math.max(FTimeUnit.MILLISECONDS_IN_SECOND,
+                FtpClientProperties.CONNECTION_POOL_IDLE_TIMEOUT.longValue(FTimeUnit.MILLISECONDS) / 2);
+        EVICTOR.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdle();
+            }
+        }, evictIntervalMillis, evictIntervalMillis, FTimeUnit.MILLISECONDS.timeUnitValue());
+    }
+
+    public FtpConnection borrow(final FtpConnectionKey key) throws Exception {
+        return getServerPool(key).borrow();
+    }
+
+    void release(final FtpConnection connection) {
+        getServerPool(connection.getKey()).release(connection);
+    }
+
+    public void evictIdle() {
+        for (final ServerPool serverPool : getServerPools()) {
+            serverPool.evict(FtpClientProperties.CONNECTION_POOL_IDLE_TIMEOUT.longValue(FTimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * Disconnects all idle sessions. Borrowed sessions are disconnected when they are given back.
+     */
+    public void clear() {
+        for (final ServerPool serverPool : getServerPools()) {
+            serverPool.evict(0);
+        }
+    }
+
+    public int getIdleCount(final FtpConnectionKey key) {
+        return getServerPool(key).getIdleCount();
+    }
+
+    public int getOpenCount(final FtpConnectionKey key) {
+        return getServerPool(key).getOpenCount();
+    }
+
+    private synchronized List<ServerPool> getServerPools() {
+        return new ArrayList<>(serverPools.values());
+    }
+
+    private synchronized ServerPool getServerPool(final FtpConnectionKey key) {
+        ServerPool serverPool = serverPools.get(key);
+        if (serverPool == null) {
+            serverPool = new ServerPool(key);
+            serverPools.put(key, serverPool);
+        }
+        return serverPool;
+    }
+
+    private static FTPClient newFtpClient(final FtpConnectionKey key) throws Exception {
+        final FTPClient ftpClient = new FTPClient();
+        //be a bit more firewall friendly
+        ftpClient.setPassive(true);
+
+        final int timeoutSeconds = ContextProperties.DEFAULT_NETWORK_TIMEOUT.intValue(FTimeUnit.SECONDS);
+        ftpClient.setAutoNoopTimeout(timeoutSeconds * FTimeUnit.MILLISECONDS_IN_SECOND);
+        ftpClient.getConnector().setConnectionTimeout(timeoutSeconds);
+        ftpClient.getConnector().setReadTimeout(timeoutSeconds);
+        ftpClient.getConnector().setCloseTimeout(timeoutSeconds);
+        ftpClient.setType(FTPClient.TYPE_BINARY);
+        //machine readable listings with exact sizes and timestamps
+        ftpClient.setMLSDPolicy(FTPClient.MLSD_IF_SUPPORTED);
+        try {
+            ftpClient.connect(key.getHost(), key.getPort());
+            ftpClient.login(key.getUsername(), key.getPassword());
+        } catch (final Throwable t) {
+            try {
+                ftpClient.disconnect(false);
+            } catch (final Throwable t1) {
+                // do nothing
+            }
+            throw t;
+        }
+        return ftpClient;
+    }
+
+    private final class ServerPool {
+
+        private final FtpConnectionKey key;
+        @GuardedBy("this")
+        private final Deque<FtpConnection> idle = new ArrayDeque<>();
+        @GuardedBy("this")
+        private int openCount;
+
+        private ServerPool(final FtpConnectionKey key) {
+            this.key = key;
+        }
+
+        public FtpConnection borrow() throws Exception {
+            final long deadlineMillis = System.currentTimeMillis() + ContextProperties.DEFAULT_NETWORK_TIMEOUT_MILLIS;
+            while (true) {
+                FtpConnection connection;
+                synchronized (this) {
+                    //most recently used first, so that rarely used sessions can time out
+                    connection = idle.pollFirst();
+                    if (connection == null) {
+                        if (openCount >= FtpClientProperties.CONNECTION_POOL_MAX_CONNECTIONS_PER_SERVER) {
+                            final long remainingMillis = deadlineMillis - System.currentTimeMillis();
+                            if (remainingMillis <= 0) {
+                                throw new TimeoutException("No ftp connection to [" + key + "] got available after "
+                                        + ContextProperties.DEFAULT_NETWORK_TIMEOUT + " while "
+                                        + FtpClientProperties.CONNECTION_POOL_MAX_CONNECTIONS_PER_SERVER
+                                        + " are in use");
+                            }
+                            wait(remainingMillis);
+                            continue;
+                        }
+                        openCount++;
+                    }
+                }
+                if (connection == null) {
+                    try {
+                        connection = new FtpConnection(FtpConnectionPool.this, key, newFtpClient(key));
+                    } catch (final Throwable t) {
+                        closed();
+                        throw t;
+                    }
+                } else if (!isValid(connection)) {
+                    destroy(connection);
+                    continue;
+                }
+                connection.borrowed();
+                return connection;
+            }
+        }
+
+        private boolean isValid(final FtpConnection connection) {
+            if (connection.isBroken()) {
+                return false;
+            }
+            final long idleMillis = System.currentTimeMillis() - connection.getLastUsedMillis();
+            if (idleMillis > VALIDATE_AFTER_IDLE.longValue(FTimeUnit.MILLISECONDS)) {
+                try {
+                    connection.getFtpClient().noop();
+                } catch (final Throwable t) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public void release(final FtpConnection connection) {
+            if (connection.isBroken()) {
+                destroy(connection);
+                return;
+            }
+            connection.released();
+            synchronized (this) {
+                idle.addFirst(connection);
+                notifyAll();
+            }
+        }
+
+        public void evict(final long idleTimeoutMillis) {
+            final List<FtpConnection> evicted = new ArrayList<>();
+            final long now = System.currentTimeMillis();
+            synchronized (this) {
+                //least recently used are at the end
+                final Iterator<FtpConnection> it = idle.descendingIterator();
+                while (it.hasNext()) {
+                    final FtpConnection connection = it.next();
+                    if (now - connection.getLastUsedMillis() >= idleTimeoutMillis) {
+                        it.remove();
+                        evicted.add(connection);
+                    } else {
+                        break;
+                    }
+                }
+            }
+            for (final FtpConnection connection : evicted) {
+                destroy(connection);
+            }
+        }
+
+        private void destroy(final FtpConnection connection) {
+            connection.disconnect();
+            closed();
+        }
+
+        private synchronized void closed() {
+            openCount--;
+            notifyAll();
+        }
+
+        public synchronized int getIdleCount() {
+            return idle.size();
+        }
+
+        public synchronized int getOpenCount() {
+            return openCount;
+        }
+
+    }
+
+}
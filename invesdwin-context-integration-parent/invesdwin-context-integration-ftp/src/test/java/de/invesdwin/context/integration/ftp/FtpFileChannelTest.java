@@ -1,18 +1,39 @@
 package de.invesdwin.context.integration.ftp;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.inject.Inject;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.RandomUtils;
 import org.junit.Test;
 
+import de.invesdwin.context.integration.ftp.internal.AFtpResumableTransfer;
+import de.invesdwin.context.integration.ftp.internal.IFtpConnectionProvider;
+import de.invesdwin.context.integration.ftp.pool.FtpConnection;
+import de.invesdwin.context.integration.ftp.pool.FtpConnectionKey;
+import de.invesdwin.context.integration.ftp.pool.FtpConnectionPool;
 import de.invesdwin.context.integration.ws.registry.RegistryServiceStub;
 import de.invesdwin.context.test.ATest;
 import de.invesdwin.context.test.TestContext;
 import de.invesdwin.util.assertions.Assertions;
 import de.invesdwin.util.error.UnknownArgumentException;
+import it.sauronsoftware.ftp4j.FTPClient;
+import it.sauronsoftware.ftp4j.FTPFile;
 
 @NotThreadSafe
 public class FtpFileChannelTest extends ATest {
@@ -60,6 +81,437 @@ public class FtpFileChannelTest extends ATest {
         channel.close();
     }
 
+    @Test
+    public void testDownloadInputStream() throws IOException {
+        final URI destination = getDestination();
+        final FtpFileChannel channel = new FtpFileChannel(destination, FtpFileChannelTest.class.getSimpleName());
+        channel.connect();
+        channel.createUniqueFile();
+        final byte[] write = new byte[FtpClientProperties.STREAMING_BUFFER_SIZE * 4];
+        for (int i = 0; i < write.length; i++) {
+            write[i] = (byte) i;
+        }
+        channel.upload(write);
+        try (InputStream in = channel.downloadInputStream()) {
+            //close before the transfer finished
+            Assertions.assertThat(in.read()).isEqualTo(0);
+        }
+        try (InputStream in = channel.downloadInputStream()) {
+            Assertions.assertThat(IOUtils.toByteArray(in)).isEqualTo(write);
+        }
+        channel.setDownloadTempFileEnabled(true);
+        Assertions.assertThat(channel.download()).isEqualTo(write);
+        channel.delete();
+        Assertions.checkNull(channel.downloadInputStream());
+        channel.setDownloadTempFileEnabled(false);
+        Assertions.checkNull(channel.downloadInputStream());
+        channel.close();
+    }
+
+    @Test
+    public void testUploadOutputStream() throws IOException {
+        final URI destination = getDestination();
+        final FtpFileChannel channel = new FtpFileChannel(destination, FtpFileChannelTest.class.getSimpleName());
+        channel.connect();
+        channel.createUniqueFile();
+        final byte[] write = new byte[FtpClientProperties.STREAMING_BUFFER_SIZE * 4];
+        for (int i = 0; i < write.length; i++) {
+            write[i] = (byte) i;
+        }
+        try (OutputStream out = channel.uploadOutputStream()) {
+            for (int i = 0; i < write.length; i++) {
+                out.write(write[i]);
+            }
+        }
+        Assertions.assertThat(channel.size()).isEqualTo(write.length);
+        Assertions.assertThat(channel.download()).isEqualTo(write);
+        channel.setUploadTempFileEnabled(true);
+        try (OutputStream out = channel.uploadOutputStream()) {
+            out.write(write, 0, 1);
+        }
+        Assertions.assertThat(channel.size()).isEqualTo(1);
+        channel.setUploadTempFileEnabled(false);
+        try (OutputStream out = channel.uploadOutputStream()) {
+            //write an empty file
+        }
+        Assertions.assertThat(channel.size()).isEqualTo(0);
+        channel.delete();
+        channel.close();
+    }
+
+    @Test
+    public void testConnectionPool() throws IOException {
+        final URI destination = getDestination();
+        final FtpConnectionKey key = new FtpConnectionKey(destination, FtpClientProperties.USERNAME,
+                FtpClientProperties.PASSWORD);
+        FtpConnectionPool.INSTANCE.clear();
+        Assertions.assertThat(FtpConnectionPool.INSTANCE.getOpenCount(key)).isEqualTo(0);
+        final FtpFileChannel channel = new FtpFileChannel(destination, FtpFileChannelTest.class.getSimpleName());
+        channel.connect();
+        channel.createUniqueFile();
+        final String filename = channel.getFilename();
+        channel.close();
+        Assertions.assertThat(FtpConnectionPool.INSTANCE.getIdleCount(key)).isEqualTo(1);
+        for (int i = 0; i < 10; i++) {
+            final FtpFileChannel pooledChannel = new FtpFileChannel(destination,
+                    FtpFileChannelTest.class.getSimpleName());
+            pooledChannel.setFilename(filename);
+            pooledChannel.connect();
+            Assertions.checkTrue(pooledChannel.exists());
+            pooledChannel.close();
+            //the session is reused instead of connecting again
+            Assertions.assertThat(FtpConnectionPool.INSTANCE.getOpenCount(key)).isEqualTo(1);
+        }
+        final FtpFileChannel streamingChannel = new FtpFileChannel(destination,
+                FtpFileChannelTest.class.getSimpleName());
+        streamingChannel.setFilename(filename);
+        streamingChannel.connect();
+        try (InputStream in = streamingChannel.downloadInputStream()) {
+            //the stream takes over the session of the channel instead of borrowing a second one
+            Assertions.assertThat(FtpConnectionPool.INSTANCE.getOpenCount(key)).isEqualTo(1);
+            Assertions.assertThat(IOUtils.toByteArray(in)).isEmpty();
+        }
+        streamingChannel.close();
+        final FtpFileChannel otherDirectoryChannel = new FtpFileChannel(destination,
+                FtpFileChannelTest.class.getSimpleName() + "_other");
+        otherDirectoryChannel.setFilename(filename);
+        otherDirectoryChannel.connect();
+        Assertions.checkFalse(otherDirectoryChannel.exists());
+        otherDirectoryChannel.close();
+        channel.connect();
+        channel.delete();
+        channel.close();
+        FtpConnectionPool.INSTANCE.clear();
+        Assertions.assertThat(FtpConnectionPool.INSTANCE.getOpenCount(key)).isEqualTo(0);
+    }
+
+    @Test
+    public void testSegmentedTransfer() throws IOException {
+        final URI destination = getDestination();
+        final FtpFileChannel channel = new FtpFileChannel(destination, FtpFileChannelTest.class.getSimpleName());
+        channel.setTransferSegments(4);
+        channel.setTransferMinSegmentSize(FtpClientProperties.STREAMING_BUFFER_SIZE);
+        final byte[] write = RandomUtils.nextBytes(FtpClientProperties.STREAMING_BUFFER_SIZE * 10 + 3);
+        final File file = new File(FtpClientProperties.TEMP_DIRECTORY,
+                FtpFileChannelTest.class.getSimpleName() + "_testSegmentedTransfer.channel");
+        FileUtils.writeByteArrayToFile(file, write);
+        channel.setFilename(file.getName());
+        channel.connect();
+        //segments must not write into the remains of a larger existing file
+        channel.upload(RandomUtils.nextBytes(write.length * 2));
+        channel.upload(file);
+        file.delete();
+        Assertions.assertThat(channel.size()).isEqualTo(write.length);
+        Assertions.assertThat(channel.download()).isEqualTo(write);
+        //segments that end before the file are aborted without discarding their sessions
+        final FtpConnectionKey key = new FtpConnectionKey(destination, FtpClientProperties.USERNAME,
+                FtpClientProperties.PASSWORD);
+        Assertions.assertThat(FtpConnectionPool.INSTANCE.getIdleCount(key)).isGreaterThanOrEqualTo(3);
+        channel.setDownloadTempFileEnabled(true);
+        Assertions.assertThat(channel.download()).isEqualTo(write);
+        channel.setTransferSegments(1);
+        Assertions.assertThat(channel.download()).isEqualTo(write);
+        channel.delete();
+        channel.close();
+    }
+
+    @Test
+    public void testResumedUpload() throws Exception {
+        final URI destination = getDestination();
+        final FtpFileChannel channel = new FtpFileChannel(destination, FtpFileChannelTest.class.getSimpleName());
+        channel.setFilename("testResumedUpload.channel");
+        channel.connect();
+        channel.delete();
+        final String directory = channel.getDirectory();
+        final FtpConnectionKey key = new FtpConnectionKey(destination, FtpClientProperties.USERNAME,
+                FtpClientProperties.PASSWORD);
+        final IFtpConnectionProvider connections = new IFtpConnectionProvider() {
+            @Override
+            public FtpConnection borrowConnection() throws Exception {
+                final FtpConnection connection = FtpConnectionPool.INSTANCE.borrow(key);
+                connection.getFtpClient().changeDirectory(directory);
+                connection.setCurrentDirectory(directory);
+                return connection;
+            }
+        };
+        final byte[] write = RandomUtils.nextBytes(FtpClientProperties.STREAMING_BUFFER_SIZE * 3 + 7);
+        final int brokenAt = write.length / 2;
+        final List<Long> offsets = new ArrayList<>();
+        final AFtpResumableTransfer transfer = new AFtpResumableTransfer(connections, true) {
+            @Override
+            protected void transfer(final FTPClient ftpClient, final long offset) throws Exception {
+                offsets.add(offset);
+                if (offsets.size() == 1) {
+                    //the connection breaks after half of the file reached the server
+                    ftpClient.upload(channel.getFilename(), new ByteArrayInputStream(write, 0, brokenAt), 0, 0,
+                            null);
+                    throw new IOException("connection broken");
+                }
+                ftpClient.upload(channel.getFilename(),
+                        new ByteArrayInputStream(write, (int) offset, write.length - (int) offset), offset, 0, null);
+            }
+
+            @Override
+            protected long getResumeOffset(final FTPClient ftpClient) throws Exception {
+                return ftpClient.fileSize(channel.getFilename());
+            }
+        };
+        try (FtpConnection connection = connections.borrowConnection()) {
+            transfer.run(connection);
+        }
+        Assertions.assertThat(offsets).containsExactly(0L, (long) brokenAt);
+        Assertions.assertThat(channel.size()).isEqualTo(write.length);
+        Assertions.assertThat(channel.download()).isEqualTo(write);
+        channel.delete();
+        channel.close();
+    }
+
+    @Test
+    public void testDirectoryCache() {
+        final URI destination = getDestination();
+        final FtpFileChannel channel = new FtpFileChannel(destination, FtpFileChannelTest.class.getSimpleName());
+        channel.setDirectoryCacheEnabled(true);
+        channel.connect();
+        channel.clearDirectoryCache();
+        channel.createUniqueFile();
+        final String filename = channel.getFilename();
+        Assertions.checkTrue(channel.exists());
+        Assertions.assertThat(channel.size()).isEqualTo(0);
+        final byte[] write = "hello world".getBytes();
+        channel.listFiles();
+        channel.upload(write);
+        //uploads invalidate the cached entry
+        boolean found = false;
+        for (final FTPFile file : channel.listFiles()) {
+            if (file.getName().equals(filename)) {
+                //the listing refreshes the invalidated entry
+                Assertions.assertThat(file.getSize()).isEqualTo(write.length);
+                found = true;
+            }
+        }
+        Assertions.checkTrue(found);
+        Assertions.assertThat(channel.size()).isEqualTo(write.length);
+        Assertions.assertThat(channel.info().getSize()).isEqualTo(write.length);
+        Assertions.checkNotNull(channel.modified());
+        channel.delete();
+        Assertions.checkFalse(channel.exists());
+        Assertions.assertThat(channel.size()).isEqualTo(-1);
+        Assertions.checkNull(channel.modified());
+        channel.clearDirectoryCache();
+        channel.close();
+    }
+
+    @Test
+    public void testListIterator() {
+        final URI destination = getDestination();
+        final FtpFileChannel channel = new FtpFileChannel(destination,
+                FtpFileChannelTest.class.getSimpleName() + "_testListIterator");
+        channel.connect();
+        for (final FTPFile file : channel.list()) {
+            channel.setFilename(file.getName());
+            channel.delete();
+        }
+        for (int i = 0; i < 10; i++) {
+            channel.createUniqueFile("a_", ".channel");
+            channel.createUniqueFile("b_", ".channel");
+        }
+        int count = 0;
+        try (FtpFileIterator it = channel.listIterator()) {
+            while (it.hasNext()) {
+                it.next();
+                count++;
+            }
+        }
+        Assertions.assertThat(count).isEqualTo(20);
+        int prefixCount = 0;
+        try (FtpFileIterator it = channel.listIterator("a_")) {
+            while (it.hasNext()) {
+                Assertions.assertThat(it.next().getName()).startsWith("a_");
+                prefixCount++;
+            }
+        }
+        Assertions.assertThat(prefixCount).isEqualTo(10);
+        try (FtpFileIterator it = channel.listIterator("b_")) {
+            //close before the listing was consumed
+            Assertions.checkTrue(it.hasNext());
+        }
+        //the channel stays usable
+        Assertions.assertThat(channel.list().size()).isEqualTo(20);
+        for (final FTPFile file : channel.list()) {
+            channel.setFilename(file.getName());
+            channel.delete();
+        }
+        channel.close();
+    }
+
+    @Test
+    public void testCompression() throws IOException {
+        final URI destination = getDestination();
+        final FtpFileChannel channel = new FtpFileChannel(destination, FtpFileChannelTest.class.getSimpleName());
+        channel.setCompressionEnabled(true);
+        channel.connect();
+        channel.createUniqueFile();
+        final byte[] write = new byte[FtpClientProperties.STREAMING_BUFFER_SIZE * 4];
+        for (int i = 0; i < write.length; i++) {
+            write[i] = (byte) (i % 10);
+        }
+        channel.upload(write);
+        Assertions.checkTrue(channel.exists());
+        Assertions.assertThat(channel.download()).isEqualTo(write);
+        try (OutputStream out = channel.uploadOutputStream()) {
+            out.write(write);
+        }
+        try (InputStream in = channel.downloadInputStream()) {
+            Assertions.assertThat(IOUtils.toByteArray(in)).isEqualTo(write);
+        }
+        channel.setDownloadTempFileEnabled(true);
+        Assertions.assertThat(channel.download()).isEqualTo(write);
+        channel.delete();
+        Assertions.checkFalse(channel.exists());
+        Assertions.checkNull(channel.download());
+        channel.close();
+    }
+
+    @Test
+    public void testAsync() {
+        final URI destination = getDestination();
+        final FtpFileChannel channel = new FtpFileChannel(destination, FtpFileChannelTest.class.getSimpleName());
+        channel.connect();
+        final List<String> filenames = new ArrayList<>();
+        final List<CompletableFuture<Void>> uploads = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            channel.createUniqueFile();
+            filenames.add(channel.getFilename());
+            uploads.add(channel.uploadAsync(("hello world " + i).getBytes()));
+        }
+        CompletableFuture.allOf(uploads.toArray(new CompletableFuture[uploads.size()])).join();
+        final List<CompletableFuture<byte[]>> downloads = new ArrayList<>();
+        for (final String filename : filenames) {
+            channel.setFilename(filename);
+            downloads.add(channel.downloadAsync());
+        }
+        for (int i = 0; i < downloads.size(); i++) {
+            Assertions.assertThat(new String(downloads.get(i).join())).isEqualTo("hello world " + i);
+        }
+        Assertions.assertThat(channel.listAsync().join().size()).isGreaterThanOrEqualTo(filenames.size());
+        final List<CompletableFuture<Void>> deletes = new ArrayList<>();
+        for (final String filename : filenames) {
+            channel.setFilename(filename);
+            deletes.add(channel.deleteAsync());
+        }
+        CompletableFuture.allOf(deletes.toArray(new CompletableFuture[deletes.size()])).join();
+        for (final String filename : filenames) {
+            channel.setFilename(filename);
+            Assertions.checkFalse(channel.exists());
+        }
+        channel.close();
+    }
+
+    @Test
+    public void testBatch() {
+        final URI destination = getDestination();
+        final FtpFileChannel channel = new FtpFileChannel(destination, FtpFileChannelTest.class.getSimpleName());
+        channel.connect();
+        final Map<String, byte[]> filenameToBytes = new LinkedHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            filenameToBytes.put("batch_" + i + ".tmp", ("hello world " + i).getBytes());
+        }
+        Assertions.checkTrue(channel.uploadBatch(filenameToBytes).checkSuccess().isSuccess());
+        final FtpBatchResult<byte[]> downloads = channel.downloadBatch(filenameToBytes.keySet());
+        Assertions.checkTrue(downloads.isSuccess());
+        for (final Map.Entry<String, byte[]> e : filenameToBytes.entrySet()) {
+            Assertions.assertThat(downloads.getValue(e.getKey())).isEqualTo(e.getValue());
+        }
+        final FtpBatchResult<Void> deletes = channel.deleteBatch("batch_*.tmp");
+        Assertions.checkTrue(deletes.isSuccess());
+        Assertions.assertThat(deletes.size()).isEqualTo(filenameToBytes.size());
+        for (final String filename : filenameToBytes.keySet()) {
+            channel.setFilename(filename);
+            Assertions.checkFalse(channel.exists());
+        }
+        channel.close();
+    }
+
+    @Test
+    public void testDownloadCache() throws IOException {
+        final URI destination = getDestination();
+        final FtpFileChannel channel = new FtpFileChannel(destination, FtpFileChannelTest.class.getSimpleName());
+        channel.setDownloadCacheEnabled(true);
+        channel.connect();
+        channel.createUniqueFile();
+        channel.upload("hello world".getBytes());
+        final int countBefore = FtpFileChannel.DOWNLOAD_CACHE.getCount();
+        Assertions.assertThat(new String(channel.download())).isEqualTo("hello world");
+        Assertions.assertThat(FtpFileChannel.DOWNLOAD_CACHE.getCount()).isEqualTo(countBefore + 1);
+        try (InputStream in = channel.downloadInputStream()) {
+            Assertions.assertThat(new String(IOUtils.toByteArray(in))).isEqualTo("hello world");
+        }
+        Assertions.assertThat(FtpFileChannel.DOWNLOAD_CACHE.getCount()).isEqualTo(countBefore + 1);
+        //a different size results in a new entry
+        channel.upload("hello world again".getBytes());
+        Assertions.assertThat(new String(channel.download())).isEqualTo("hello world again");
+        Assertions.assertThat(FtpFileChannel.DOWNLOAD_CACHE.getCount()).isEqualTo(countBefore + 2);
+        channel.delete();
+        Assertions.checkNull(channel.download());
+        channel.close();
+    }
+
+    @Test
+    public void testDownloadFile() throws IOException {
+        final URI destination = getDestination();
+        final FtpFileChannel channel = new FtpFileChannel(destination, FtpFileChannelTest.class.getSimpleName());
+        channel.connect();
+        channel.createUniqueFile();
+        final byte[] write = RandomUtils.nextBytes(FtpClientProperties.STREAMING_BUFFER_SIZE * 3 + 3);
+        channel.upload(write);
+        final File file = new File(FtpClientProperties.TEMP_DIRECTORY,
+                FtpFileChannelTest.class.getSimpleName() + "_testDownloadFile.channel");
+        Assertions.checkTrue(channel.download(file));
+        Assertions.assertThat(FileUtils.readFileToByteArray(file)).isEqualTo(write);
+        //served from the local cache the second time
+        channel.setDownloadCacheEnabled(true);
+        Assertions.checkTrue(channel.download(file));
+        Assertions.checkTrue(channel.download(file));
+        Assertions.assertThat(FileUtils.readFileToByteArray(file)).isEqualTo(write);
+        channel.delete();
+        Assertions.checkFalse(channel.download(file));
+        file.delete();
+        channel.close();
+    }
+
+    @Test
+    public void testDownloadBuffer() {
+        final URI destination = getDestination();
+        final FtpFileChannel channel = new FtpFileChannel(destination, FtpFileChannelTest.class.getSimpleName());
+        channel.connect();
+        channel.createUniqueFile();
+        channel.upload("hello world".getBytes());
+        final ByteBuffer first = channel.downloadBuffer();
+        Assertions.assertThat(first.remaining()).isEqualTo("hello world".length());
+        channel.upload("hello".getBytes());
+        final ByteBuffer second = channel.downloadBuffer();
+        //the buffer is reused
+        Assertions.assertThat(second).isSameAs(first);
+        final byte[] secondBytes = new byte[second.remaining()];
+        second.get(secondBytes);
+        Assertions.assertThat(new String(secondBytes)).isEqualTo("hello");
+        final ByteBuffer heap = ByteBuffer.allocate(100);
+        Assertions.assertThat(channel.download(heap)).isEqualTo(5);
+        Assertions.assertThat(heap.position()).isEqualTo(5);
+        final ByteBuffer direct = ByteBuffer.allocateDirect(100);
+        Assertions.assertThat(channel.download(direct)).isEqualTo(5);
+        try {
+            channel.download(ByteBuffer.allocate(3));
+            Assertions.failBecauseExceptionWasNotThrown(BufferOverflowException.class);
+        } catch (final BufferOverflowException e) {
+            //expected
+        }
+        channel.delete();
+        Assertions.checkNull(channel.downloadBuffer());
+        Assertions.assertThat(channel.download(heap)).isEqualTo(-1);
+        channel.close();
+    }
+
     protected URI getDestination() {
         return destinationProvider.getDestination();
     }
@@ -0,0 +1,37 @@
+package de.invesdwin.context.integration.sftp;
+
+import java.io.File;
+
+import javax.annotation.concurrent.Immutable;
+
+import de.invesdwin.context.ContextProperties;
+import de.invesdwin.context.system.properties.SystemProperties;
+import de.invesdwin.util.time.duration.Duration;
+
+@Immutable
+public final class SftpClientProperties {
+
+    public static final File TEMP_DIRECTORY = new File(ContextProperties.TEMP_DIRECTORY,
+            SftpFileChannel.class.getSimpleName());
+    public static final Duration PURGE_TEMP_FILES_OLDER_THAN_DURATION = Duration.ONE_DAY;
+    public static final String USERNAME;
+    public static final String PASSWORD;
+    public static final boolean STRICT_HOST_KEY_CHECKING;
+    public static final int CONNECTION_POOL_MAX_CONNECTIONS_PER_SERVER;
+    public static final Duration CONNECTION_POOL_IDLE_TIMEOUT;
+    public static final int TRANSFER_BUFFER_SIZE;
+
+    static {
+        final SystemProperties systemProperties = new SystemProperties(SftpClientProperties.class);
+        USERNAME = systemProperties.getString("USERNAME");
+        PASSWORD = systemProperties.getStringWithSecurityWarning("PASSWORD", "invesdwin");
+        STRICT_HOST_KEY_CHECKING = systemProperties.getBoolean("STRICT_HOST_KEY_CHECKING");
+        CONNECTION_POOL_MAX_CONNECTIONS_PER_SERVER = systemProperties
+                .getInteger("CONNECTION_POOL_MAX_CONNECTIONS_PER_SERVER");
+        CONNECTION_POOL_IDLE_TIMEOUT = systemProperties.getDuration("CONNECTION_POOL_IDLE_TIMEOUT");
+        TRANSFER_BUFFER_SIZE = systemProperties.getInteger("TRANSFER_BUFFER_SIZE");
+    }
+
+    private SftpClientProperties() {}
+
+}
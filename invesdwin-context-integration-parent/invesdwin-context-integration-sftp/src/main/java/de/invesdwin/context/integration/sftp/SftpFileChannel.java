@@ -0,0 +1,521 @@
+package de.invesdwin.context.integration.sftp;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.common.SftpConstants;
+import org.apache.sshd.sftp.common.SftpException;
+
+import de.invesdwin.context.integration.filechannel.IFileChannel;
+import de.invesdwin.context.integration.sftp.pool.SftpConnection;
+import de.invesdwin.context.integration.sftp.pool.SftpConnectionKey;
+import de.invesdwin.context.integration.sftp.pool.SftpConnectionPool;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.lang.Files;
+import de.invesdwin.util.lang.Objects;
+import de.invesdwin.util.lang.Strings;
+import de.invesdwin.util.lang.UUIDs;
+import de.invesdwin.util.lang.description.TextDescription;
+import de.invesdwin.util.lang.finalizer.AFinalizer;
+import de.invesdwin.util.math.Bytes;
+import de.invesdwin.util.streams.ADelegateOutputStream;
+import de.invesdwin.util.time.date.FDate;
+
+/**
+ * Transfers files via SFTP. Reads and writes are sent as several outstanding requests of
+ * SftpClientProperties.TRANSFER_BUFFER_SIZE, so that a transfer does not wait for a roundtrip per request and can fill
+ * the ssh window on high latency links. Unlike FTP there is no separate data connection per transfer, all operations
+ * are requests on the pooled session.
+ */
+@ThreadSafe
+public class SftpFileChannel implements IFileChannel<SftpClient.DirEntry> {
+
+    private final URI serverUri;
+    private final String directory;
+    @GuardedBy("this")
+    private String filename;
+    @GuardedBy("this")
+    private byte[] emptyFileContent = Bytes.EMPTY_ARRAY;
+    @GuardedBy("this")
+    private boolean uploadTempFileEnabled = false;
+    @GuardedBy("this")
+    private int transferBufferSize = SftpClientProperties.TRANSFER_BUFFER_SIZE;
+
+    @GuardedBy("this")
+    private transient SftpFileChannelFinalizer finalizer;
+
+    public SftpFileChannel(final URI serverUri, final String directory) {
+        if (serverUri == null) {
+            throw new NullPointerException("serverUri should not be null");
+        }
+        this.serverUri = serverUri;
+        this.directory = Strings.putSuffix(Strings.putPrefix(directory.replace("\\", "/").replaceAll("[/]+", "/"), "/"),
+                "/");
+    }
+
+    public URI getServerUri() {
+        return serverUri;
+    }
+
+    @Override
+    public String getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public synchronized void setFilename(final String filename) {
+        this.filename = filename;
+    }
+
+    @Override
+    public synchronized String getFilename() {
+        if (filename == null) {
+            throw new NullPointerException("please call setFilename(...) first");
+        }
+        return filename;
+    }
+
+    @Override
+    public synchronized byte[] getEmptyFileContent() {
+        return emptyFileContent;
+    }
+
+    @Override
+    public synchronized void setEmptyFileContent(final byte[] emptyFileContent) {
+        this.emptyFileContent = emptyFileContent;
+    }
+
+    public synchronized boolean isUploadTempFileEnabled() {
+        return uploadTempFileEnabled;
+    }
+
+    /**
+     * Enable this to write uploadOutputStream() into getLocalTempFile() first instead of streaming it to the server.
+     */
+    public synchronized void setUploadTempFileEnabled(final boolean uploadTempFileEnabled) {
+        this.uploadTempFileEnabled = uploadTempFileEnabled;
+    }
+
+    public synchronized int getTransferBufferSize() {
+        return transferBufferSize;
+    }
+
+    /**
+     * The size of each read or write request. Servers might answer reads with fewer bytes when this is larger than
+     * what they support (OpenSSH allows up to 256 KB).
+     */
+    public synchronized void setTransferBufferSize(final int transferBufferSize) {
+        this.transferBufferSize = transferBufferSize;
+    }
+
+    @Override
+    public synchronized void createUniqueFile() {
+        createUniqueFile(SftpFileChannel.class.getSimpleName() + "_", ".channel");
+    }
+
+    @Override
+    public synchronized void createUniqueFile(final String filenamePrefix, final String filenameSuffix) {
+        assertConnected();
+        while (true) {
+            final String filename = filenamePrefix + UUIDs.newPseudorandomUUID() + filenameSuffix;
+            setFilename(filename);
+            if (!exists()) {
+                upload(new ByteArrayInputStream(getEmptyFileContent()));
+                Assertions.checkTrue(exists());
+                break;
+            }
+        }
+    }
+
+    private String getRemotePath() {
+        return directory + getFilename();
+    }
+
+    public synchronized SftpClient getSftpClient() {
+        assertConnected();
+        return finalizer.connection.getSftpClient();
+    }
+
+    @Override
+    public synchronized void connect() {
+        try {
+            if (finalizer == null) {
+                finalizer = new SftpFileChannelFinalizer();
+            }
+            if (finalizer.connection != null && finalizer.connection.isBroken()) {
+                close();
+                finalizer = new SftpFileChannelFinalizer();
+            }
+            Assertions.checkNull(finalizer.connection, "Already connected");
+            finalizer.connection = borrowConnection();
+            createDirectories(finalizer.connection.getSftpClient());
+            finalizer.register(this);
+        } catch (final Throwable e) {
+            close();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Sessions are taken from the SftpConnectionPool, so that consecutive channels to the same server can skip the key
+     * exchange and authentication.
+     */
+    private SftpConnection borrowConnection() throws Exception {
+        return SftpConnectionPool.INSTANCE.borrow(new SftpConnectionKey(serverUri, getUsername(), getPassword()));
+    }
+
+    /**
+     * Can be overridden to change the login credentials. We don't use properties for this since it would be wise to
+     * transfer them over the wire with this object in serialized form.
+     */
+    protected String getUsername() {
+        return SftpClientProperties.USERNAME;
+    }
+
+    protected String getPassword() {
+        return SftpClientProperties.PASSWORD;
+    }
+
+    private void createDirectories(final SftpClient sftpClient) throws IOException {
+        if (isDirectory(sftpClient, directory)) {
+            return;
+        }
+        final StringBuilder path = new StringBuilder();
+        for (final String singleDir : directory.split("/")) {
+            if (singleDir.length() > 0) {
+                path.append("/").append(singleDir);
+                final String currentPath = path.toString();
+                if (!isDirectory(sftpClient, currentPath)) {
+                    try {
+                        sftpClient.mkdir(currentPath);
+                    } catch (final SftpException e) {
+                        //might have been created by someone else in the meantime
+                        if (!isDirectory(sftpClient, currentPath)) {
+                            throw new IOException("At: " + currentPath, e);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isDirectory(final SftpClient sftpClient, final String path) throws IOException {
+        final SftpClient.Attributes attributes = stat(sftpClient, path);
+        return attributes != null && attributes.isDirectory();
+    }
+
+    /**
+     * Returns null when the path does not exist.
+     */
+    private static SftpClient.Attributes stat(final SftpClient sftpClient, final String path) throws IOException {
+        try {
+            return sftpClient.stat(path);
+        } catch (final SftpException e) {
+            if (isNotFound(e)) {
+                return null;
+            } else {
+                throw e;
+            }
+        }
+    }
+
+    private static boolean isNotFound(final SftpException e) {
+        return e.getStatus() == SftpConstants.SSH_FX_NO_SUCH_FILE || e.getStatus() == SftpConstants.SSH_FX_NO_SUCH_PATH;
+    }
+
+    @Override
+    public synchronized boolean isConnected() {
+        return finalizer != null && finalizer.connection != null && !finalizer.connection.isBroken();
+    }
+
+    @Override
+    public synchronized boolean exists() {
+        return info() != null;
+    }
+
+    @Override
+    public synchronized long size() {
+        final SftpClient.DirEntry info = info();
+        if (info == null || !info.getAttributes().isRegularFile()) {
+            return -1;
+        } else {
+            return info.getAttributes().getSize();
+        }
+    }
+
+    @Override
+    public synchronized FDate modified() {
+        final SftpClient.DirEntry info = info();
+        if (info == null) {
+            return null;
+        }
+        final FileTime modifyTime = info.getAttributes().getModifyTime();
+        if (modifyTime == null) {
+            return null;
+        } else {
+            return new FDate(new Date(modifyTime.toMillis()));
+        }
+    }
+
+    @Override
+    public synchronized SftpClient.DirEntry info() {
+        assertConnected();
+        try {
+            final SftpClient.Attributes attributes = stat(finalizer.connection.getSftpClient(), getRemotePath());
+            if (attributes == null) {
+                return null;
+            } else {
+                return new SftpClient.DirEntry(getFilename(), getFilename(), attributes);
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized List<SftpClient.DirEntry> list() {
+        assertConnected();
+        try {
+            final List<SftpClient.DirEntry> list = new ArrayList<>();
+            for (final SftpClient.DirEntry entry : finalizer.connection.getSftpClient().readDir(directory)) {
+                if (!".".equals(entry.getFilename()) && !"..".equals(entry.getFilename())) {
+                    list.add(entry);
+                }
+            }
+            return list;
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized List<SftpClient.DirEntry> listFiles() {
+        final List<SftpClient.DirEntry> list = list();
+        final List<SftpClient.DirEntry> files = new ArrayList<>();
+        for (final SftpClient.DirEntry file : list) {
+            if (file.getAttributes().isRegularFile()) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    @Override
+    public synchronized List<SftpClient.DirEntry> listDirectories() {
+        final List<SftpClient.DirEntry> list = list();
+        final List<SftpClient.DirEntry> directories = new ArrayList<>();
+        for (final SftpClient.DirEntry directory : list) {
+            if (directory.getAttributes().isDirectory()) {
+                directories.add(directory);
+            }
+        }
+        return directories;
+    }
+
+    private void assertConnected() {
+        Assertions.checkTrue(isConnected(), "Please call connect() first");
+    }
+
+    @Override
+    public synchronized void upload(final File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            upload(in);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized void upload(final byte[] bytes) {
+        upload(new ByteArrayInputStream(bytes));
+    }
+
+    @Override
+    public synchronized void upload(final InputStream input) {
+        assertConnected();
+        try (OutputStream out = finalizer.connection.getSftpClient().write(getRemotePath(), transferBufferSize)) {
+            IOUtils.copy(input, out, transferBufferSize);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized byte[] download() {
+        try {
+            try (InputStream in = downloadInputStream()) {
+                if (in == null) {
+                    return null;
+                } else {
+                    return IOUtils.toByteArray(in);
+                }
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized void delete() {
+        assertConnected();
+        try {
+            finalizer.connection.getSftpClient().remove(getRemotePath());
+        } catch (final SftpException e) {
+            if (!isNotFound(e)) {
+                throw new RuntimeException(e);
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (finalizer != null) {
+            finalizer.close();
+            finalizer = null;
+        }
+    }
+
+    /**
+     * The written bytes are sent to the server while they are being produced. The file handle is opened on the session
+     * of this channel, which handles other requests concurrently, so this channel stays usable in the meantime without
+     * needing a second session. Close the stream before the channel. When the temp file upload is enabled, the content
+     * is first written to getLocalTempFile() and only uploaded when the stream is closed.
+     */
+    @Override
+    public synchronized OutputStream uploadOutputStream() {
+        assertConnected();
+        if (uploadTempFileEnabled) {
+            return uploadTempFileOutputStream();
+        }
+        try {
+            return finalizer.connection.getSftpClient().write(getRemotePath(), transferBufferSize);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private OutputStream uploadTempFileOutputStream() {
+        return new ADelegateOutputStream(new TextDescription("%s: uploadOutputStream()", this)) {
+
+            private final File file = getLocalTempFile();
+
+            @Override
+            protected OutputStream newDelegate() {
+                try {
+                    return new BufferedOutputStream(new FileOutputStream(file));
+                } catch (final FileNotFoundException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                    if (!file.exists()) {
+                        //write an empty file
+                        Files.write(file, "", Charset.defaultCharset());
+                    }
+                    upload(file);
+                } finally {
+                    file.delete();
+                }
+            }
+        };
+    }
+
+    @Override
+    public synchronized File getLocalTempFile() {
+        final File directory = new File(SftpClientProperties.TEMP_DIRECTORY, getDirectory());
+        try {
+            Files.forceMkdir(directory);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+        final File file = new File(directory, getFilename());
+        Files.deleteQuietly(file);
+        return file;
+    }
+
+    @Override
+    public synchronized void reconnect() {
+        assertConnected();
+        //don't give a session back to the pool that we do not trust anymore
+        finalizer.connection.markBroken();
+        close();
+        connect();
+    }
+
+    /**
+     * The download is streamed while several reads are kept in flight, so the consumer can start parsing immediately.
+     * The file handle is opened on the session of this channel like for uploadOutputStream(), close the stream before
+     * the channel.
+     */
+    @Override
+    public synchronized InputStream downloadInputStream() {
+        assertConnected();
+        try {
+            final SftpClient sftpClient = finalizer.connection.getSftpClient();
+            final String remotePath = getRemotePath();
+            if (stat(sftpClient, remotePath) == null) {
+                return null;
+            }
+            return sftpClient.read(remotePath, transferBufferSize);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("serverUri", serverUri)
+                .add("directory", directory)
+                .add("filename", filename)
+                .toString();
+    }
+
+    private static final class SftpFileChannelFinalizer extends AFinalizer {
+
+        private SftpConnection connection;
+
+        @Override
+        protected void clean() {
+            //gives the session back to the pool instead of disconnecting
+            connection.close();
+            connection = null;
+        }
+
+        @Override
+        protected boolean isCleaned() {
+            return connection == null;
+        }
+
+        @Override
+        public boolean isThreadLocal() {
+            return false;
+        }
+
+    }
+
+}
@@ -0,0 +1,31 @@
+package de.invesdwin.context.integration.sftp.internal;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.inject.Named;
+
+import org.springframework.scheduling.annotation.Scheduled;
+
+import de.invesdwin.context.beans.hook.IStartupHook;
+import de.invesdwin.context.integration.sftp.SftpClientProperties;
+import de.invesdwin.util.lang.Files;
+
+@Named
+@NotThreadSafe
+public class PurgeOldTempFilesScheduler implements IStartupHook {
+
+    @Scheduled(cron = "0 0 0 * * ?") //check every day
+    public void purgeOldFiles() {
+        if (SftpClientProperties.PURGE_TEMP_FILES_OLDER_THAN_DURATION == null
+                || !SftpClientProperties.TEMP_DIRECTORY.exists()) {
+            return;
+        }
+        Files.purgeOldFiles(SftpClientProperties.TEMP_DIRECTORY,
+                SftpClientProperties.PURGE_TEMP_FILES_OLDER_THAN_DURATION);
+    }
+
+    @Override
+    public void startup() throws Exception {
+        purgeOldFiles();
+    }
+
+}
@@ -0,0 +1,96 @@
+package de.invesdwin.context.integration.sftp.pool;
+
+import java.io.Closeable;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.sftp.client.SftpClient;
+
+/**
+ * An authenticated ssh session with an open sftp subsystem that is borrowed from the SftpConnectionPool. Closing it
+ * gives it back to the pool instead of disconnecting. The sftp client itself can handle concurrent requests.
+ */
+@ThreadSafe
+public final class SftpConnection implements Closeable {
+
+    private final SftpConnectionPool pool;
+    private final SftpConnectionKey key;
+    private final ClientSession session;
+    private final SftpClient sftpClient;
+    private volatile long lastUsedMillis;
+    private volatile boolean broken;
+    private volatile boolean closed;
+
+    SftpConnection(final SftpConnectionPool pool, final SftpConnectionKey key, final ClientSession session,
+            final SftpClient sftpClient) {
+        this.pool = pool;
+        this.key = key;
+        this.session = session;
+        this.sftpClient = sftpClient;
+        this.lastUsedMillis = System.currentTimeMillis();
+    }
+
+    public SftpConnectionKey getKey() {
+        return key;
+    }
+
+    public SftpClient getSftpClient() {
+        return sftpClient;
+    }
+
+    long getLastUsedMillis() {
+        return lastUsedMillis;
+    }
+
+    void borrowed() {
+        closed = false;
+    }
+
+    void released() {
+        lastUsedMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Call this when the session might be in an undefined state, so it gets disconnected instead of being reused.
+     */
+    public void markBroken() {
+        broken = true;
+    }
+
+    public boolean isBroken() {
+        return broken || !session.isOpen() || !sftpClient.isOpen();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pool.release(this);
+    }
+
+    void disconnect() {
+        try {
+            sftpClient.close();
+        } catch (final Throwable t) {
+            // do nothing
+        }
+        try {
+            session.close(false);
+        } catch (final Throwable t) {
+            // do nothing
+        }
+    }
+
+    @Override
+    public String toString() {
+        return key.toString();
+    }
+
+}
@@ -0,0 +1,67 @@
+package de.invesdwin.context.integration.sftp.pool;
+
+import java.net.URI;
+
+import javax.annotation.concurrent.Immutable;
+
+import de.invesdwin.util.lang.Objects;
+
+/**
+ * Connections can only be shared between channels that talk to the same server with the same credentials.
+ */
+@Immutable
+public final class SftpConnectionKey {
+
+    private final String host;
+    private final int port;
+    private final String username;
+    private final String password;
+    private final int hashCode;
+
+    public SftpConnectionKey(final URI serverUri, final String username, final String password) {
+        this.host = serverUri.getHost();
+        this.port = serverUri.getPort();
+        this.username = username;
+        this.password = password;
+        this.hashCode = Objects.hashCode(SftpConnectionKey.class, host, port, username, password);
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj instanceof SftpConnectionKey) {
+            final SftpConnectionKey cObj = (SftpConnectionKey) obj;
+            return Objects.equals(host, cObj.host) && port == cObj.port && Objects.equals(username, cObj.username)
+                    && Objects.equals(password, cObj.password);
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        //never print the password
+        return username + "@" + host + ":" + port;
+    }
+
+}
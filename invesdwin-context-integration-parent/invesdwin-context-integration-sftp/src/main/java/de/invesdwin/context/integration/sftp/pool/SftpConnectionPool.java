@@ -0,0 +1,284 @@
+package de.invesdwin.context.integration.sftp.pool;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.keyverifier.AcceptAllServerKeyVerifier;
+import org.apache.sshd.client.keyverifier.DefaultKnownHostsServerKeyVerifier;
+import org.apache.sshd.client.keyverifier.RejectAllServerKeyVerifier;
+import org.apache.sshd.client.keyverifier.ServerKeyVerifier;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.SshConstants;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.client.SftpClientFactory;
+
+import de.invesdwin.context.ContextProperties;
+import de.invesdwin.context.integration.sftp.SftpClientProperties;
+import de.invesdwin.context.log.Log;
+import de.invesdwin.util.concurrent.Executors;
+import de.invesdwin.util.concurrent.WrappedScheduledExecutorService;
+import de.invesdwin.util.time.date.FTimeUnit;
+import de.invesdwin.util.time.duration.Duration;
+
+/**
+ * Keeps authenticated ssh sessions with an open sftp subsystem per server and credentials so that short lived channels
+ * don't have to pay the key exchange, authentication and subsystem roundtrips each time. Idle sessions are checked via
+ * REALPATH before they are handed out again and get disconnected after
+ * SftpClientProperties.CONNECTION_POOL_IDLE_TIMEOUT. Borrowers wait when
+ * SftpClientProperties.CONNECTION_POOL_MAX_CONNECTIONS_PER_SERVER sessions are in use.
+ */
+@ThreadSafe
+public final class SftpConnectionPool {
+
+    private static final Log LOG = new Log(SftpConnectionPool.class);
+    private static final WrappedScheduledExecutorService EVICTOR = Executors
+            .newScheduledThreadPool(SftpConnectionPool.class.getSimpleName() + "_EVICTOR", 1);
+    private static final SshClient CLIENT = newSshClient();
+    //sessions that were not used for a while might have been closed by the server
+    private static final Duration VALIDATE_AFTER_IDLE = new Duration(5, FTimeUnit.SECONDS);
+
+    //needs to be initialized after the evictor
+    public static final SftpConnectionPool INSTANCE = new SftpConnectionPool();
+
+    @GuardedBy("this")
+    private final Map<SftpConnectionKey, ServerPool> serverPools = new HashMap<>();
+
+    private SftpConnectionPool() {
+        final long evictIntervalMillis = Math.max(FTimeUnit.MILLISECONDS_IN_SECOND,
+                SftpClientProperties.CONNECTION_POOL_IDLE_TIMEOUT.longValue(FTimeUnit.MILLISECONDS) / 2);
+        EVICTOR.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdle();
+            }
+        }, evictIntervalMillis, evictIntervalMillis, FTimeUnit.MILLISECONDS.timeUnitValue());
+    }
+
+    public SftpConnection borrow(final SftpConnectionKey key) throws Exception {
+        return getServerPool(key).borrow();
+    }
+
+    void release(final SftpConnection connection) {
+        getServerPool(connection.getKey()).release(connection);
+    }
+
+    public void evictIdle() {
+        for (final ServerPool serverPool : getServerPools()) {
+            serverPool.evict(SftpClientProperties.CONNECTION_POOL_IDLE_TIMEOUT.longValue(FTimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * Disconnects all idle sessions. Borrowed sessions are disconnected when they are given back.
+     */
+    public void clear() {
+        for (final ServerPool serverPool : getServerPools()) {
+            serverPool.evict(0);
+        }
+    }
+
+    /**
+     * Replaces the host key verification of new sessions, e.g. for tests against a server with a generated host key.
+     * Null restores the verification that is configured via SftpClientProperties.STRICT_HOST_KEY_CHECKING.
+     */
+    public void setServerKeyVerifier(final ServerKeyVerifier serverKeyVerifier) {
+        if (serverKeyVerifier == null) {
+            CLIENT.setServerKeyVerifier(newServerKeyVerifier());
+        } else {
+            CLIENT.setServerKeyVerifier(serverKeyVerifier);
+        }
+    }
+
+    public int getIdleCount(final SftpConnectionKey key) {
+        return getServerPool(key).getIdleCount();
+    }
+
+    public int getOpenCount(final SftpConnectionKey key) {
+        return getServerPool(key).getOpenCount();
+    }
+
+    private synchronized List<ServerPool> getServerPools() {
+        return new ArrayList<>(serverPools.values());
+    }
+
+    private synchronized ServerPool getServerPool(final SftpConnectionKey key) {
+        ServerPool serverPool = serverPools.get(key);
+        if (serverPool == null) {
+            serverPool = new ServerPool(key);
+            serverPools.put(key, serverPool);
+        }
+        return serverPool;
+    }
+
+    private static SshClient newSshClient() {
+        final SshClient client = SshClient.setUpDefaultClient();
+        client.setServerKeyVerifier(newServerKeyVerifier());
+        client.start();
+        return client;
+    }
+
+    private static ServerKeyVerifier newServerKeyVerifier() {
+        if (SftpClientProperties.STRICT_HOST_KEY_CHECKING) {
+            return new DefaultKnownHostsServerKeyVerifier(RejectAllServerKeyVerifier.INSTANCE, true);
+        } else {
+            LOG.warn("%s.STRICT_HOST_KEY_CHECKING is disabled, thus any host key is accepted and sftp connections are "
+                    + "open to man-in-the-middle attacks", SftpClientProperties.class.getSimpleName());
+            return AcceptAllServerKeyVerifier.INSTANCE;
+        }
+    }
+
+    private SftpConnection newConnection(final SftpConnectionKey key) throws Exception {
+        final long timeoutMillis = ContextProperties.DEFAULT_NETWORK_TIMEOUT_MILLIS;
+        final int port;
+        if (key.getPort() < 0) {
+            port = SshConstants.DEFAULT_PORT;
+        } else {
+            port = key.getPort();
+        }
+        final ClientSession session = CLIENT.connect(key.getUsername(), key.getHost(), port)
+                .verify(timeoutMillis)
+                .getSession();
+        try {
+            session.addPasswordIdentity(key.getPassword());
+            session.auth().verify(timeoutMillis);
+            final SftpClient sftpClient = SftpClientFactory.instance().createSftpClient(session);
+            return new SftpConnection(this, key, session, sftpClient);
+        } catch (final Throwable t) {
+            try {
+                session.close(true);
+            } catch (final Throwable t1) {
+                // do nothing
+            }
+            throw t;
+        }
+    }
+
+    private final class ServerPool {
+
+        private final SftpConnectionKey key;
+        @GuardedBy("this")
+        private final Deque<SftpConnection> idle = new ArrayDeque<>();
+        @GuardedBy("this")
+        private int openCount;
+
+        private ServerPool(final SftpConnectionKey key) {
+            this.key = key;
+        }
+
+        public SftpConnection borrow() throws Exception {
+            final long deadlineMillis = System.currentTimeMillis() + ContextProperties.DEFAULT_NETWORK_TIMEOUT_MILLIS;
+            while (true) {
+                SftpConnection connection;
+                synchronized (this) {
+                    //most recently used first, so that rarely used sessions can time out
+                    connection = idle.pollFirst();
+                    if (connection == null) {
+                        if (openCount >= SftpClientProperties.CONNECTION_POOL_MAX_CONNECTIONS_PER_SERVER) {
+                            final long remainingMillis = deadlineMillis - System.currentTimeMillis();
+                            if (remainingMillis <= 0) {
+                                throw new TimeoutException("No sftp connection to [" + key + "] got available after "
+                                        + ContextProperties.DEFAULT_NETWORK_TIMEOUT + " while "
+                                        + SftpClientProperties.CONNECTION_POOL_MAX_CONNECTIONS_PER_SERVER
+                                        + " are in use");
+                            }
+                            wait(remainingMillis);
+                            continue;
+                        }
+                        openCount++;
+                    }
+                }
+                if (connection == null) {
+                    try {
+                        connection = newConnection(key);
+                    } catch (final Throwable t) {
+                        closed();
+                        throw t;
+                    }
+                } else if (!isValid(connection)) {
+                    destroy(connection);
+                    continue;
+                }
+                connection.borrowed();
+                return connection;
+            }
+        }
+
+        private boolean isValid(final SftpConnection connection) {
+            if (connection.isBroken()) {
+                return false;
+            }
+            final long idleMillis = System.currentTimeMillis() - connection.getLastUsedMillis();
+            if (idleMillis > VALIDATE_AFTER_IDLE.longValue(FTimeUnit.MILLISECONDS)) {
+                try {
+                    connection.getSftpClient().canonicalPath("/");
+                } catch (final Throwable t) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public void release(final SftpConnection connection) {
+            if (connection.isBroken()) {
+                destroy(connection);
+                return;
+            }
+            connection.released();
+            synchronized (this) {
+                idle.addFirst(connection);
+                notifyAll();
+            }
+        }
+
+        public void evict(final long idleTimeoutMillis) {
+            final List<SftpConnection> evicted = new ArrayList<>();
+            final long now = System.currentTimeMillis();
+            synchronized (this) {
+                //least recently used are at the end
+                final Iterator<SftpConnection> it = idle.descendingIterator();
+                while (it.hasNext()) {
+                    final SftpConnection connection = it.next();
+                    if (now - connection.getLastUsedMillis() >= idleTimeoutMillis) {
+                        it.remove();
+                        evicted.add(connection);
+                    } else {
+                        break;
+                    }
+                }
+            }
+            for (final SftpConnection connection : evicted) {
+                destroy(connection);
+            }
+        }
+
+        private void destroy(final SftpConnection connection) {
+            connection.disconnect();
+            closed();
+        }
+
+        private synchronized void closed() {
+            openCount--;
+            notifyAll();
+        }
+
+        public synchronized int getIdleCount() {
+            return idle.size();
+        }
+
+        public synchronized int getOpenCount() {
+            return openCount;
+        }
+
+    }
+
+}
@@ -0,0 +1,276 @@
+package de.invesdwin.context.integration.sftp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.RandomUtils;
+import org.apache.sshd.client.keyverifier.AcceptAllServerKeyVerifier;
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.auth.password.PasswordAuthenticator;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.invesdwin.context.integration.sftp.pool.SftpConnectionKey;
+import de.invesdwin.context.integration.sftp.pool.SftpConnectionPool;
+import de.invesdwin.context.integration.ws.registry.RegistryServiceStub;
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.context.test.TestContext;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.error.UnknownArgumentException;
+import de.invesdwin.util.lang.Files;
+import de.invesdwin.util.lang.uri.URIs;
+
+@NotThreadSafe
+public class SftpFileChannelTest extends ATest {
+
+    private static final File SERVER_DIRECTORY = new File(SftpClientProperties.TEMP_DIRECTORY,
+            SftpFileChannelTest.class.getSimpleName());
+    private static SshServer server;
+
+    @Override
+    public void setUpContext(final TestContext ctx) throws Exception {
+        super.setUpContext(ctx);
+        ctx.deactivateBean(RegistryServiceStub.class);
+    }
+
+    @BeforeClass
+    public static void startServer() throws IOException {
+        Files.deleteQuietly(SERVER_DIRECTORY);
+        Files.forceMkdir(SERVER_DIRECTORY);
+        server = SshServer.setUpDefaultServer();
+        server.setPort(0);
+        server.setKeyPairProvider(
+                new SimpleGeneratorHostKeyProvider(new File(SERVER_DIRECTORY.getParentFile(), "hostkey.ser").toPath()));
+        server.setPasswordAuthenticator(new PasswordAuthenticator() {
+            @Override
+            public boolean authenticate(final String username, final String password, final ServerSession session) {
+                return SftpClientProperties.USERNAME.equals(username) && SftpClientProperties.PASSWORD.equals(password);
+            }
+        });
+        server.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+        server.setFileSystemFactory(new VirtualFileSystemFactory(SERVER_DIRECTORY.toPath()));
+        server.start();
+        //the host key of the test server is generated and thus unknown
+        SftpConnectionPool.INSTANCE.setServerKeyVerifier(AcceptAllServerKeyVerifier.INSTANCE);
+    }
+
+    @AfterClass
+    public static void stopServer() throws IOException {
+        SftpConnectionPool.INSTANCE.clear();
+        SftpConnectionPool.INSTANCE.setServerKeyVerifier(null);
+        if (server != null) {
+            server.stop();
+            server = null;
+        }
+        Files.deleteQuietly(SERVER_DIRECTORY);
+    }
+
+    @Test
+    public void test() {
+        final URI destination = getDestination();
+        final SftpFileChannel channel = new SftpFileChannel(destination, SftpFileChannelTest.class.getSimpleName());
+        channel.setFilename("noexisting");
+        channel.connect();
+        Assertions.checkNull(channel.download());
+        Assertions.checkFalse(channel.exists());
+        Assertions.assertThat(channel.size()).isEqualTo(-1);
+        channel.createUniqueFile();
+        Assertions.checkTrue(channel.exists());
+        Assertions.assertThat(channel.size()).isEqualTo(0);
+        final String writeStr = "hello world";
+        final byte[] write = writeStr.getBytes();
+        channel.upload(write);
+        Assertions.checkTrue(channel.exists());
+        Assertions.assertThat(channel.size()).isEqualTo(write.length);
+        Assertions.checkNotNull(channel.modified());
+        final byte[] read = channel.download();
+        final String readStr = new String(read);
+        Assertions.assertThat(readStr).isEqualTo(writeStr);
+        final List<SftpClient.DirEntry> files = channel.listFiles();
+        Assertions.assertThat(files).hasSize(1);
+        Assertions.assertThat(files.get(0).getFilename()).isEqualTo(channel.getFilename());
+        Assertions.assertThat(channel.listDirectories()).isEmpty();
+        channel.delete();
+        Assertions.checkNull(channel.download());
+        Assertions.checkFalse(channel.exists());
+        Assertions.assertThat(channel.size()).isEqualTo(-1);
+        channel.upload(write);
+        Assertions.checkTrue(channel.exists());
+        Assertions.assertThat(channel.size()).isEqualTo(write.length);
+        final byte[] read2 = channel.download();
+        final String readStr2 = new String(read2);
+        Assertions.assertThat(readStr2).isEqualTo(writeStr);
+        channel.delete();
+        channel.close();
+    }
+
+    @Test
+    public void testDownloadInputStream() throws IOException {
+        final URI destination = getDestination();
+        final SftpFileChannel channel = new SftpFileChannel(destination, SftpFileChannelTest.class.getSimpleName());
+        channel.connect();
+        channel.createUniqueFile();
+        //spans multiple outstanding read requests
+        final byte[] write = new byte[SftpClientProperties.TRANSFER_BUFFER_SIZE * 10 + 1];
+        for (int i = 0; i < write.length; i++) {
+            write[i] = (byte) i;
+        }
+        channel.upload(write);
+        try (InputStream in = channel.downloadInputStream()) {
+            //close before the transfer finished
+            Assertions.assertThat(in.read()).isEqualTo(0);
+        }
+        try (InputStream in = channel.downloadInputStream()) {
+            Assertions.assertThat(IOUtils.toByteArray(in)).isEqualTo(write);
+        }
+        channel.delete();
+        Assertions.checkNull(channel.downloadInputStream());
+        channel.close();
+    }
+
+    @Test
+    public void testUploadOutputStream() throws IOException {
+        final URI destination = getDestination();
+        final SftpFileChannel channel = new SftpFileChannel(destination, SftpFileChannelTest.class.getSimpleName());
+        channel.connect();
+        channel.createUniqueFile();
+        final byte[] write = new byte[SftpClientProperties.TRANSFER_BUFFER_SIZE * 10 + 1];
+        for (int i = 0; i < write.length; i++) {
+            write[i] = (byte) i;
+        }
+        try (OutputStream out = channel.uploadOutputStream()) {
+            for (int i = 0; i < write.length; i++) {
+                out.write(write[i]);
+            }
+        }
+        Assertions.assertThat(channel.size()).isEqualTo(write.length);
+        Assertions.assertThat(channel.download()).isEqualTo(write);
+        channel.setUploadTempFileEnabled(true);
+        try (OutputStream out = channel.uploadOutputStream()) {
+            out.write(write, 0, 1);
+        }
+        Assertions.assertThat(channel.size()).isEqualTo(1);
+        channel.setUploadTempFileEnabled(false);
+        try (OutputStream out = channel.uploadOutputStream()) {
+            //write an empty file
+        }
+        Assertions.assertThat(channel.size()).isEqualTo(0);
+        channel.delete();
+        channel.close();
+    }
+
+    @Test
+    public void testConnectionPool() throws IOException {
+        final URI destination = getDestination();
+        final SftpConnectionKey key = new SftpConnectionKey(destination, SftpClientProperties.USERNAME,
+                SftpClientProperties.PASSWORD);
+        SftpConnectionPool.INSTANCE.clear();
+        Assertions.assertThat(SftpConnectionPool.INSTANCE.getOpenCount(key)).isEqualTo(0);
+        final SftpFileChannel channel = new SftpFileChannel(destination, SftpFileChannelTest.class.getSimpleName());
+        channel.connect();
+        channel.createUniqueFile();
+        final String filename = channel.getFilename();
+        channel.close();
+        Assertions.assertThat(SftpConnectionPool.INSTANCE.getIdleCount(key)).isEqualTo(1);
+        for (int i = 0; i < 10; i++) {
+            final SftpFileChannel pooledChannel = new SftpFileChannel(destination,
+                    SftpFileChannelTest.class.getSimpleName());
+            pooledChannel.setFilename(filename);
+            pooledChannel.connect();
+            Assertions.checkTrue(pooledChannel.exists());
+            pooledChannel.close();
+            //the session is reused instead of connecting again
+            Assertions.assertThat(SftpConnectionPool.INSTANCE.getOpenCount(key)).isEqualTo(1);
+        }
+        final SftpFileChannel streamingChannel = new SftpFileChannel(destination,
+                SftpFileChannelTest.class.getSimpleName());
+        streamingChannel.setFilename(filename);
+        streamingChannel.connect();
+        try (InputStream in = streamingChannel.downloadInputStream();
+                OutputStream out = streamingChannel.uploadOutputStream()) {
+            //the file handles are opened on the session of the channel instead of borrowing further ones
+            Assertions.assertThat(SftpConnectionPool.INSTANCE.getOpenCount(key)).isEqualTo(1);
+            Assertions.checkTrue(streamingChannel.exists());
+        }
+        streamingChannel.close();
+        final SftpFileChannel otherDirectoryChannel = new SftpFileChannel(destination,
+                SftpFileChannelTest.class.getSimpleName() + "/other/nested");
+        otherDirectoryChannel.setFilename(filename);
+        otherDirectoryChannel.connect();
+        Assertions.checkFalse(otherDirectoryChannel.exists());
+        otherDirectoryChannel.close();
+        channel.connect();
+        channel.reconnect();
+        channel.delete();
+        channel.close();
+        SftpConnectionPool.INSTANCE.clear();
+        Assertions.assertThat(SftpConnectionPool.INSTANCE.getOpenCount(key)).isEqualTo(0);
+    }
+
+    protected URI getDestination() {
+        return URIs.asUri("p://localhost:" + server.getPort());
+    }
+
+    @Test
+    public void testRandom() {
+        final URI destination = getDestination();
+        final SftpFileChannel channel = new SftpFileChannel(destination, SftpFileChannelTest.class.getSimpleName());
+        channel.connect();
+        channel.createUniqueFile();
+        final String writeStr = "hello world";
+        final byte[] write = writeStr.getBytes();
+
+        for (int i = 0; i < 20; i++) {
+            final int random = RandomUtils.nextInt(0, 7);
+            switch (random) {
+            case 0:
+                log.info("download");
+                channel.download();
+                break;
+            case 1:
+                log.info("exists");
+                channel.exists();
+                break;
+            case 2:
+                log.info("size");
+                channel.size();
+                break;
+            case 3:
+                log.info("createUniqueFile");
+                channel.createUniqueFile();
+                break;
+            case 4:
+                log.info("upload");
+                channel.upload(write);
+                break;
+            case 5:
+                log.info("delete");
+                channel.delete();
+                break;
+            case 6:
+                log.info("modified");
+                channel.modified();
+                break;
+            default:
+                throw UnknownArgumentException.newInstance(int.class, random);
+            }
+        }
+
+        channel.close();
+    }
+
+}
@@ -8,6 +8,8 @@ import javax.annotation.concurrent.Immutable;
 import de.invesdwin.context.ContextProperties;
 import de.invesdwin.context.integration.IntegrationProperties;
 import de.invesdwin.context.integration.webdav.server.internal.ConfiguredWebdavServlet;
+import de.invesdwin.context.integration.webdav.server.internal.DeduplicatingWebdavStore;
+import de.invesdwin.context.integration.ws.filechannel.FileAgeIndex;
 import de.invesdwin.context.system.properties.SystemProperties;
 import de.invesdwin.util.lang.uri.URIs;
 import de.invesdwin.util.time.duration.Duration;
@@ -16,9 +18,14 @@ import de.invesdwin.util.time.duration.Duration;
 public final class WebdavServerProperties {
 
     public static final File WORKING_DIRECTORY;
+    public static final File BLOB_DIRECTORY;
+    public static final File AGE_INDEX_DIRECTORY;
+    public static final boolean DEDUPLICATION_ENABLED;
     public static final Duration PURGE_FILES_OLDER_THAN_DURATION;
+    public static final Long QUOTA_MAX_BYTES;
 
     private static final String KEY_PURGE_FILES_OLDER_THAN_DURATION = "PURGE_FILES_OLDER_THAN_DURATION";
+    private static final String KEY_QUOTA_MAX_BYTES = "QUOTA_MAX_BYTES";
 
     static {
         final SystemProperties systemProperties = new SystemProperties(WebdavServerProperties.class);
@@ -27,8 +34,19 @@ public final class WebdavServerProperties {
         } else {
             PURGE_FILES_OLDER_THAN_DURATION = null;
         }
+        if (systemProperties.containsValue(KEY_QUOTA_MAX_BYTES)) {
+            QUOTA_MAX_BYTES = systemProperties.getLong(KEY_QUOTA_MAX_BYTES);
+        } else {
+            QUOTA_MAX_BYTES = null;
+        }
         WORKING_DIRECTORY = new File(ContextProperties.getCacheDirectory(),
                 ConfiguredWebdavServlet.class.getSimpleName());
+        //needs to be on the same file system as the working directory for hard links
+        BLOB_DIRECTORY = new File(ContextProperties.getCacheDirectory(),
+                DeduplicatingWebdavStore.class.getSimpleName());
+        AGE_INDEX_DIRECTORY = new File(ContextProperties.getCacheDirectory(),
+                ConfiguredWebdavServlet.class.getSimpleName() + "_" + FileAgeIndex.class.getSimpleName());
+        DEDUPLICATION_ENABLED = systemProperties.getBoolean("DEDUPLICATION_ENABLED");
     }
 
     private WebdavServerProperties() {}
@@ -37,4 +55,10 @@ public final class WebdavServerProperties {
         return URIs.asUri(IntegrationProperties.WEBSERVER_BIND_URI + "/webdav/");
     }
 
+    public static FileAgeIndex getAgeIndex() {
+        final FileAgeIndex ageIndex = FileAgeIndex.getInstance(WORKING_DIRECTORY, AGE_INDEX_DIRECTORY);
+        ageIndex.setMaxBytes(QUOTA_MAX_BYTES);
+        return ageIndex;
+    }
+
 }
@@ -0,0 +1,114 @@
+package de.invesdwin.context.integration.webdav.server.internal;
+
+import java.io.File;
+import java.io.InputStream;
+import java.security.Principal;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.integration.ws.filechannel.FileAgeIndex;
+import de.invesdwin.util.lang.Files;
+import net.sf.webdav.StoredObject;
+import net.sf.webdav.exceptions.WebdavException;
+import net.sf.webdav.spi.ITransaction;
+import net.sf.webdav.spi.IWebdavStore;
+
+/**
+ * Adds every written resource to the age index so that old files can be purged without walking the working directory.
+ * Also keeps the used bytes of the index up to date for the quota.
+ */
+@ThreadSafe
+public class AgeIndexingWebdavStore implements IWebdavStore {
+
+    private final File root;
+    private final IWebdavStore delegate;
+    private final FileAgeIndex ageIndex;
+
+    public AgeIndexingWebdavStore(final File root, final IWebdavStore delegate, final FileAgeIndex ageIndex) {
+        this.root = root;
+        this.delegate = delegate;
+        this.ageIndex = ageIndex;
+    }
+
+    @Override
+    public ITransaction begin(final Principal principal) throws WebdavException {
+        return delegate.begin(principal);
+    }
+
+    @Override
+    public void checkAuthentication(final ITransaction transaction) throws WebdavException {
+        delegate.checkAuthentication(transaction);
+    }
+
+    @Override
+    public void commit(final ITransaction transaction) throws WebdavException {
+        delegate.commit(transaction);
+    }
+
+    @Override
+    public void rollback(final ITransaction transaction) throws WebdavException {
+        delegate.rollback(transaction);
+    }
+
+    @Override
+    public void createFolder(final ITransaction transaction, final String folderUri) throws WebdavException {
+        delegate.createFolder(transaction, folderUri);
+    }
+
+    /**
+     * Empty resources are indexed as well, in case no content follows.
+     */
+    @Override
+    public void createResource(final ITransaction transaction, final String resourceUri) throws WebdavException {
+        delegate.createResource(transaction, resourceUri);
+        ageIndex.add(new File(root, resourceUri));
+    }
+
+    @Override
+    public InputStream getResourceContent(final ITransaction transaction, final String resourceUri)
+            throws WebdavException {
+        return delegate.getResourceContent(transaction, resourceUri);
+    }
+
+    @Override
+    public long setResourceContent(final ITransaction transaction, final String resourceUri, final InputStream content,
+            final long contentLength) throws WebdavException {
+        final File file = new File(root, resourceUri);
+        //0 when the file does not exist yet
+        final long previousLength = file.length();
+        final long length = delegate.setResourceContent(transaction, resourceUri, content, contentLength);
+        ageIndex.add(file, previousLength);
+        return length;
+    }
+
+    @Override
+    public String[] getChildrenNames(final ITransaction transaction, final String folderUri) throws WebdavException {
+        return delegate.getChildrenNames(transaction, folderUri);
+    }
+
+    @Override
+    public long getResourceLength(final ITransaction transaction, final String path) throws WebdavException {
+        return delegate.getResourceLength(transaction, path);
+    }
+
+    @Override
+    public void removeObject(final ITransaction transaction, final String uri) throws WebdavException {
+        final File file = new File(root, uri);
+        if (!file.exists()) {
+            delegate.removeObject(transaction, uri);
+            return;
+        }
+        //folders are removed with their content
+        final long length = Files.sizeOf(file);
+        delegate.removeObject(transaction, uri);
+        if (!file.exists()) {
+            ageIndex.addUsedBytes(-length);
+        }
+    }
+
+    @Override
+    public StoredObject getStoredObject(final ITransaction transaction, final String uri) throws WebdavException {
+        return delegate.getStoredObject(transaction, uri);
+    }
+
+}
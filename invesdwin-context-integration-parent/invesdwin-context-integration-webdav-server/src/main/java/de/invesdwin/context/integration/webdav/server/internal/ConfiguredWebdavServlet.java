@@ -1,20 +1,74 @@
 package de.invesdwin.context.integration.webdav.server.internal;
 
-import javax.annotation.concurrent.Immutable;
+import java.io.IOException;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.commonjava.web.dav.servlet.WebdavServlet;
 
 import de.invesdwin.context.integration.webdav.server.WebdavServerProperties;
+import de.invesdwin.context.integration.ws.filechannel.FileAgeIndex;
+import de.invesdwin.context.integration.ws.filechannel.LocalFileChannels;
 import net.sf.webdav.exceptions.WebdavException;
 import net.sf.webdav.impl.LocalFileSystemStore;
 import net.sf.webdav.spi.IWebdavStore;
 
-@Immutable
+@ThreadSafe
 public class ConfiguredWebdavServlet extends WebdavServlet {
 
+    private volatile WebdavGetRequestHandler getRequestHandler;
+    private volatile Runnable blobPurgeListener;
+
     @Override
     protected IWebdavStore initWebdavStore() throws WebdavException {
-        return new LocalFileSystemStore(WebdavServerProperties.WORKING_DIRECTORY);
+        final FileAgeIndex ageIndex = WebdavServerProperties.getAgeIndex();
+        //clients in this process can work on the directory directly
+        LocalFileChannels.registerServerDirectory(WebdavServerProperties.getServerBindUri(), ageIndex);
+        getRequestHandler = new WebdavGetRequestHandler(WebdavServerProperties.WORKING_DIRECTORY, ageIndex);
+        final IWebdavStore store;
+        if (WebdavServerProperties.DEDUPLICATION_ENABLED && DeduplicatingWebdavStore.isSupported()) {
+            final DeduplicatingWebdavStore deduplicatingStore = new DeduplicatingWebdavStore(
+                    WebdavServerProperties.WORKING_DIRECTORY, WebdavServerProperties.BLOB_DIRECTORY);
+            //evicting a name does not free its content, that only happens when the blob is not referenced anymore
+            blobPurgeListener = new Runnable() {
+                @Override
+                public void run() {
+                    deduplicatingStore.purgeUnreferencedBlobs();
+                }
+            };
+            ageIndex.addEvictionListener(blobPurgeListener);
+            store = deduplicatingStore;
+        } else {
+            store = new LocalFileSystemStore(WebdavServerProperties.WORKING_DIRECTORY);
+        }
+        return new AgeIndexingWebdavStore(WebdavServerProperties.WORKING_DIRECTORY, store, ageIndex);
+    }
+
+    /**
+     * Downloads bypass the webdav store so that the file can be handed to the container without copying it.
+     */
+    @Override
+    protected void service(final HttpServletRequest req, final HttpServletResponse resp)
+            throws ServletException, IOException {
+        final WebdavGetRequestHandler getRequestHandlerCopy = getRequestHandler;
+        if (getRequestHandlerCopy != null && getRequestHandlerCopy.handle(getServletContext(), req, resp)) {
+            return;
+        }
+        super.service(req, resp);
+    }
+
+    @Override
+    public void destroy() {
+        LocalFileChannels.unregisterServerDirectory(WebdavServerProperties.getServerBindUri());
+        final Runnable blobPurgeListenerCopy = blobPurgeListener;
+        if (blobPurgeListenerCopy != null) {
+            WebdavServerProperties.getAgeIndex().removeEvictionListener(blobPurgeListenerCopy);
+            blobPurgeListener = null;
+        }
+        super.destroy();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,264 @@
+package de.invesdwin.context.integration.webdav.server.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Principal;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.commons.io.IOUtils;
+
+import de.invesdwin.context.log.Log;
+import de.invesdwin.util.lang.Files;
+import de.invesdwin.util.lang.UUIDs;
+import de.invesdwin.util.time.date.FTimeUnit;
+import de.invesdwin.util.time.duration.Duration;
+import net.sf.webdav.StoredObject;
+import net.sf.webdav.exceptions.WebdavException;
+import net.sf.webdav.impl.LocalFileSystemStore;
+import net.sf.webdav.spi.ITransaction;
+import net.sf.webdav.spi.IWebdavStore;
+
+/**
+ * Stores uploaded content once per SHA-256 hash in WebdavServerProperties.BLOB_DIRECTORY. The files in the working
+ * directory are hard links to these blobs, so uploading the same payload again only adds a directory entry and the
+ * file system counts the references. The working directory thus stays a plain directory tree that can still be read
+ * and purged directly. Blobs that are no longer referenced by any name are removed by purgeUnreferencedBlobs().
+ *
+ * Since all names of a blob share the same inode, they also share the modification time of the content that was stored
+ * first. Linking a new name does not change it, so the other names keep their Last-Modified and ETag. The age index
+ * lists the new name in the bucket of its upload, which keeps the purge of old files from deleting it. Files in the
+ * working directory must never be written in place by other means, they have to be replaced (e.g. by a rename) to not
+ * change the content of other names.
+ *
+ * The quota of the age index counts logical bytes, thus each name counts with the full size of its content even when
+ * it shares a blob with other names. Evicting a name only frees space once its blob is not referenced anymore, which
+ * is why the server purges unreferenced blobs right after each eviction.
+ */
+@ThreadSafe
+public class DeduplicatingWebdavStore implements IWebdavStore {
+
+    private static final Log LOG = new Log(DeduplicatingWebdavStore.class);
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final String NLINK_ATTRIBUTE = "unix:nlink";
+    private static final String TEMP_DIRECTORY_NAME = "tmp";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    //uploads that take longer than this are considered abandoned
+    private static final long TEMP_FILE_TIMEOUT_MILLIS = Duration.ONE_DAY.longValue(FTimeUnit.MILLISECONDS);
+    //uploads into a hash directory and the purge of its blobs and the directory itself need to be serialized
+    private static final Object[] HASH_DIRECTORY_LOCKS = new Object[256];
+
+    static {
+        for (int i = 0; i < HASH_DIRECTORY_LOCKS.length; i++) {
+            HASH_DIRECTORY_LOCKS[i] = new Object();
+        }
+    }
+
+    private final File root;
+    private final File blobDirectory;
+    private final IWebdavStore delegate;
+
+    public DeduplicatingWebdavStore(final File root, final File blobDirectory) {
+        this.root = root;
+        this.blobDirectory = blobDirectory;
+        this.delegate = new LocalFileSystemStore(root);
+    }
+
+    /**
+     * Reference counting relies on the link count of the unix attribute view.
+     */
+    public static boolean isSupported() {
+        return FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+    }
+
+    @Override
+    public ITransaction begin(final Principal principal) throws WebdavException {
+        return delegate.begin(principal);
+    }
+
+    @Override
+    public void checkAuthentication(final ITransaction transaction) throws WebdavException {
+        delegate.checkAuthentication(transaction);
+    }
+
+    @Override
+    public void commit(final ITransaction transaction) throws WebdavException {
+        delegate.commit(transaction);
+    }
+
+    @Override
+    public void rollback(final ITransaction transaction) throws WebdavException {
+        delegate.rollback(transaction);
+    }
+
+    @Override
+    public void createFolder(final ITransaction transaction, final String folderUri) throws WebdavException {
+        delegate.createFolder(transaction, folderUri);
+    }
+
+    @Override
+    public void createResource(final ITransaction transaction, final String resourceUri) throws WebdavException {
+        delegate.createResource(transaction, resourceUri);
+    }
+
+    @Override
+    public InputStream getResourceContent(final ITransaction transaction, final String resourceUri)
+            throws WebdavException {
+        return delegate.getResourceContent(transaction, resourceUri);
+    }
+
+    /**
+     * The content is hashed while it is written to a temp file. When a blob with that hash exists already, the temp
+     * file is discarded and the name becomes another link to the existing blob. The name is replaced atomically, so
+     * readers see either the old or the new content.
+     */
+    @Override
+    public long setResourceContent(final ITransaction transaction, final String resourceUri, final InputStream content,
+            final long contentLength) throws WebdavException {
+        final File file = new File(root, resourceUri);
+        final File tempDirectory = new File(blobDirectory, TEMP_DIRECTORY_NAME);
+        final File tempFile = new File(tempDirectory, UUIDs.newPseudorandomUUID());
+        try {
+            Files.forceMkdir(tempDirectory);
+            final MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+            final long length;
+            try (InputStream in = new DigestInputStream(content, digest);
+                    OutputStream out = new FileOutputStream(tempFile)) {
+                length = IOUtils.copyLarge(in, out, new byte[BUFFER_SIZE]);
+            }
+            final String hash = toHex(digest.digest());
+            final File blob = getBlobFile(hash);
+            final File tempLink = new File(tempDirectory, UUIDs.newPseudorandomUUID());
+            synchronized (getHashDirectoryLock(blob.getParentFile().getName())) {
+                if (blob.exists()) {
+                    //duplicate content, nothing gets stored
+                    Files.deleteQuietly(tempFile);
+                } else {
+                    Files.forceMkdir(blob.getParentFile());
+                    move(tempFile.toPath(), blob.toPath());
+                }
+                java.nio.file.Files.createLink(tempLink.toPath(), blob.toPath());
+            }
+            move(tempLink.toPath(), file.toPath());
+            return length;
+        } catch (final IOException | NoSuchAlgorithmException e) {
+            Files.deleteQuietly(tempFile);
+            throw new WebdavException("Failed to write file: %s. Reason: %s", e, file, e.getMessage());
+        }
+    }
+
+    @Override
+    public String[] getChildrenNames(final ITransaction transaction, final String folderUri) throws WebdavException {
+        return delegate.getChildrenNames(transaction, folderUri);
+    }
+
+    @Override
+    public long getResourceLength(final ITransaction transaction, final String path) throws WebdavException {
+        return delegate.getResourceLength(transaction, path);
+    }
+
+    /**
+     * Only the name is removed, the blob stays until purgeUnreferencedBlobs() finds it without other names.
+     */
+    @Override
+    public void removeObject(final ITransaction transaction, final String uri) throws WebdavException {
+        delegate.removeObject(transaction, uri);
+    }
+
+    @Override
+    public StoredObject getStoredObject(final ITransaction transaction, final String uri) throws WebdavException {
+        return delegate.getStoredObject(transaction, uri);
+    }
+
+    /**
+     * Removes blobs that are only referenced by themselves because their names were deleted or replaced, and temp files
+     * of uploads that did not finish. Returns the number of removed blobs.
+     */
+    public int purgeUnreferencedBlobs() {
+        final File[] hashDirectories = blobDirectory.listFiles();
+        if (hashDirectories == null) {
+            return 0;
+        }
+        int purged = 0;
+        for (final File hashDirectory : hashDirectories) {
+            final File[] blobs = hashDirectory.listFiles();
+            if (blobs == null) {
+                continue;
+            }
+            if (TEMP_DIRECTORY_NAME.equals(hashDirectory.getName())) {
+                final long threshold = System.currentTimeMillis() - TEMP_FILE_TIMEOUT_MILLIS;
+                for (final File tempFile : blobs) {
+                    if (tempFile.lastModified() < threshold) {
+                        Files.deleteQuietly(tempFile);
+                    }
+                }
+                continue;
+            }
+            synchronized (getHashDirectoryLock(hashDirectory.getName())) {
+                for (final File blob : blobs) {
+                    try {
+                        if (getLinkCount(blob) <= 1) {
+                            java.nio.file.Files.deleteIfExists(blob.toPath());
+                            purged++;
+                        }
+                    } catch (final IOException e) {
+                        LOG.warn("Unable to purge blob [%s]: %s", blob, e.toString());
+                    }
+                }
+                hashDirectory.delete(); //only succeeds when empty
+            }
+        }
+        return purged;
+    }
+
+    public File getBlobDirectory() {
+        return blobDirectory;
+    }
+
+    private File getBlobFile(final String hash) {
+        //spread the blobs over subdirectories to keep directory listings short
+        return new File(new File(blobDirectory, hash.substring(0, 2)), hash);
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final char[] digits = "0123456789abcdef".toCharArray();
+        final char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = digits[(bytes[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = digits[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    private static Object getHashDirectoryLock(final String hashDirectoryName) {
+        return HASH_DIRECTORY_LOCKS[Math.abs(hashDirectoryName.hashCode() % HASH_DIRECTORY_LOCKS.length)];
+    }
+
+    private static int getLinkCount(final File file) throws IOException {
+        return (Integer) java.nio.file.Files.getAttribute(file.toPath(), NLINK_ATTRIBUTE);
+    }
+
+    private static void move(final Path source, final Path target) throws IOException {
+        try {
+            java.nio.file.Files.move(source, target, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            java.nio.file.Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final FileAlreadyExistsException e) {
+            //some platforms refuse to replace atomically
+            java.nio.file.Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+}
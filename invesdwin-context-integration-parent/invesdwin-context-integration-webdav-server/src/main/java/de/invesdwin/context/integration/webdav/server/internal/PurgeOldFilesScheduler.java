@@ -1,70 +1,88 @@
 package de.invesdwin.context.integration.webdav.server.internal;
 
-import java.io.File;
-import java.util.Iterator;
-
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.inject.Named;
 
-import org.apache.commons.io.filefilter.AgeFileFilter;
-import org.apache.commons.io.filefilter.TrueFileFilter;
 import org.springframework.scheduling.annotation.Scheduled;
 
 import de.invesdwin.aspects.annotation.SkipParallelExecution;
 import de.invesdwin.context.beans.hook.IStartupHook;
 import de.invesdwin.context.integration.webdav.server.WebdavServerProperties;
-import de.invesdwin.util.lang.Files;
+import de.invesdwin.context.integration.ws.filechannel.FileAgeIndex;
+import de.invesdwin.context.integration.ws.filechannel.FileAgeIndex.PurgeStatistics;
+import de.invesdwin.context.log.Log;
 import de.invesdwin.util.time.date.FDate;
 
 @Named
 @NotThreadSafe
 public class PurgeOldFilesScheduler implements IStartupHook {
 
+    private final Log log = new Log(this);
+
+    /**
+     * Only the expired hour buckets of the age index are read, so this can run often without walking the working
+     * directory. The quota is enforced on each write already, this is just a fallback.
+     */
     @SkipParallelExecution
-    @Scheduled(cron = "0 0 0 * * ?") //check every day
+    @Scheduled(cron = "0 */10 * * * ?") //check every 10 minutes
     public void purgeOldFiles() {
-        if (WebdavServerProperties.PURGE_FILES_OLDER_THAN_DURATION == null
-                || !WebdavServerProperties.WORKING_DIRECTORY.exists()) {
+        final boolean purgeEnabled = WebdavServerProperties.PURGE_FILES_OLDER_THAN_DURATION != null;
+        final boolean quotaEnabled = WebdavServerProperties.QUOTA_MAX_BYTES != null;
+        if (!purgeEnabled && !quotaEnabled || !WebdavServerProperties.WORKING_DIRECTORY.exists()) {
             return;
         }
-        final FDate threshold = new FDate().subtract(WebdavServerProperties.PURGE_FILES_OLDER_THAN_DURATION);
-        final Iterator<File> filesToDelete = Files.iterateFiles(WebdavServerProperties.WORKING_DIRECTORY,
-                new AgeFileFilter(threshold.dateValue(), true), TrueFileFilter.INSTANCE);
-        while (filesToDelete.hasNext()) {
-            final File fileToDelete = filesToDelete.next();
-            fileToDelete.delete();
+        final FileAgeIndex ageIndex = WebdavServerProperties.getAgeIndex();
+        if (!ageIndex.isComplete()) {
+            //files from before the index existed need to be indexed once
+            ageIndex.rebuild();
+        } else if (quotaEnabled && ageIndex.getUsedBytes() < 0) {
+            //the used bytes are not persisted
+            ageIndex.recount();
+        }
+        boolean purged = false;
+        if (purgeEnabled) {
+            final FDate threshold = new FDate().subtract(WebdavServerProperties.PURGE_FILES_OLDER_THAN_DURATION);
+            final PurgeStatistics statistics = ageIndex.purgeOlderThan(threshold);
+            if (statistics.getFiles() > 0) {
+                log.info("Purged %s files with %s bytes from %s buckets in %s (total %s files with %s bytes)",
+                        statistics.getFiles(), statistics.getBytes(), statistics.getBuckets(),
+                        statistics.getDuration(), ageIndex.getPurgedFilesCount(), ageIndex.getPurgedBytesCount());
+                purged = true;
+            }
+        }
+        if (quotaEnabled) {
+            final PurgeStatistics statistics = ageIndex.evictToQuota();
+            if (statistics.getFiles() > 0) {
+                log.info("Evicted %s files with %s bytes from %s buckets in %s for the quota of %s bytes (total %s "
+                        + "files with %s bytes)", statistics.getFiles(), statistics.getBytes(),
+                        statistics.getBuckets(), statistics.getDuration(), WebdavServerProperties.QUOTA_MAX_BYTES,
+                        ageIndex.getEvictedFilesCount(), ageIndex.getEvictedBytesCount());
+                purged = true;
+            }
         }
-        for (final File f : WebdavServerProperties.WORKING_DIRECTORY.listFiles()) {
-            maybeDeleteEmptyDirectories(f);
+        if (purged) {
+            purgeUnreferencedBlobs();
         }
     }
 
     /**
-     * https://stackoverflow.com/questions/26017545/delete-all-empty-folders-in-java
+     * Names that were deleted or replaced leave their blobs behind when deduplication is enabled.
      */
-    private long maybeDeleteEmptyDirectories(final File f) {
-        final String[] listFiles = f.list();
-        long totalSize = 0;
-        for (final String file : listFiles) {
-
-            final File folder = new File(f, file);
-            if (folder.isDirectory()) {
-                totalSize += maybeDeleteEmptyDirectories(folder);
-            } else {
-                totalSize += folder.length();
-            }
-        }
-
-        if (totalSize == 0) {
-            f.delete();
+    @SkipParallelExecution
+    @Scheduled(cron = "0 30 * * * ?") //check every hour
+    public void purgeUnreferencedBlobs() {
+        if (!WebdavServerProperties.DEDUPLICATION_ENABLED || !WebdavServerProperties.BLOB_DIRECTORY.exists()
+                || !DeduplicatingWebdavStore.isSupported()) {
+            return;
         }
-
-        return totalSize;
+        new DeduplicatingWebdavStore(WebdavServerProperties.WORKING_DIRECTORY, WebdavServerProperties.BLOB_DIRECTORY)
+                .purgeUnreferencedBlobs();
     }
 
     @Override
     public void startup() throws Exception {
         purgeOldFiles();
+        purgeUnreferencedBlobs();
     }
 
 }
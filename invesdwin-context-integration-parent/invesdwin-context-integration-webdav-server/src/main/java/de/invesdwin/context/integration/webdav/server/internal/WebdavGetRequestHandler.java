@@ -0,0 +1,300 @@
+package de.invesdwin.context.integration.webdav.server.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import de.invesdwin.context.integration.ws.filechannel.FileAgeIndex;
+import de.invesdwin.util.lang.Strings;
+
+/**
+ * Serves GET and HEAD requests for files directly from the working directory instead of through the stream of the
+ * webdav store. Supports ETag, Last-Modified, If-None-Match, If-Modified-Since, If-Range and single byte ranges, and
+ * always sends the Content-Length up front.
+ *
+ * The content is handed to the container without copying it through the heap where possible: Tomcat gets the file via
+ * its sendfile request attributes, Jetty gets a memory mapped buffer that it writes to the socket directly. Other
+ * containers receive the mapped content in large chunks.
+ */
+@ThreadSafe
+public class WebdavGetRequestHandler {
+
+    private static final String TOMCAT_SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String TOMCAT_SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String TOMCAT_SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String TOMCAT_SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final String JETTY_SEND_CONTENT = "sendContent";
+    private static final int CHUNK_SIZE = 256 * 1024;
+    private static final Method NO_METHOD;
+    //outputs are looked up once per container class
+    private static final Map<Class<?>, Method> OUTPUTCLASS_SENDCONTENT = new ConcurrentHashMap<>();
+
+    static {
+        try {
+            NO_METHOD = Object.class.getMethod("toString");
+        } catch (final NoSuchMethodException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private final File root;
+    private final String canonicalRoot;
+    private final FileAgeIndex ageIndex;
+
+    public WebdavGetRequestHandler(final File root, final FileAgeIndex ageIndex) {
+        this.root = root;
+        this.ageIndex = ageIndex;
+        try {
+            this.canonicalRoot = root.getCanonicalPath() + File.separator;
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns false when the request is not a GET or HEAD for an existing file, in which case the webdav servlet
+     * should handle it.
+     */
+    public boolean handle(final ServletContext context, final HttpServletRequest request,
+            final HttpServletResponse response) throws IOException {
+        final boolean head = "HEAD".equals(request.getMethod());
+        if (!head && !"GET".equals(request.getMethod())) {
+            return false;
+        }
+        final File file = resolveFile(request.getPathInfo());
+        if (file == null) {
+            return false;
+        }
+        //keeps files that are read often from being evicted
+        ageIndex.touch(file);
+        final FileChannel openedChannel;
+        try {
+            openedChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } catch (final NoSuchFileException e) {
+            //deleted or purged after it was resolved, the webdav servlet answers with not found
+            return false;
+        }
+        try (FileChannel channel = openedChannel) {
+            //use the size of the opened file, it might be replaced by an upload in the meantime
+            final long length = channel.size();
+            final long lastModified = file.lastModified();
+            final String etag = newETag(length, lastModified);
+            response.setHeader("ETag", etag);
+            response.setDateHeader("Last-Modified", lastModified);
+            response.setHeader("Accept-Ranges", "bytes");
+            if (isNotModified(request, etag, lastModified)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return true;
+            }
+            final String contentType = context.getMimeType(file.getName());
+            if (contentType != null) {
+                response.setContentType(contentType);
+            } else {
+                response.setContentType("application/octet-stream");
+            }
+            long start = 0;
+            long end = length;
+            final String range = request.getHeader("Range");
+            if (range != null && isRangeApplicable(request, etag, lastModified)) {
+                final long[] parsed = parseRange(range, length);
+                if (parsed == null) {
+                    response.setHeader("Content-Range", "bytes */" + length);
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return true;
+                } else if (parsed.length == 2) {
+                    start = parsed[0];
+                    end = parsed[1];
+                    response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                    response.setHeader("Content-Range", "bytes " + start + "-" + (end - 1) + "/" + length);
+                }
+            }
+            //servlet 3.0 has no setContentLengthLong(...) yet
+            response.setHeader("Content-Length", String.valueOf(end - start));
+            if (head || end == start) {
+                return true;
+            }
+            send(request, response, file, channel, start, end);
+        }
+        return true;
+    }
+
+    private File resolveFile(final String pathInfo) throws IOException {
+        if (Strings.isBlank(pathInfo)) {
+            return null;
+        }
+        final File file = new File(root, pathInfo);
+        if (!file.isFile()) {
+            return null;
+        }
+        //don't serve anything outside of the working directory
+        if (!file.getCanonicalPath().startsWith(canonicalRoot)) {
+            return null;
+        }
+        return file;
+    }
+
+    private static String newETag(final long length, final long lastModified) {
+        return "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+
+    private static boolean isNotModified(final HttpServletRequest request, final String etag,
+            final long lastModified) {
+        final String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            //If-Modified-Since is ignored when If-None-Match is present
+            return matchesETag(ifNoneMatch, etag);
+        }
+        final long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+        //http dates only have a precision of seconds
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    private static boolean matchesETag(final String header, final String etag) {
+        for (final String candidate : header.split(",")) {
+            final String trimmed = candidate.trim();
+            if ("*".equals(trimmed) || etag.equals(Strings.removeStart(trimmed, "W/"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A range is only applied when If-Range is missing or still matches, otherwise the whole file is sent.
+     */
+    private static boolean isRangeApplicable(final HttpServletRequest request, final String etag,
+            final long lastModified) {
+        final String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return etag.equals(ifRange.trim());
+        }
+        final long ifRangeDate = getDateHeader(request, "If-Range");
+        return ifRangeDate >= 0 && lastModified / 1000 <= ifRangeDate / 1000;
+    }
+
+    private static long getDateHeader(final HttpServletRequest request, final String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (final IllegalArgumentException e) {
+            //invalid dates are ignored
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the start and exclusive end of a single range, an empty array when the header should be ignored (e.g.
+     * multiple ranges, which are answered with the whole file) and null when the range can not be satisfied.
+     */
+    static long[] parseRange(final String header, final long length) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return new long[0];
+        }
+        final String spec = header.substring("bytes=".length()).trim();
+        final int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            final String startStr = spec.substring(0, dash).trim();
+            final String endStr = spec.substring(dash + 1).trim();
+            if (startStr.isEmpty()) {
+                //suffix range with the last bytes
+                final long suffix = Long.parseLong(endStr);
+                if (suffix <= 0 || length == 0) {
+                    return null;
+                }
+                return new long[] { Math.max(0, length - suffix), length };
+            }
+            final long start = Long.parseLong(startStr);
+            if (start >= length) {
+                return null;
+            }
+            final long end;
+            if (endStr.isEmpty()) {
+                end = length;
+            } else {
+                final long inclusiveEnd = Long.parseLong(endStr);
+                if (inclusiveEnd < start) {
+                    return new long[0];
+                }
+                end = Math.min(length, inclusiveEnd + 1);
+            }
+            return new long[] { start, end };
+        } catch (final NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    private static void send(final HttpServletRequest request, final HttpServletResponse response, final File file,
+            final FileChannel channel, final long start, final long end) throws IOException {
+        if (Boolean.TRUE.equals(request.getAttribute(TOMCAT_SENDFILE_SUPPORT))) {
+            //the container sends the file after the servlet returned
+            request.setAttribute(TOMCAT_SENDFILE_FILENAME, file.getCanonicalPath());
+            request.setAttribute(TOMCAT_SENDFILE_START, start);
+            request.setAttribute(TOMCAT_SENDFILE_END, end);
+            return;
+        }
+        final OutputStream out = response.getOutputStream();
+        final Method sendContent = getSendContent(out.getClass());
+        if (sendContent != NO_METHOD && end - start <= Integer.MAX_VALUE) {
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            try {
+                sendContent.invoke(out, mapped);
+                return;
+            } catch (final InvocationTargetException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            } catch (final IllegalAccessException e) {
+                throw new IOException(e);
+            }
+        }
+        final byte[] chunk = new byte[(int) Math.min(CHUNK_SIZE, end - start)];
+        long position = start;
+        while (position < end) {
+            final long mapLength = Math.min(Integer.MAX_VALUE, end - position);
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, mapLength);
+            while (mapped.hasRemaining()) {
+                final int length = Math.min(chunk.length, mapped.remaining());
+                mapped.get(chunk, 0, length);
+                out.write(chunk, 0, length);
+            }
+            position += mapLength;
+        }
+    }
+
+    /**
+     * Jetty can write a buffer to the socket without copying it into its own buffers.
+     */
+    private static Method getSendContent(final Class<?> outputClass) {
+        Method method = OUTPUTCLASS_SENDCONTENT.get(outputClass);
+        if (method == null) {
+            try {
+                method = outputClass.getMethod(JETTY_SEND_CONTENT, ByteBuffer.class);
+            } catch (final NoSuchMethodException e) {
+                method = NO_METHOD;
+            }
+            OUTPUTCLASS_SENDCONTENT.put(outputClass, method);
+        }
+        return method;
+    }
+
+}
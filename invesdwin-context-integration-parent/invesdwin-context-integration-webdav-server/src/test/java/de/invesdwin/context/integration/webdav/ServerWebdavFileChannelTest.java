@@ -1,11 +1,25 @@
 package de.invesdwin.context.integration.webdav;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import de.invesdwin.context.integration.filechannel.IFileChannel;
 import de.invesdwin.context.integration.webdav.server.WebdavServerProperties;
+import de.invesdwin.context.integration.webdav.server.internal.DeduplicatingWebdavStore;
+import de.invesdwin.context.integration.ws.filechannel.LocalFileChannel;
 import de.invesdwin.context.webserver.test.WebserverTest;
+import de.invesdwin.util.assertions.Assertions;
 
 @WebserverTest
 @NotThreadSafe
@@ -16,4 +30,123 @@ public class ServerWebdavFileChannelTest extends WebdavFileChannelTest {
         return WebdavServerProperties.getServerBindUri();
     }
 
+    @Test
+    public void testLocalFileChannel() {
+        final URI destination = getDestination();
+        final IFileChannel<?> localChannel = WebdavFileChannel.newFileChannel(destination,
+                ServerWebdavFileChannelTest.class.getSimpleName());
+        //the server runs in this process
+        Assertions.assertThat(localChannel).isInstanceOf(LocalFileChannel.class);
+        localChannel.connect();
+        localChannel.createUniqueFile();
+        final byte[] write = "hello world".getBytes();
+        localChannel.upload(write);
+        final WebdavFileChannel channel = new WebdavFileChannel(destination,
+                ServerWebdavFileChannelTest.class.getSimpleName());
+        channel.setFilename(localChannel.getFilename());
+        channel.connect();
+        Assertions.assertThat(channel.download()).isEqualTo(write);
+        channel.delete();
+        Assertions.checkFalse(localChannel.exists());
+        channel.close();
+        localChannel.close();
+    }
+
+    @Test
+    public void testDeduplication() throws IOException {
+        if (!WebdavServerProperties.DEDUPLICATION_ENABLED || !DeduplicatingWebdavStore.isSupported()) {
+            //hard links are not available on this file system
+            return;
+        }
+        final URI destination = getDestination();
+        final byte[] write = "hello deduplication".getBytes();
+        final WebdavFileChannel channel1 = new WebdavFileChannel(destination,
+                ServerWebdavFileChannelTest.class.getSimpleName());
+        channel1.connect();
+        channel1.createUniqueFile();
+        channel1.upload(write);
+        final WebdavFileChannel channel2 = new WebdavFileChannel(destination,
+                ServerWebdavFileChannelTest.class.getSimpleName());
+        channel2.connect();
+        channel2.createUniqueFile();
+        channel2.upload(write);
+        final File file1 = new File(new File(WebdavServerProperties.WORKING_DIRECTORY, channel1.getDirectory()),
+                channel1.getFilename());
+        final File file2 = new File(new File(WebdavServerProperties.WORKING_DIRECTORY, channel2.getDirectory()),
+                channel2.getFilename());
+        //both names and the blob share one inode
+        Assertions.assertThat(java.nio.file.Files.getAttribute(file1.toPath(), "unix:nlink")).isEqualTo(3);
+        Assertions.assertThat(java.nio.file.Files.isSameFile(file1.toPath(), file2.toPath())).isTrue();
+        channel1.delete();
+        Assertions.assertThat(channel2.download()).isEqualTo(write);
+        channel2.upload("changed".getBytes());
+        Assertions.assertThat(channel2.download()).isEqualTo("changed".getBytes());
+        final DeduplicatingWebdavStore store = new DeduplicatingWebdavStore(WebdavServerProperties.WORKING_DIRECTORY,
+                WebdavServerProperties.BLOB_DIRECTORY);
+        //the blob of the first content is not referenced anymore
+        Assertions.assertThat(store.purgeUnreferencedBlobs()).isGreaterThanOrEqualTo(1);
+        Assertions.assertThat(channel2.download()).isEqualTo("changed".getBytes());
+        channel2.delete();
+        channel1.close();
+        channel2.close();
+    }
+
+    @Test
+    public void testRangeRequest() throws IOException {
+        final URI destination = getDestination();
+        final byte[] write = "0123456789".getBytes();
+        final WebdavFileChannel channel = new WebdavFileChannel(destination,
+                ServerWebdavFileChannelTest.class.getSimpleName());
+        //ranges refer to the stored bytes
+        channel.setCompressionEnabled(false);
+        channel.connect();
+        channel.createUniqueFile();
+        channel.upload(write);
+        final URL fileUrl = new URL(channel.getFileUrl());
+
+        final HttpURLConnection range = openConnection(fileUrl);
+        range.setRequestProperty("Range", "bytes=2-5");
+        Assertions.assertThat(range.getResponseCode()).isEqualTo(HttpURLConnection.HTTP_PARTIAL);
+        Assertions.assertThat(range.getHeaderField("Content-Range")).isEqualTo("bytes 2-5/10");
+        Assertions.assertThat(range.getHeaderField("Content-Length")).isEqualTo("4");
+        try (InputStream in = range.getInputStream()) {
+            Assertions.assertThat(IOUtils.toByteArray(in)).isEqualTo("2345".getBytes());
+        }
+        final String etag = range.getHeaderField("ETag");
+        Assertions.checkNotNull(etag);
+
+        final HttpURLConnection suffix = openConnection(fileUrl);
+        suffix.setRequestProperty("Range", "bytes=-3");
+        try (InputStream in = suffix.getInputStream()) {
+            Assertions.assertThat(IOUtils.toByteArray(in)).isEqualTo("789".getBytes());
+        }
+
+        final HttpURLConnection unsatisfiable = openConnection(fileUrl);
+        unsatisfiable.setRequestProperty("Range", "bytes=20-");
+        Assertions.assertThat(unsatisfiable.getResponseCode()).isEqualTo(416);
+        Assertions.assertThat(unsatisfiable.getHeaderField("Content-Range")).isEqualTo("bytes */10");
+
+        final HttpURLConnection notModified = openConnection(fileUrl);
+        notModified.setRequestProperty("If-None-Match", etag);
+        Assertions.assertThat(notModified.getResponseCode()).isEqualTo(HttpURLConnection.HTTP_NOT_MODIFIED);
+
+        final HttpURLConnection head = openConnection(fileUrl);
+        head.setRequestMethod("HEAD");
+        Assertions.assertThat(head.getResponseCode()).isEqualTo(HttpURLConnection.HTTP_OK);
+        Assertions.assertThat(head.getHeaderField("Content-Length")).isEqualTo("10");
+        Assertions.assertThat(head.getHeaderField("Accept-Ranges")).isEqualTo("bytes");
+
+        Assertions.assertThat(channel.download()).isEqualTo(write);
+        channel.delete();
+        channel.close();
+    }
+
+    private static HttpURLConnection openConnection(final URL url) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        final String credentials = WebdavClientProperties.USERNAME + ":" + WebdavClientProperties.PASSWORD;
+        connection.setRequestProperty("Authorization",
+                "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+        return connection;
+    }
+
 }
@@ -0,0 +1,48 @@
+package de.invesdwin.context.integration.webdav;
+
+import javax.annotation.concurrent.Immutable;
+
+import de.invesdwin.util.time.date.FDate;
+
+/**
+ * The result of WebdavFileChannel.downloadIfModified(...). Pass it to the next call, so that the content is only
+ * transferred again when the file changed in the meantime.
+ */
+@Immutable
+public class WebdavConditionalDownload {
+
+    private final byte[] content;
+    private final String etag;
+    private final FDate modified;
+    private final boolean changed;
+
+    WebdavConditionalDownload(final byte[] content, final String etag, final FDate modified, final boolean changed) {
+        this.content = content;
+        this.etag = etag;
+        this.modified = modified;
+        this.changed = changed;
+    }
+
+    /**
+     * The current content, which is taken from the previous download when the file did not change.
+     */
+    public byte[] getContent() {
+        return content;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public FDate getModified() {
+        return modified;
+    }
+
+    /**
+     * False when the server answered "304 Not Modified" without sending the content again.
+     */
+    public boolean isChanged() {
+        return changed;
+    }
+
+}
@@ -3,30 +3,51 @@ package de.invesdwin.context.integration.webdav;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.http.HttpStatus;
 
 import com.github.sardine.DavResource;
 import com.github.sardine.Sardine;
-import com.github.sardine.SardineFactory;
 import com.github.sardine.impl.SardineException;
+import com.github.sardine.impl.SardineImpl;
 
 import de.invesdwin.context.integration.filechannel.IFileChannel;
+import de.invesdwin.context.integration.streams.LZ4Streams;
+import de.invesdwin.context.integration.webdav.internal.WebdavDownloadInputStream;
+import de.invesdwin.context.integration.webdav.internal.WebdavFileEntity;
+import de.invesdwin.context.integration.webdav.internal.WebdavSegmentedDownload;
+import de.invesdwin.context.integration.webdav.internal.WebdavUploadOutputStream;
+import de.invesdwin.context.integration.webdav.pool.WebdavClient;
+import de.invesdwin.context.integration.webdav.pool.WebdavConnectionPool;
+import de.invesdwin.context.integration.ws.filechannel.DirectoryCache;
+import de.invesdwin.context.integration.ws.filechannel.DownloadCache;
+import de.invesdwin.context.integration.ws.filechannel.LocalFileChannels;
+import de.invesdwin.context.integration.ws.filechannel.LocalTransfers;
 import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.concurrent.Executors;
+import de.invesdwin.util.concurrent.WrappedExecutorService;
 import de.invesdwin.util.lang.Files;
 import de.invesdwin.util.lang.Objects;
 import de.invesdwin.util.lang.Strings;
@@ -39,7 +60,17 @@ import de.invesdwin.util.streams.ADelegateOutputStream;
 import de.invesdwin.util.time.date.FDate;
 
 @ThreadSafe
-public class WebdavFileChannel implements IFileChannel<DavResource> {
+public class WebdavFileChannel implements IFileChannel<DavResource>, Cloneable {
+
+    public static final DownloadCache DOWNLOAD_CACHE = new DownloadCache(
+            new File(WebdavClientProperties.TEMP_DIRECTORY, "WebdavDownloadCache"),
+            WebdavClientProperties.DOWNLOAD_CACHE_MAX_SIZE);
+    public static final DirectoryCache<DavResource> DIRECTORY_CACHE = new DirectoryCache<>(
+            WebdavClientProperties.DIRECTORY_CACHE_TTL);
+    private static final WrappedExecutorService TRANSFER_EXECUTOR = Executors
+            .newCachedThreadPool(WebdavFileChannel.class.getSimpleName() + "_transfer");
+    private static final WrappedExecutorService ASYNC_EXECUTOR = Executors.newFixedThreadPool(
+            WebdavFileChannel.class.getSimpleName() + "_async", WebdavClientProperties.ASYNC_EXECUTOR_THREADS);
 
     private final String serverUrl;
     private final String directory;
@@ -47,6 +78,23 @@ public class WebdavFileChannel implements IFileChannel<DavResource> {
     private String filename;
     @GuardedBy("this")
     private byte[] emptyFileContent = Bytes.EMPTY_ARRAY;
+    @GuardedBy("this")
+    private boolean uploadTempFileEnabled = false;
+    @GuardedBy("this")
+    private boolean compressionEnabled = WebdavClientProperties.COMPRESSION_ENABLED;
+    @GuardedBy("this")
+    private boolean directoryCacheEnabled = WebdavClientProperties.DIRECTORY_CACHE_ENABLED;
+    @GuardedBy("this")
+    private boolean downloadCacheEnabled = WebdavClientProperties.DOWNLOAD_CACHE_ENABLED;
+    @GuardedBy("this")
+    private boolean resumeEnabled = WebdavClientProperties.RESUME_ENABLED;
+    @GuardedBy("this")
+    private int transferSegments = WebdavClientProperties.SEGMENTED_TRANSFER_SEGMENTS;
+    @GuardedBy("this")
+    private int transferMinSegmentSize = WebdavClientProperties.SEGMENTED_TRANSFER_MIN_SEGMENT_SIZE;
+
+    @GuardedBy("this")
+    private transient ByteBuffer reusableDownloadBuffer;
 
     @GuardedBy("this")
     private transient WebdavFileChannelFinalizer finalizer;
@@ -60,6 +108,19 @@ public class WebdavFileChannel implements IFileChannel<DavResource> {
                 "/");
     }
 
+    /**
+     * Works on the directory directly when the destination points to a server in this process or uses the "memory" or
+     * "file" scheme, see LocalFileChannels. Otherwise a WebdavFileChannel is returned.
+     */
+    public static IFileChannel<?> newFileChannel(final URI serverUri, final String directory) {
+        final IFileChannel<?> localFileChannel = LocalFileChannels.newLocalFileChannel(serverUri, directory);
+        if (localFileChannel != null) {
+            return localFileChannel;
+        } else {
+            return new WebdavFileChannel(serverUri, directory);
+        }
+    }
+
     public URI getServerUri() {
         return URIs.asUri(serverUrl);
     }
@@ -74,7 +135,15 @@ public class WebdavFileChannel implements IFileChannel<DavResource> {
     }
 
     public synchronized String getFileUrl() {
-        return serverUrl + directory + filename;
+        return serverUrl + directory + getRemoteFilename();
+    }
+
+    private String getRemoteFilename() {
+        if (compressionEnabled) {
+            return getFilename() + WebdavClientProperties.COMPRESSION_FILE_SUFFIX;
+        } else {
+            return getFilename();
+        }
     }
 
     @Override
@@ -100,6 +169,91 @@ public class WebdavFileChannel implements IFileChannel<DavResource> {
         this.emptyFileContent = emptyFileContent;
     }
 
+    public synchronized boolean isUploadTempFileEnabled() {
+        return uploadTempFileEnabled;
+    }
+
+    /**
+     * Enable this to write uploadOutputStream() into getLocalTempFile() first instead of streaming it as a chunked PUT,
+     * e.g. for servers that don't accept chunked request bodies.
+     */
+    public synchronized void setUploadTempFileEnabled(final boolean uploadTempFileEnabled) {
+        this.uploadTempFileEnabled = uploadTempFileEnabled;
+    }
+
+    public synchronized boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    /**
+     * When enabled, the content is stored with LZ4 framing under the filename plus
+     * WebdavClientProperties.COMPRESSION_FILE_SUFFIX, in which case size() returns the compressed size. Readers need to
+     * enable compression as well. Compressed downloads are not segmented. Independent of this setting, full downloads
+     * accept gzip content encoding which is decoded transparently.
+     */
+    public synchronized void setCompressionEnabled(final boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    public synchronized boolean isDirectoryCacheEnabled() {
+        return directoryCacheEnabled;
+    }
+
+    /**
+     * When enabled, the depth 1 PROPFIND of the directory is shared between channels for
+     * WebdavClientProperties.DIRECTORY_CACHE_TTL and used to answer exists(), size(), modified() and info(). Changes by
+     * other clients only become visible after the listing expired.
+     */
+    public synchronized void setDirectoryCacheEnabled(final boolean directoryCacheEnabled) {
+        this.directoryCacheEnabled = directoryCacheEnabled;
+    }
+
+    public synchronized boolean isDownloadCacheEnabled() {
+        return downloadCacheEnabled;
+    }
+
+    /**
+     * When enabled, download() and downloadInputStream() keep the content in a local disk cache that is shared between
+     * channels. As long as etag, size and modification time of the remote file stay the same, the content is read from
+     * disk after a single PROPFIND, which can also be answered by the directory cache.
+     */
+    public synchronized void setDownloadCacheEnabled(final boolean downloadCacheEnabled) {
+        this.downloadCacheEnabled = downloadCacheEnabled;
+    }
+
+    public synchronized boolean isResumeEnabled() {
+        return resumeEnabled;
+    }
+
+    /**
+     * Downloads that break in the middle are continued with a ranged GET from the last received byte. WebDAV has no
+     * standard way to append to a resource, thus uploads are always sent completely.
+     */
+    public synchronized void setResumeEnabled(final boolean resumeEnabled) {
+        this.resumeEnabled = resumeEnabled;
+    }
+
+    public synchronized int getTransferSegments() {
+        return transferSegments;
+    }
+
+    /**
+     * Files that are larger than getTransferMinSegmentSize() multiplied by this value are split into this many ranges
+     * that are downloaded in parallel by download(). This requires the server to support Range requests, otherwise
+     * each segment transfers the whole file.
+     */
+    public synchronized void setTransferSegments(final int transferSegments) {
+        this.transferSegments = transferSegments;
+    }
+
+    public synchronized int getTransferMinSegmentSize() {
+        return transferMinSegmentSize;
+    }
+
+    public synchronized void setTransferMinSegmentSize(final int transferMinSegmentSize) {
+        this.transferMinSegmentSize = transferMinSegmentSize;
+    }
+
     @Override
     public synchronized void createUniqueFile() {
         createUniqueFile(WebdavFileChannel.class.getSimpleName() + "_", ".channel");
@@ -133,7 +287,12 @@ public class WebdavFileChannel implements IFileChannel<DavResource> {
             Assertions.checkNull(finalizer.webdavClient, "Already connected");
             finalizer.webdavClient = login();
             finalizer.webdavClient.enablePreemptiveAuthentication(URIs.asUrl(serverUrl));
-            if (!finalizer.webdavClient.exists(getDirectoryUrl())) {
+            if (directoryCacheEnabled) {
+                //the listing checks the existence of the directory and fills the cache at the same time
+                if (list() == null) {
+                    createAndChangeDirectory();
+                }
+            } else if (!finalizer.webdavClient.exists(getDirectoryUrl())) {
                 createAndChangeDirectory();
             }
             finalizer.register(this);
@@ -177,8 +336,20 @@ public class WebdavFileChannel implements IFileChannel<DavResource> {
         }
     }
 
+    /**
+     * The client shares the kept alive connections to the server with all other channels, shutting it down only
+     * releases the credentials.
+     */
     protected Sardine login() {
-        return SardineFactory.begin(WebdavClientProperties.USERNAME, WebdavClientProperties.PASSWORD);
+        return WebdavConnectionPool.INSTANCE.newClient(serverUrl, getUsername(), getPassword());
+    }
+
+    protected String getUsername() {
+        return WebdavClientProperties.USERNAME;
+    }
+
+    protected String getPassword() {
+        return WebdavClientProperties.PASSWORD;
     }
 
     @Override
@@ -189,6 +360,9 @@ public class WebdavFileChannel implements IFileChannel<DavResource> {
     @Override
     public synchronized boolean exists() {
         assertConnected();
+        if (directoryCacheEnabled) {
+            return info() != null;
+        }
         try {
             return finalizer.webdavClient.exists(getFileUrl());
         } catch (final IOException e) {
@@ -225,8 +399,20 @@ public class WebdavFileChannel implements IFileChannel<DavResource> {
     @Override
     public synchronized DavResource info() {
         assertConnected();
+        final DirectoryCache.Entry<DavResource> cached = lookupDirectoryCache();
+        if (cached != null) {
+            return cached.getFile();
+        }
+        final DavResource info = infoFromServer(getRemoteFilename());
+        if (directoryCacheEnabled) {
+            DIRECTORY_CACHE.update(getDirectoryCacheKey(), getRemoteFilename(), info);
+        }
+        return info;
+    }
+
+    private DavResource infoFromServer(final String filename) {
         try {
-            final List<DavResource> listFiles = finalizer.webdavClient.list(getFileUrl());
+            final List<DavResource> listFiles = finalizer.webdavClient.list(getDirectoryUrl() + filename, 0);
             if (listFiles.size() == 0) {
                 return null;
             } else if (listFiles.size() == 1) {
@@ -248,6 +434,43 @@ public class WebdavFileChannel implements IFileChannel<DavResource> {
     @Override
     public synchronized List<DavResource> list() {
         assertConnected();
+        if (!directoryCacheEnabled) {
+            return listFromServer();
+        }
+        final String cacheKey = getDirectoryCacheKey();
+        //only the entries that were invalidated by uploads are looked up again instead of listing everything
+        for (final String name : DIRECTORY_CACHE.getInvalidated(cacheKey)) {
+            DIRECTORY_CACHE.update(cacheKey, name, infoFromServer(name));
+        }
+        final List<DavResource> cached = DIRECTORY_CACHE.list(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        final List<DavResource> list = listFromServer();
+        if (list != null) {
+            putDirectoryCache(cacheKey, list);
+        }
+        return list;
+    }
+
+    /**
+     * The PROPFIND result also contains the directory itself, it is kept apart so that it is not mistaken for a file.
+     */
+    private void putDirectoryCache(final String cacheKey, final List<DavResource> list) {
+        final String directoryPath = URIs.asUri(getDirectoryUrl()).getPath();
+        DavResource self = null;
+        final Map<String, DavResource> files = new LinkedHashMap<>();
+        for (final DavResource file : list) {
+            if (file.isDirectory() && Strings.putSuffix(file.getPath(), "/").equals(directoryPath)) {
+                self = file;
+            } else {
+                files.put(file.getName(), file);
+            }
+        }
+        DIRECTORY_CACHE.put(cacheKey, self, files);
+    }
+
+    private List<DavResource> listFromServer() {
         try {
             return finalizer.webdavClient.list(getDirectoryUrl());
         } catch (final SardineException e) {
@@ -285,6 +508,40 @@ public class WebdavFileChannel implements IFileChannel<DavResource> {
         return directories;
     }
 
+    /**
+     * Returns null when the cache is disabled or can not answer for the current file. A missing listing is loaded with
+     * a single PROPFIND, so that lookups for the other files in this directory are served from memory.
+     */
+    private DirectoryCache.Entry<DavResource> lookupDirectoryCache() {
+        if (!directoryCacheEnabled) {
+            return null;
+        }
+        final String cacheKey = getDirectoryCacheKey();
+        final DirectoryCache.Entry<DavResource> entry = DIRECTORY_CACHE.lookup(cacheKey, getRemoteFilename());
+        if (entry != null || DIRECTORY_CACHE.isListed(cacheKey)) {
+            return entry;
+        }
+        list();
+        return DIRECTORY_CACHE.lookup(cacheKey, getRemoteFilename());
+    }
+
+    private String getDirectoryCacheKey() {
+        return getUsername() + "@" + getDirectoryUrl();
+    }
+
+    private void invalidateDirectoryCache() {
+        if (directoryCacheEnabled) {
+            DIRECTORY_CACHE.invalidate(getDirectoryCacheKey(), getRemoteFilename());
+        }
+    }
+
+    /**
+     * Discards the cached listing of this directory, e.g. when other clients are known to have modified it.
+     */
+    public synchronized void clearDirectoryCache() {
+        DIRECTORY_CACHE.remove(getDirectoryCacheKey());
+    }
+
     private void assertConnected() {
         Assertions.checkTrue(isConnected(), "Please call connect() first");
     }
@@ -292,10 +549,24 @@ public class WebdavFileChannel implements IFileChannel<DavResource> {
     @Override
     public synchronized void upload(final File file) {
         assertConnected();
+        if (compressionEnabled) {
+            try (InputStream in = new FileInputStream(file)) {
+                upload(in);
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+            return;
+        }
         try {
-            finalizer.webdavClient.put(getFileUrl(), file, null);
+            if (finalizer.webdavClient instanceof SardineImpl) {
+                ((SardineImpl) finalizer.webdavClient).put(getFileUrl(), new WebdavFileEntity(file), null, false);
+            } else {
+                finalizer.webdavClient.put(getFileUrl(), file, null);
+            }
         } catch (final Exception e) {
             throw new RuntimeException(e);
+        } finally {
+            invalidateDirectoryCache();
         }
     }
 
@@ -308,20 +579,53 @@ public class WebdavFileChannel implements IFileChannel<DavResource> {
     public synchronized void upload(final InputStream input) {
         assertConnected();
         try {
+            if (compressionEnabled) {
+                try (OutputStream out = LZ4Streams.newDefaultLZ4OutputStream(
+                        WebdavUploadOutputStream.upload(TRANSFER_EXECUTOR, finalizer.webdavClient, getFileUrl()))) {
+                    IOUtils.copy(input, out);
+                }
+                return;
+            }
             finalizer.webdavClient.put(getFileUrl(), input);
         } catch (final Exception e) {
             throw new RuntimeException(e);
+        } finally {
+            invalidateDirectoryCache();
         }
     }
 
     @Override
     public synchronized byte[] download() {
+        if (downloadCacheEnabled) {
+            try {
+                final File cachedFile = downloadCachedFile();
+                if (cachedFile == null) {
+                    return null;
+                } else {
+                    return java.nio.file.Files.readAllBytes(cachedFile.toPath());
+                }
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        if (transferSegments > 1 && !compressionEnabled) {
+            final long size = size();
+            final int segments = WebdavSegmentedDownload.getSegments(size, transferSegments, transferMinSegmentSize);
+            if (segments > 1 && size <= Integer.MAX_VALUE) {
+                try {
+                    return WebdavSegmentedDownload.download(TRANSFER_EXECUTOR, finalizer.webdavClient, getFileUrl(),
+                            (int) size, segments, resumeEnabled);
+                } catch (final Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
         try {
-            try (InputStream in = downloadInputStream()) {
+            try (InputStream in = downloadUncachedInputStream()) {
                 if (in == null) {
                     return null;
                 } else {
-                    final byte[] bytes = IOUtils.toByteArray(in);
+                    final byte[] bytes = LocalTransfers.toByteArray(in, getDownloadSize(in));
                     return bytes;
                 }
             }
@@ -331,20 +635,213 @@ public class WebdavFileChannel implements IFileChannel<DavResource> {
 
     }
 
+    /**
+     * The content length of the response allows to read an uncompressed download into an array of the final size.
+     */
+    private static long getDownloadSize(final InputStream in) {
+        if (in instanceof WebdavDownloadInputStream) {
+            return ((WebdavDownloadInputStream) in).getSize();
+        } else {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads the file into the remaining space of the given buffer and returns the number of bytes, or -1 when the file
+     * does not exist. A BufferOverflowException is thrown when the content does not fit. The stream is read into the
+     * buffer directly, thus direct buffers don't need a heap copy of the whole content either.
+     */
+    public synchronized int download(final ByteBuffer sink) {
+        assertConnected();
+        try (InputStream in = downloadInputStream()) {
+            if (in == null) {
+                return -1;
+            } else {
+                return LocalTransfers.read(in, sink);
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads the file into a heap buffer that belongs to this channel and is reused by the next call. Once the buffer
+     * has grown to the size of the file, frequent downloads of small files (e.g. heartbeats or control files) don't
+     * allocate anything for the content. The returned buffer is only valid until the next call and null is returned
+     * when the file does not exist. Large files should rather be downloaded via download(File).
+     */
+    public synchronized ByteBuffer downloadBuffer() {
+        assertConnected();
+        try (InputStream in = downloadInputStream()) {
+            if (in == null) {
+                return null;
+            }
+            reusableDownloadBuffer = LocalTransfers.read(in, reusableDownloadBuffer, getDownloadSize(in));
+            return reusableDownloadBuffer;
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Downloads the file into the given local file, which is replaced. This avoids holding the content in memory and
+     * allows files larger than an array. Segmented downloads write each range at its position in the file, hits of the
+     * download cache are copied by the operating system. Returns false when the remote file does not exist.
+     */
+    public synchronized boolean download(final File file) {
+        assertConnected();
+        try {
+            Files.deleteQuietly(file);
+            if (file.getParentFile() != null) {
+                Files.forceMkdir(file.getParentFile());
+            }
+            if (downloadCacheEnabled) {
+                final File cachedFile = downloadCachedFile();
+                if (cachedFile == null) {
+                    return false;
+                }
+                LocalTransfers.copy(cachedFile, file);
+                return true;
+            }
+            if (transferSegments > 1 && !compressionEnabled) {
+                final long size = size();
+                if (size < 0) {
+                    return false;
+                }
+                final int segments = WebdavSegmentedDownload.getSegments(size, transferSegments,
+                        transferMinSegmentSize);
+                if (segments > 1) {
+                    WebdavSegmentedDownload.download(TRANSFER_EXECUTOR, finalizer.webdavClient, getFileUrl(), file,
+                            size, segments, resumeEnabled);
+                    return true;
+                }
+            }
+            try (InputStream in = downloadUncachedInputStream()) {
+                if (in == null) {
+                    return false;
+                }
+                LocalTransfers.write(in, file);
+                return true;
+            }
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads only the given range of the file via a ranged GET, e.g. a header or a chunk of a large file. The range is
+     * truncated at the end of the file. Returns null when the file does not exist.
+     */
+    public synchronized byte[] download(final long offset, final int length) {
+        try {
+            try (InputStream in = downloadInputStream(offset, length)) {
+                if (in == null) {
+                    return null;
+                } else {
+                    return IOUtils.toByteArray(in);
+                }
+            }
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public synchronized void delete() {
         assertConnected();
         try {
             finalizer.webdavClient.delete(getFileUrl());
         } catch (final SardineException e) {
-            if (e.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
-                return;
-            } else {
+            if (e.getStatusCode() != HttpStatus.SC_NOT_FOUND) {
                 throw new RuntimeException(e);
             }
         } catch (final IOException e) {
             throw new RuntimeException(e);
         }
+        //the file is gone either way, the cache might still know it from before
+        if (directoryCacheEnabled) {
+            DIRECTORY_CACHE.update(getDirectoryCacheKey(), getRemoteFilename(), null);
+        }
+    }
+
+    /**
+     * Async operations work on a copy of this channel with the current filename and settings that uses its own pooled
+     * connection, so they neither block the caller nor this channel. They are executed by a bounded thread pool, thus
+     * many transfers can be in flight while only WebdavClientProperties.ASYNC_EXECUTOR_THREADS of them are active.
+     */
+    public CompletableFuture<Void> uploadAsync(final byte[] bytes) {
+        return supplyAsync(new Function<WebdavFileChannel, Void>() {
+            @Override
+            public Void apply(final WebdavFileChannel channel) {
+                channel.upload(bytes);
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<Void> uploadAsync(final File file) {
+        return supplyAsync(new Function<WebdavFileChannel, Void>() {
+            @Override
+            public Void apply(final WebdavFileChannel channel) {
+                channel.upload(file);
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<byte[]> downloadAsync() {
+        return supplyAsync(new Function<WebdavFileChannel, byte[]>() {
+            @Override
+            public byte[] apply(final WebdavFileChannel channel) {
+                return channel.download();
+            }
+        });
+    }
+
+    public CompletableFuture<List<DavResource>> listAsync() {
+        return supplyAsync(new Function<WebdavFileChannel, List<DavResource>>() {
+            @Override
+            public List<DavResource> apply(final WebdavFileChannel channel) {
+                return channel.list();
+            }
+        });
+    }
+
+    public CompletableFuture<Void> deleteAsync() {
+        return supplyAsync(new Function<WebdavFileChannel, Void>() {
+            @Override
+            public Void apply(final WebdavFileChannel channel) {
+                channel.delete();
+                return null;
+            }
+        });
+    }
+
+    private <T> CompletableFuture<T> supplyAsync(final Function<WebdavFileChannel, T> operation) {
+        final WebdavFileChannel copy = newCopy();
+        return CompletableFuture.supplyAsync(new Supplier<T>() {
+            @Override
+            public T get() {
+                copy.connect();
+                try {
+                    return operation.apply(copy);
+                } finally {
+                    copy.close();
+                }
+            }
+        }, ASYNC_EXECUTOR);
+    }
+
+    private synchronized WebdavFileChannel newCopy() {
+        try {
+            //keeps overridden credentials of subclasses
+            final WebdavFileChannel copy = (WebdavFileChannel) clone();
+            copy.finalizer = null;
+            copy.reusableDownloadBuffer = null;
+            return copy;
+        } catch (final CloneNotSupportedException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     @Override
@@ -358,6 +855,24 @@ public class WebdavFileChannel implements IFileChannel<DavResource> {
     @Override
     public synchronized OutputStream uploadOutputStream() {
         assertConnected();
+        if (uploadTempFileEnabled) {
+            return uploadTempFileOutputStream();
+        }
+        invalidateDirectoryCache();
+        try {
+            final OutputStream out = WebdavUploadOutputStream.upload(TRANSFER_EXECUTOR, finalizer.webdavClient,
+                    getFileUrl());
+            if (compressionEnabled) {
+                return LZ4Streams.newDefaultLZ4OutputStream(out);
+            } else {
+                return out;
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private OutputStream uploadTempFileOutputStream() {
         return new ADelegateOutputStream(new TextDescription("%s: uploadOutputStream()", this)) {
 
             private final File file = getLocalTempFile();
@@ -412,22 +927,189 @@ public class WebdavFileChannel implements IFileChannel<DavResource> {
     @Override
     public synchronized InputStream downloadInputStream() {
         assertConnected();
-        try {
-            return finalizer.webdavClient.get(getFileUrl());
-        } catch (final SardineException e) {
-            if (e.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+        if (downloadCacheEnabled) {
+            try {
+                final File cachedFile = downloadCachedFile();
+                if (cachedFile == null) {
+                    return null;
+                } else {
+                    return DownloadCache.newInputStream(cachedFile);
+                }
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return downloadUncachedInputStream();
+    }
+
+    /**
+     * Returns null when the remote file does not exist.
+     */
+    private File downloadCachedFile() throws IOException {
+        final DavResource info = info();
+        if (info == null) {
+            return null;
+        }
+        final String cacheKey = getDownloadCacheKey(info);
+        final File cachedFile = DOWNLOAD_CACHE.get(cacheKey);
+        if (cachedFile != null) {
+            return cachedFile;
+        }
+        try (InputStream in = downloadUncachedInputStream()) {
+            if (in == null) {
                 return null;
             } else {
-                throw new RuntimeException(e);
+                return DOWNLOAD_CACHE.put(cacheKey, in);
+            }
+        }
+    }
+
+    /**
+     * The content is cached decompressed, thus the key needs to tell apart the compressed file.
+     */
+    private String getDownloadCacheKey(final DavResource info) {
+        final long modified;
+        if (info.getModified() != null) {
+            modified = info.getModified().getTime();
+        } else {
+            modified = -1;
+        }
+        return getDirectoryCacheKey() + getRemoteFilename() + "?size=" + info.getContentLength() + "&modified="
+                + modified + "&etag=" + info.getEtag();
+    }
+
+    private InputStream downloadUncachedInputStream() {
+        try {
+            final InputStream in = WebdavDownloadInputStream.open(finalizer.webdavClient, getFileUrl(), 0, -1, -1,
+                    resumeEnabled);
+            if (in != null && compressionEnabled) {
+                return LZ4Streams.newDefaultLZ4InputStream(in);
+            } else {
+                return in;
             }
         } catch (final IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Streams the given number of bytes (-1 for the rest of the file) starting at the offset via a ranged GET. Returns
+     * null when the file does not exist.
+     */
+    public synchronized InputStream downloadInputStream(final long offset, final long length) {
+        assertConnected();
+        if (compressionEnabled) {
+            return downloadDecompressedRange(offset, length);
+        }
+        final long size = size();
+        if (size < 0) {
+            return null;
+        }
+        final long end;
+        if (length < 0) {
+            end = size;
+        } else {
+            end = Math.min(size, offset + length);
+        }
+        if (offset >= end) {
+            return new ByteArrayInputStream(Bytes.EMPTY_ARRAY);
+        }
+        try {
+            return WebdavDownloadInputStream.open(finalizer.webdavClient, getFileUrl(), offset, end - offset, size,
+                    resumeEnabled);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Ranges can not be requested from the server for compressed content, thus the leading bytes are skipped locally.
+     */
+    private InputStream downloadDecompressedRange(final long offset, final long length) {
+        final InputStream in = downloadInputStream();
+        if (in == null) {
+            return null;
+        }
+        try {
+            IOUtils.skip(in, offset);
+        } catch (final IOException e) {
+            IOUtils.closeQuietly(in);
+            throw new RuntimeException(e);
+        }
+        if (length < 0) {
+            return in;
+        } else {
+            return new BoundedInputStream(in, length);
+        }
+    }
+
+    /**
+     * Downloads the file only when it changed since the previous download (null for the first one), based on the ETag
+     * and the modification date that the server returned for the previous download. This lets pollers skip unchanged
+     * files without transferring them. Returns null when the file does not exist. Clients that were not created by
+     * the WebdavConnectionPool (see login()) always download the file.
+     */
+    public synchronized WebdavConditionalDownload downloadIfModified(final WebdavConditionalDownload previous) {
+        assertConnected();
+        if (!(finalizer.webdavClient instanceof WebdavClient)) {
+            final byte[] content = download();
+            if (content == null) {
+                return null;
+            }
+            return new WebdavConditionalDownload(content, null, null, true);
+        }
+        final WebdavClient webdavClient = (WebdavClient) finalizer.webdavClient;
+        String etag = null;
+        Date modified = null;
+        if (previous != null) {
+            etag = previous.getEtag();
+            if (previous.getModified() != null) {
+                modified = previous.getModified().dateValue();
+            }
+        }
+        try {
+            final WebdavClient.ConditionalResponse response = webdavClient.getIfModified(getFileUrl(), etag, modified);
+            if (response == null) {
+                return null;
+            }
+            if (!response.isModified()) {
+                return new WebdavConditionalDownload(previous.getContent(), previous.getEtag(),
+                        previous.getModified(), false);
+            }
+            InputStream in = response.getContent();
+            if (compressionEnabled) {
+                in = LZ4Streams.newDefaultLZ4InputStream(in);
+            }
+            final byte[] content;
+            try {
+                content = IOUtils.toByteArray(in);
+            } finally {
+                in.close();
+            }
+            FDate newModified = null;
+            if (response.getModified() != null) {
+                newModified = new FDate(response.getModified());
+            }
+            return new WebdavConditionalDownload(content, response.getEtag(), newModified, true);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Must not fail without a filename, since it is used in log and error messages.
+     */
     @Override
     public String toString() {
-        return Objects.toStringHelper(this).addValue(getFileUrl()).toString();
+        String remoteFilename = filename;
+        if (remoteFilename != null && compressionEnabled) {
+            remoteFilename += WebdavClientProperties.COMPRESSION_FILE_SUFFIX;
+        }
+        return Objects.toStringHelper(this)
+                .add("serverUrl", serverUrl)
+                .add("directory", directory)
+                .add("filename", remoteFilename)
+                .toString();
     }
 
     private static final class WebdavFileChannelFinalizer extends AFinalizer {
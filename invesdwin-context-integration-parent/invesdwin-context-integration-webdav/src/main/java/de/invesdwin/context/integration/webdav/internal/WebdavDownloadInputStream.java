@@ -0,0 +1,241 @@
+package de.invesdwin.context.integration.webdav.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+
+import com.github.sardine.Sardine;
+import com.github.sardine.impl.SardineException;
+import com.github.sardine.impl.io.ContentLengthInputStream;
+
+import de.invesdwin.context.integration.retry.RetryLaterRuntimeException;
+import de.invesdwin.context.integration.retry.task.ARetryRunnable;
+import de.invesdwin.context.integration.retry.task.RetryOriginator;
+
+/**
+ * Reads a resource or a range of it via GET. When the connection breaks in the middle, reading continues with a ranged
+ * GET from the current position instead of starting from byte zero. Resume attempts are scheduled by the retry
+ * infrastructure, so they back off and give up like any other retried operation. Servers that ignore the Range header
+ * are detected by the length of the response, in that case the leading bytes are skipped locally.
+ */
+@NotThreadSafe
+public final class WebdavDownloadInputStream extends InputStream {
+
+    private final Sardine webdavClient;
+    private final String url;
+    //exclusive, -1 for the end of the resource
+    private final long end;
+    private final boolean resumable;
+    private final byte[] singleByte = new byte[1];
+    private long size;
+    private long position;
+    private InputStream in;
+    private boolean closed;
+
+    private WebdavDownloadInputStream(final Sardine webdavClient, final String url, final long offset, final long end,
+            final long size, final boolean resumable) {
+        this.webdavClient = webdavClient;
+        this.url = url;
+        this.position = offset;
+        this.end = end;
+        this.size = size;
+        this.resumable = resumable;
+    }
+
+    /**
+     * The size of the resource, which is known from the response of a full download. Returns -1 when unknown.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int read = read(singleByte, 0, 1);
+        if (read < 0) {
+            return -1;
+        } else {
+            return singleByte[0] & 0xFF;
+        }
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        int max = len;
+        if (end >= 0) {
+            final long remaining = end - position;
+            if (remaining <= 0) {
+                return -1;
+            }
+            max = (int) Math.min(len, remaining);
+        }
+        final int read;
+        try {
+            read = in.read(b, off, max);
+        } catch (final IOException e) {
+            if (!resumable || size < 0 && end < 0) {
+                throw e;
+            }
+            resume(e);
+            return read(b, off, len);
+        }
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+
+    private void resume(final IOException cause) throws IOException {
+        closeQuietly(in);
+        in = null;
+        final ARetryRunnable retry = new ARetryRunnable(
+                new RetryOriginator(WebdavDownloadInputStream.class, "resume")) {
+            @Override
+            protected void runRetry() throws Exception {
+                if (closed) {
+                    throw cause;
+                }
+                try {
+                    in = openAt(position);
+                } catch (final SardineException e) {
+                    //an error status of the server is not a broken connection
+                    throw e;
+                } catch (final IOException e) {
+                    throw new RetryLaterRuntimeException(e);
+                }
+            }
+        };
+        try {
+            retry.run();
+        } catch (final Throwable t) {
+            final IOException e = new IOException("Unable to resume download of [" + url + "] at " + position, t);
+            e.addSuppressed(cause);
+            throw e;
+        }
+    }
+
+    private InputStream openAt(final long from) throws IOException {
+        final boolean ranged = from > 0 || end >= 0;
+        final Map<String, String> headers;
+        if (ranged) {
+            final String last;
+            if (end >= 0) {
+                last = String.valueOf(end - 1);
+            } else {
+                last = "";
+            }
+            headers = new HashMap<>();
+            headers.put(HttpHeaders.RANGE, "bytes=" + from + "-" + last);
+            //ranges of a compressed response would refer to the compressed bytes
+            headers.put(HttpHeaders.ACCEPT_ENCODING, "identity");
+        } else {
+            headers = Collections.emptyMap();
+        }
+        final InputStream response = webdavClient.get(url, headers);
+        try {
+            final long length = getLength(response);
+            if (!ranged) {
+                //required to tell whether a range request during resume was honored
+                size = length;
+                return response;
+            }
+            final long expectedLength;
+            if (end >= 0) {
+                expectedLength = end - from;
+            } else if (size >= 0) {
+                expectedLength = size - from;
+            } else {
+                expectedLength = -1;
+            }
+            if (length >= 0 && length == expectedLength) {
+                return response;
+            }
+            if (from == 0 || length >= 0 && length == size) {
+                //the range was ignored and the whole resource is returned
+                IOUtils.skipFully(response, from);
+                return response;
+            }
+            throw new IOException("Unable to tell whether the range request for [" + url + "] at " + from
+                    + " was honored, got a response length of " + length + " for a resource size of " + size);
+        } catch (final Throwable t) {
+            closeQuietly(response);
+            throw t;
+        }
+    }
+
+    private static long getLength(final InputStream response) {
+        if (response instanceof ContentLengthInputStream) {
+            final Long length = ((ContentLengthInputStream) response).getLength();
+            if (length != null) {
+                return length;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (in != null) {
+            //aborts the request when the response was not read completely
+            in.close();
+            in = null;
+        }
+    }
+
+    private static void closeQuietly(final InputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            in.close();
+        } catch (final Throwable t) {
+            //ignore
+        }
+    }
+
+    /**
+     * Reads the given number of bytes (-1 for the rest) starting at the offset. The size of the resource should be given
+     * when reading a range, otherwise it is only known for full downloads. Returns null when the resource does not
+     * exist.
+     */
+    public static WebdavDownloadInputStream open(final Sardine webdavClient, final String url, final long offset,
+            final long length, final long size, final boolean resumable) throws IOException {
+        final long end;
+        if (length >= 0) {
+            end = offset + length;
+        } else {
+            end = -1;
+        }
+        final WebdavDownloadInputStream stream = new WebdavDownloadInputStream(webdavClient, url, offset, end, size,
+                resumable);
+        try {
+            stream.in = stream.openAt(offset);
+        } catch (final SardineException e) {
+            if (e.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+                return null;
+            } else {
+                throw e;
+            }
+        }
+        return stream;
+    }
+
+}
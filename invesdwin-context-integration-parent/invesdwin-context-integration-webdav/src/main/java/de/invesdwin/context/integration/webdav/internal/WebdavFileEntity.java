@@ -0,0 +1,60 @@
+package de.invesdwin.context.integration.webdav.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.annotation.concurrent.Immutable;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import de.invesdwin.context.integration.webdav.WebdavClientProperties;
+
+/**
+ * Sends a local file as the request body. The FileEntity of httpclient writes in chunks of 4 KB which all pass through
+ * the session buffer of the connection, while chunks of this size are written to the socket directly.
+ */
+@Immutable
+public class WebdavFileEntity extends AbstractHttpEntity {
+
+    private final File file;
+
+    public WebdavFileEntity(final File file) {
+        this.file = file;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return file.length();
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        return new FileInputStream(file);
+    }
+
+    @Override
+    public void writeTo(final OutputStream outstream) throws IOException {
+        final byte[] buffer = new byte[WebdavClientProperties.STREAMING_BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                outstream.write(buffer, 0, read);
+            }
+        }
+        outstream.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+}
@@ -0,0 +1,161 @@
+package de.invesdwin.context.integration.webdav.internal;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.concurrent.Immutable;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.ProxyInputStream;
+
+import com.github.sardine.Sardine;
+
+import de.invesdwin.context.integration.webdav.WebdavClientProperties;
+
+/**
+ * Splits a resource into consecutive ranges that are downloaded in parallel with separate ranged GET requests, which
+ * works around the throughput limit of a single tcp stream on high latency links. Each range resumes on its own when
+ * its connection breaks.
+ */
+@Immutable
+public final class WebdavSegmentedDownload {
+
+    private WebdavSegmentedDownload() {}
+
+    public static int getSegments(final long size, final int maxSegments, final long minSegmentSize) {
+        final long segments = Math.min(maxSegments, size / Math.max(1, minSegmentSize));
+        return (int) Math.max(1, segments);
+    }
+
+    public static byte[] download(final ExecutorService executor, final Sardine webdavClient, final String url,
+            final int size, final int segments, final boolean resumable) throws Exception {
+        final byte[] bytes = new byte[size];
+        download(executor, webdavClient, url, size, segments, resumable, new ISegmentSink() {
+            @Override
+            public void read(final InputStream in, final long offset, final long length) throws IOException {
+                IOUtils.readFully(in, bytes, (int) offset, (int) length);
+            }
+        });
+        return bytes;
+    }
+
+    /**
+     * Each range writes at its position in the file, thus the file can be larger than an array.
+     */
+    public static void download(final ExecutorService executor, final Sardine webdavClient, final String url,
+            final File file, final long size, final int segments, final boolean resumable) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(size);
+            final FileChannel fileChannel = raf.getChannel();
+            download(executor, webdavClient, url, size, segments, resumable, new ISegmentSink() {
+                @Override
+                public void read(final InputStream in, final long offset, final long length) throws IOException {
+                    final byte[] buffer = new byte[WebdavClientProperties.STREAMING_BUFFER_SIZE];
+                    long position = offset;
+                    final long end = offset + length;
+                    while (position < end) {
+                        final int read = in.read(buffer, 0, (int) Math.min(buffer.length, end - position));
+                        if (read < 0) {
+                            throw new EOFException("Expected " + (end - position) + " more bytes at " + position);
+                        }
+                        final ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                        while (chunk.hasRemaining()) {
+                            position += fileChannel.write(chunk, position);
+                        }
+                    }
+                }
+            });
+        } catch (final Throwable t) {
+            file.delete();
+            throw t;
+        }
+    }
+
+    private static void download(final ExecutorService executor, final Sardine webdavClient, final String url,
+            final long size, final int segments, final boolean resumable, final ISegmentSink sink) throws Exception {
+        final long segmentSize = (size + segments - 1) / segments;
+        final List<Future<Void>> futures = new ArrayList<>(segments);
+        final AtomicBoolean aborted = new AtomicBoolean();
+        for (long offset = 0; offset < size; offset += segmentSize) {
+            final long segmentOffset = offset;
+            final long segmentLength = Math.min(segmentSize, size - offset);
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    if (aborted.get()) {
+                        return null;
+                    }
+                    try (InputStream in = WebdavDownloadInputStream.open(webdavClient, url, segmentOffset,
+                            segmentLength, size, resumable)) {
+                        if (in == null) {
+                            throw new FileNotFoundException(url);
+                        }
+                        //stops at the next read when another segment failed
+                        sink.read(new ProxyInputStream(in) {
+                            @Override
+                            protected void beforeRead(final int n) throws IOException {
+                                if (aborted.get()) {
+                                    throw new InterruptedIOException("Segmented download of [" + url + "] aborted");
+                                }
+                            }
+                        }, segmentOffset, segmentLength);
+                    }
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (final ExecutionException e) {
+            abort(aborted, futures);
+            throw new IOException("Segmented download of [" + url + "] failed", e.getCause());
+        } catch (final InterruptedException e) {
+            abort(aborted, futures);
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for the remaining segments to finish so that nobody writes into the sink anymore, otherwise they might
+     * still write into a file that was closed or deleted meanwhile. Cancelling the futures would not wait for this.
+     */
+    private static void abort(final AtomicBoolean aborted, final List<Future<Void>> futures) {
+        aborted.set(true);
+        for (final Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (final Throwable t) {
+                //ignore
+            }
+        }
+    }
+
+    /**
+     * Segments call this concurrently for distinct ranges.
+     */
+    private interface ISegmentSink {
+
+        void read(InputStream in, long offset, long length) throws IOException;
+
+    }
+
+}
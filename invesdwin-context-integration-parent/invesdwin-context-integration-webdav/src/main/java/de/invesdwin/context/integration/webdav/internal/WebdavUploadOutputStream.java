@@ -0,0 +1,123 @@
+package de.invesdwin.context.integration.webdav.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.github.sardine.Sardine;
+
+import de.invesdwin.context.integration.webdav.WebdavClientProperties;
+
+/**
+ * Pushes the written bytes through a bounded pipe to a background thread that sends them as the body of a PUT with
+ * chunked transfer encoding while they are being produced. The producer blocks when it is faster than the network.
+ * Closing the stream finishes the upload and rethrows any error that occurred during the transfer.
+ */
+@NotThreadSafe
+public final class WebdavUploadOutputStream extends OutputStream {
+
+    private final PipedOutputStream pipe;
+    private final Future<?> transfer;
+    private boolean closed;
+
+    private WebdavUploadOutputStream(final PipedOutputStream pipe, final Future<?> transfer) {
+        this.pipe = pipe;
+        this.transfer = transfer;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        try {
+            pipe.write(b);
+        } catch (final IOException e) {
+            throw maybeTransferFailed(e);
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        try {
+            pipe.write(b, off, len);
+        } catch (final IOException e) {
+            throw maybeTransferFailed(e);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        try {
+            pipe.flush();
+        } catch (final IOException e) {
+            throw maybeTransferFailed(e);
+        }
+    }
+
+    /**
+     * A broken pipe is only a symptom, the actual cause is the failed transfer.
+     */
+    private IOException maybeTransferFailed(final IOException e) {
+        if (transfer.isDone()) {
+            try {
+                transfer.get();
+            } catch (final InterruptedException e1) {
+                Thread.currentThread().interrupt();
+            } catch (final ExecutionException e1) {
+                return new IOException("Upload failed", e1.getCause());
+            }
+        }
+        return e;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            pipe.close();
+        } catch (final IOException e) {
+            throw maybeTransferFailed(e);
+        }
+        try {
+            transfer.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            transfer.cancel(true);
+            throw new IOException(e);
+        } catch (final ExecutionException e) {
+            throw new IOException("Upload failed", e.getCause());
+        }
+    }
+
+    /**
+     * The server is asked via "Expect: 100-continue" whether it accepts the request before the body is streamed.
+     */
+    public static WebdavUploadOutputStream upload(final ExecutorService executor, final Sardine webdavClient,
+            final String url) throws IOException {
+        final PipedInputStream in = new PipedInputStream(WebdavClientProperties.STREAMING_BUFFER_SIZE);
+        final PipedOutputStream pipe = new PipedOutputStream(in);
+        final Future<?> transfer = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                try {
+                    //an unknown length results in chunked transfer encoding
+                    webdavClient.put(url, in, null, true, -1);
+                } finally {
+                    //unblocks the producer in case it waits for free space in the pipe
+                    in.close();
+                }
+                return null;
+            }
+        });
+        return new WebdavUploadOutputStream(pipe, transfer);
+    }
+
+}
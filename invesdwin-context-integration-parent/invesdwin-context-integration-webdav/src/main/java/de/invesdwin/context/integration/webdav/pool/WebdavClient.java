@@ -0,0 +1,118 @@
+package de.invesdwin.context.integration.webdav.pool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+
+import com.github.sardine.impl.SardineException;
+import com.github.sardine.impl.SardineImpl;
+import com.github.sardine.impl.io.HttpMethodReleaseInputStream;
+
+/**
+ * Adds requests to sardine that need access to the response headers.
+ */
+@ThreadSafe
+public class WebdavClient extends SardineImpl {
+
+    public WebdavClient(final HttpClientBuilder builder) {
+        super(builder);
+    }
+
+    public WebdavClient(final HttpClientBuilder builder, final String username, final String password) {
+        super(builder, username, password);
+    }
+
+    /**
+     * Sends a GET with If-None-Match and If-Modified-Since for the given validators (each one may be null). Returns
+     * null when the resource does not exist.
+     */
+    public ConditionalResponse getIfModified(final String url, final String etag, final Date modified)
+            throws IOException {
+        final HttpGet get = new HttpGet(url);
+        if (etag != null) {
+            get.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        }
+        if (modified != null) {
+            get.addHeader(HttpHeaders.IF_MODIFIED_SINCE, DateUtils.formatDate(modified));
+        }
+        final HttpResponse response = execute(get);
+        final StatusLine statusLine = response.getStatusLine();
+        final int statusCode = statusLine.getStatusCode();
+        if (statusCode == HttpStatus.SC_NOT_MODIFIED || statusCode == HttpStatus.SC_NOT_FOUND) {
+            EntityUtils.consumeQuietly(response.getEntity());
+            if (statusCode == HttpStatus.SC_NOT_FOUND) {
+                return null;
+            } else {
+                return new ConditionalResponse(null, etag, modified);
+            }
+        }
+        if (statusCode < HttpStatus.SC_OK || statusCode >= HttpStatus.SC_MULTIPLE_CHOICES) {
+            EntityUtils.consumeQuietly(response.getEntity());
+            throw new SardineException("Unexpected response", statusCode, statusLine.getReasonPhrase());
+        }
+        final Header etagHeader = response.getFirstHeader(HttpHeaders.ETAG);
+        final Header lastModifiedHeader = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+        final String newEtag;
+        if (etagHeader != null) {
+            newEtag = etagHeader.getValue();
+        } else {
+            newEtag = null;
+        }
+        final Date newModified;
+        if (lastModifiedHeader != null) {
+            newModified = DateUtils.parseDate(lastModifiedHeader.getValue());
+        } else {
+            newModified = null;
+        }
+        //releases the connection when closed
+        return new ConditionalResponse(new HttpMethodReleaseInputStream(response), newEtag, newModified);
+    }
+
+    @Immutable
+    public static final class ConditionalResponse {
+
+        private final InputStream content;
+        private final String etag;
+        private final Date modified;
+
+        private ConditionalResponse(final InputStream content, final String etag, final Date modified) {
+            this.content = content;
+            this.etag = etag;
+            this.modified = modified;
+        }
+
+        /**
+         * Null when the resource was not modified.
+         */
+        public InputStream getContent() {
+            return content;
+        }
+
+        public boolean isModified() {
+            return content != null;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public Date getModified() {
+            return modified;
+        }
+
+    }
+
+}
@@ -0,0 +1,154 @@
+package de.invesdwin.context.integration.webdav.pool;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultRoutePlanner;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+
+import com.github.sardine.Sardine;
+import com.github.sardine.Version;
+import com.github.sardine.impl.SardineRedirectStrategy;
+
+import de.invesdwin.context.ContextProperties;
+import de.invesdwin.context.integration.webdav.WebdavClientProperties;
+import de.invesdwin.util.concurrent.Executors;
+import de.invesdwin.util.concurrent.WrappedScheduledExecutorService;
+import de.invesdwin.util.time.date.FTimeUnit;
+import de.invesdwin.util.time.duration.Duration;
+
+/**
+ * Shares kept alive http connections per server url between all webdav clients, so that short lived channels don't
+ * have to pay the tcp (and tls) handshake each time. The clients only hold the credentials and are cheap to create,
+ * shutting them down leaves the connections in the pool. Idle connections are closed after
+ * WebdavClientProperties.CONNECTION_POOL_IDLE_TIMEOUT and requests wait when
+ * WebdavClientProperties.CONNECTION_POOL_MAX_CONNECTIONS_PER_SERVER connections are in use.
+ */
+@ThreadSafe
+public final class WebdavConnectionPool {
+
+    private static final WrappedScheduledExecutorService EVICTOR = Executors
+            .newScheduledThreadPool(WebdavConnectionPool.class.getSimpleName() + "_EVICTOR", 1);
+    //connections that were not used for a while might have been closed by the server
+    private static final Duration VALIDATE_AFTER_IDLE = new Duration(5, FTimeUnit.SECONDS);
+
+    //needs to be initialized after the evictor
+    public static final WebdavConnectionPool INSTANCE = new WebdavConnectionPool();
+
+    @GuardedBy("this")
+    private final Map<String, PoolingHttpClientConnectionManager> serverPools = new HashMap<>();
+
+    private WebdavConnectionPool() {
+        final long evictIntervalMillis = Math.max(FTimeUnit.MILLISECONDS_IN_SECOND,
+                WebdavClientProperties.CONNECTION_POOL_IDLE_TIMEOUT.longValue(FTimeUnit.MILLISECONDS) / 2);
+        EVICTOR.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdle();
+            }
+        }, evictIntervalMillis, evictIntervalMillis, FTimeUnit.MILLISECONDS.timeUnitValue());
+    }
+
+    public Sardine newClient(final String serverUrl, final String username, final String password) {
+        final HttpClientBuilder builder = newHttpClientBuilder(getServerPool(serverUrl));
+        if (username == null) {
+            return new WebdavClient(builder);
+        } else {
+            return new WebdavClient(builder, username, password);
+        }
+    }
+
+    /**
+     * Same defaults as sardine uses, but with the shared connection manager.
+     */
+    private static HttpClientBuilder newHttpClientBuilder(final PoolingHttpClientConnectionManager serverPool) {
+        final int timeoutMillis = ContextProperties.DEFAULT_NETWORK_TIMEOUT.intValue(FTimeUnit.MILLISECONDS);
+        return HttpClients.custom()
+                .setUserAgent("Sardine/" + Version.getSpecification())
+                .setRedirectStrategy(new SardineRedirectStrategy())
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setExpectContinueEnabled(false)
+                        .setConnectTimeout(timeoutMillis)
+                        .setConnectionRequestTimeout(timeoutMillis)
+                        .build())
+                .setConnectionManager(serverPool)
+                //closing a client must not close the connections of the others
+                .setConnectionManagerShared(true)
+                .setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+                    @Override
+                    public long getKeepAliveDuration(final HttpResponse response, final HttpContext context) {
+                        final long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE
+                                .getKeepAliveDuration(response, context);
+                        if (keepAlive > 0) {
+                            return keepAlive;
+                        }
+                        //otherwise the connection would be kept forever
+                        return WebdavClientProperties.CONNECTION_POOL_IDLE_TIMEOUT.longValue(FTimeUnit.MILLISECONDS);
+                    }
+                })
+                .setRoutePlanner(new SystemDefaultRoutePlanner(new DefaultSchemePortResolver(), null));
+    }
+
+    public void evictIdle() {
+        for (final PoolingHttpClientConnectionManager serverPool : getServerPools()) {
+            serverPool.closeExpiredConnections();
+            serverPool.closeIdleConnections(
+                    WebdavClientProperties.CONNECTION_POOL_IDLE_TIMEOUT.longValue(FTimeUnit.MILLISECONDS),
+                    FTimeUnit.MILLISECONDS.timeUnitValue());
+        }
+    }
+
+    /**
+     * Closes all idle connections. Leased connections are closed when they are given back.
+     */
+    public void clear() {
+        for (final PoolingHttpClientConnectionManager serverPool : getServerPools()) {
+            serverPool.closeIdleConnections(0, FTimeUnit.MILLISECONDS.timeUnitValue());
+        }
+    }
+
+    public int getIdleCount(final String serverUrl) {
+        return getStats(serverUrl).getAvailable();
+    }
+
+    public int getOpenCount(final String serverUrl) {
+        final PoolStats stats = getStats(serverUrl);
+        return stats.getAvailable() + stats.getLeased();
+    }
+
+    private PoolStats getStats(final String serverUrl) {
+        return getServerPool(serverUrl).getTotalStats();
+    }
+
+    private synchronized List<PoolingHttpClientConnectionManager> getServerPools() {
+        return new ArrayList<>(serverPools.values());
+    }
+
+    private synchronized PoolingHttpClientConnectionManager getServerPool(final String serverUrl) {
+        PoolingHttpClientConnectionManager serverPool = serverPools.get(serverUrl);
+        if (serverPool == null) {
+            serverPool = new PoolingHttpClientConnectionManager();
+            final int maxConnections = WebdavClientProperties.CONNECTION_POOL_MAX_CONNECTIONS_PER_SERVER;
+            serverPool.setMaxTotal(maxConnections);
+            serverPool.setDefaultMaxPerRoute(maxConnections);
+            serverPool.setValidateAfterInactivity(VALIDATE_AFTER_IDLE.intValue(FTimeUnit.MILLISECONDS));
+            serverPools.put(serverUrl, serverPool);
+        }
+        return serverPool;
+    }
+
+}
@@ -1,18 +1,34 @@
 package de.invesdwin.context.integration.webdav;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.inject.Inject;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.RandomUtils;
 import org.junit.Test;
 
+import com.github.sardine.DavResource;
+
+import de.invesdwin.context.integration.webdav.pool.WebdavConnectionPool;
 import de.invesdwin.context.integration.ws.registry.RegistryServiceStub;
 import de.invesdwin.context.test.ATest;
 import de.invesdwin.context.test.TestContext;
 import de.invesdwin.util.assertions.Assertions;
 import de.invesdwin.util.error.UnknownArgumentException;
+import de.invesdwin.util.lang.Strings;
 
 @NotThreadSafe
 public class WebdavFileChannelTest extends ATest {
@@ -61,6 +77,308 @@ public class WebdavFileChannelTest extends ATest {
         channel.close();
     }
 
+    @Test
+    public void testAsync() {
+        final URI destination = getDestination();
+        final WebdavFileChannel channel = new WebdavFileChannel(destination,
+                WebdavFileChannelTest.class.getSimpleName());
+        channel.connect();
+        final List<String> filenames = new ArrayList<>();
+        final List<CompletableFuture<Void>> uploads = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            channel.createUniqueFile();
+            filenames.add(channel.getFilename());
+            uploads.add(channel.uploadAsync(("hello world " + i).getBytes()));
+        }
+        CompletableFuture.allOf(uploads.toArray(new CompletableFuture[uploads.size()])).join();
+        final List<CompletableFuture<byte[]>> downloads = new ArrayList<>();
+        for (final String filename : filenames) {
+            channel.setFilename(filename);
+            downloads.add(channel.downloadAsync());
+        }
+        for (int i = 0; i < downloads.size(); i++) {
+            Assertions.assertThat(new String(downloads.get(i).join())).isEqualTo("hello world " + i);
+        }
+        Assertions.assertThat(channel.listAsync().join().size()).isGreaterThanOrEqualTo(filenames.size());
+        final List<CompletableFuture<Void>> deletes = new ArrayList<>();
+        for (final String filename : filenames) {
+            channel.setFilename(filename);
+            deletes.add(channel.deleteAsync());
+        }
+        CompletableFuture.allOf(deletes.toArray(new CompletableFuture[deletes.size()])).join();
+        for (final String filename : filenames) {
+            channel.setFilename(filename);
+            Assertions.checkFalse(channel.exists());
+        }
+        channel.close();
+    }
+
+    @Test
+    public void testConnectionPool() {
+        final URI destination = getDestination();
+        final String serverUrl = Strings.removeEnd(destination.toString(), "/");
+        WebdavConnectionPool.INSTANCE.clear();
+        Assertions.assertThat(WebdavConnectionPool.INSTANCE.getOpenCount(serverUrl)).isEqualTo(0);
+        final WebdavFileChannel channel = new WebdavFileChannel(destination,
+                WebdavFileChannelTest.class.getSimpleName());
+        channel.connect();
+        channel.createUniqueFile();
+        final String filename = channel.getFilename();
+        channel.close();
+        Assertions.assertThat(WebdavConnectionPool.INSTANCE.getIdleCount(serverUrl)).isEqualTo(1);
+        for (int i = 0; i < 10; i++) {
+            final WebdavFileChannel pooledChannel = new WebdavFileChannel(destination,
+                    WebdavFileChannelTest.class.getSimpleName());
+            pooledChannel.setFilename(filename);
+            pooledChannel.connect();
+            Assertions.checkTrue(pooledChannel.exists());
+            pooledChannel.close();
+            //the kept alive connection is reused instead of connecting again
+            Assertions.assertThat(WebdavConnectionPool.INSTANCE.getOpenCount(serverUrl)).isEqualTo(1);
+        }
+        channel.connect();
+        channel.delete();
+        channel.close();
+        WebdavConnectionPool.INSTANCE.clear();
+        Assertions.assertThat(WebdavConnectionPool.INSTANCE.getOpenCount(serverUrl)).isEqualTo(0);
+    }
+
+    @Test
+    public void testDirectoryCache() {
+        final URI destination = getDestination();
+        final WebdavFileChannel channel = new WebdavFileChannel(destination,
+                WebdavFileChannelTest.class.getSimpleName());
+        channel.setDirectoryCacheEnabled(true);
+        channel.connect();
+        channel.clearDirectoryCache();
+        channel.createUniqueFile();
+        final String filename = channel.getFilename();
+        Assertions.checkTrue(channel.exists());
+        Assertions.assertThat(channel.size()).isEqualTo(0);
+        final byte[] write = "hello world".getBytes();
+        channel.upload(write);
+        //uploads invalidate the cached entry
+        Assertions.assertThat(channel.size()).isEqualTo(write.length);
+        Assertions.assertThat(channel.info().getContentLength()).isEqualTo(write.length);
+        Assertions.checkNotNull(channel.modified());
+        boolean found = false;
+        for (final DavResource file : channel.listFiles()) {
+            if (file.getName().equals(filename)) {
+                found = true;
+            }
+        }
+        Assertions.checkTrue(found);
+        channel.delete();
+        Assertions.checkFalse(channel.exists());
+        Assertions.assertThat(channel.size()).isEqualTo(-1);
+        Assertions.checkNull(channel.modified());
+        channel.clearDirectoryCache();
+        channel.close();
+    }
+
+    @Test
+    public void testRangedDownload() throws IOException {
+        final URI destination = getDestination();
+        final WebdavFileChannel channel = new WebdavFileChannel(destination,
+                WebdavFileChannelTest.class.getSimpleName());
+        channel.connect();
+        channel.createUniqueFile();
+        final byte[] write = new byte[1024 * 1024];
+        for (int i = 0; i < write.length; i++) {
+            write[i] = (byte) i;
+        }
+        channel.upload(write);
+        Assertions.assertThat(channel.download(0, 100)).isEqualTo(Arrays.copyOfRange(write, 0, 100));
+        Assertions.assertThat(channel.download(1000, 5000)).isEqualTo(Arrays.copyOfRange(write, 1000, 6000));
+        //truncated at the end of the file
+        Assertions.assertThat(channel.download(write.length - 10, 100))
+                .isEqualTo(Arrays.copyOfRange(write, write.length - 10, write.length));
+        try (InputStream in = channel.downloadInputStream(write.length / 2, -1)) {
+            Assertions.assertThat(IOUtils.toByteArray(in))
+                    .isEqualTo(Arrays.copyOfRange(write, write.length / 2, write.length));
+        }
+        channel.setTransferSegments(4);
+        channel.setTransferMinSegmentSize(1024);
+        Assertions.assertThat(channel.download()).isEqualTo(write);
+        channel.delete();
+        Assertions.checkNull(channel.download(0, 100));
+        channel.close();
+    }
+
+    @Test
+    public void testUploadOutputStream() throws IOException {
+        final URI destination = getDestination();
+        final WebdavFileChannel channel = new WebdavFileChannel(destination,
+                WebdavFileChannelTest.class.getSimpleName());
+        channel.connect();
+        channel.createUniqueFile();
+        final byte[] write = new byte[WebdavClientProperties.STREAMING_BUFFER_SIZE * 4];
+        for (int i = 0; i < write.length; i++) {
+            write[i] = (byte) i;
+        }
+        try (OutputStream out = channel.uploadOutputStream()) {
+            for (int i = 0; i < write.length; i++) {
+                out.write(write[i]);
+            }
+        }
+        Assertions.assertThat(channel.size()).isEqualTo(write.length);
+        Assertions.assertThat(channel.download()).isEqualTo(write);
+        channel.setUploadTempFileEnabled(true);
+        try (OutputStream out = channel.uploadOutputStream()) {
+            out.write(write, 0, 1);
+        }
+        Assertions.assertThat(channel.size()).isEqualTo(1);
+        channel.setUploadTempFileEnabled(false);
+        try (OutputStream out = channel.uploadOutputStream()) {
+            //write an empty file
+        }
+        Assertions.assertThat(channel.size()).isEqualTo(0);
+        channel.delete();
+        channel.close();
+    }
+
+    @Test
+    public void testCompression() throws IOException {
+        final URI destination = getDestination();
+        final WebdavFileChannel channel = new WebdavFileChannel(destination,
+                WebdavFileChannelTest.class.getSimpleName());
+        channel.setCompressionEnabled(true);
+        //works without a filename as well
+        Assertions.assertThat(channel.toString()).doesNotContain(WebdavClientProperties.COMPRESSION_FILE_SUFFIX);
+        channel.connect();
+        channel.createUniqueFile();
+        final byte[] write = new byte[WebdavClientProperties.STREAMING_BUFFER_SIZE * 4];
+        for (int i = 0; i < write.length; i++) {
+            write[i] = (byte) (i % 10);
+        }
+        channel.upload(write);
+        Assertions.checkTrue(channel.exists());
+        Assertions.assertThat(channel.size()).isLessThan(write.length);
+        Assertions.assertThat(channel.download()).isEqualTo(write);
+        Assertions.assertThat(channel.download(100, 50)).isEqualTo(Arrays.copyOfRange(write, 100, 150));
+        try (OutputStream out = channel.uploadOutputStream()) {
+            out.write(write);
+        }
+        try (InputStream in = channel.downloadInputStream()) {
+            Assertions.assertThat(IOUtils.toByteArray(in)).isEqualTo(write);
+        }
+        channel.delete();
+        Assertions.checkFalse(channel.exists());
+        Assertions.checkNull(channel.download());
+        channel.close();
+    }
+
+    @Test
+    public void testDownloadIfModified() {
+        final URI destination = getDestination();
+        final WebdavFileChannel channel = new WebdavFileChannel(destination,
+                WebdavFileChannelTest.class.getSimpleName());
+        channel.connect();
+        channel.createUniqueFile();
+        channel.upload("hello world".getBytes());
+        final WebdavConditionalDownload first = channel.downloadIfModified(null);
+        Assertions.checkTrue(first.isChanged());
+        Assertions.assertThat(new String(first.getContent())).isEqualTo("hello world");
+        final WebdavConditionalDownload second = channel.downloadIfModified(first);
+        Assertions.assertThat(new String(second.getContent())).isEqualTo("hello world");
+        channel.upload("hello world changed".getBytes());
+        final WebdavConditionalDownload third = channel.downloadIfModified(second);
+        Assertions.checkTrue(third.isChanged());
+        Assertions.assertThat(new String(third.getContent())).isEqualTo("hello world changed");
+        channel.delete();
+        Assertions.checkNull(channel.downloadIfModified(third));
+        channel.close();
+    }
+
+    @Test
+    public void testDownloadCache() throws IOException {
+        final URI destination = getDestination();
+        final WebdavFileChannel channel = new WebdavFileChannel(destination,
+                WebdavFileChannelTest.class.getSimpleName());
+        channel.setDownloadCacheEnabled(true);
+        channel.connect();
+        channel.createUniqueFile();
+        channel.upload("hello world".getBytes());
+        final int countBefore = WebdavFileChannel.DOWNLOAD_CACHE.getCount();
+        Assertions.assertThat(new String(channel.download())).isEqualTo("hello world");
+        Assertions.assertThat(WebdavFileChannel.DOWNLOAD_CACHE.getCount()).isEqualTo(countBefore + 1);
+        try (InputStream in = channel.downloadInputStream()) {
+            Assertions.assertThat(new String(IOUtils.toByteArray(in))).isEqualTo("hello world");
+        }
+        Assertions.assertThat(WebdavFileChannel.DOWNLOAD_CACHE.getCount()).isEqualTo(countBefore + 1);
+        //a different size results in a new entry
+        channel.upload("hello world again".getBytes());
+        Assertions.assertThat(new String(channel.download())).isEqualTo("hello world again");
+        Assertions.assertThat(WebdavFileChannel.DOWNLOAD_CACHE.getCount()).isEqualTo(countBefore + 2);
+        channel.delete();
+        Assertions.checkNull(channel.download());
+        channel.close();
+    }
+
+    @Test
+    public void testDownloadFile() throws IOException {
+        final URI destination = getDestination();
+        final WebdavFileChannel channel = new WebdavFileChannel(destination,
+                WebdavFileChannelTest.class.getSimpleName());
+        channel.connect();
+        channel.createUniqueFile();
+        final byte[] write = RandomUtils.nextBytes(WebdavClientProperties.STREAMING_BUFFER_SIZE * 10 + 3);
+        final File file = new File(WebdavClientProperties.TEMP_DIRECTORY,
+                WebdavFileChannelTest.class.getSimpleName() + "_testDownloadFile.channel");
+        FileUtils.writeByteArrayToFile(file, write);
+        channel.upload(file);
+        file.delete();
+        Assertions.checkTrue(channel.download(file));
+        Assertions.assertThat(FileUtils.readFileToByteArray(file)).isEqualTo(write);
+        channel.setTransferSegments(4);
+        channel.setTransferMinSegmentSize(WebdavClientProperties.STREAMING_BUFFER_SIZE);
+        Assertions.checkTrue(channel.download(file));
+        Assertions.assertThat(FileUtils.readFileToByteArray(file)).isEqualTo(write);
+        //served from the local cache the second time
+        channel.setDownloadCacheEnabled(true);
+        Assertions.checkTrue(channel.download(file));
+        Assertions.checkTrue(channel.download(file));
+        Assertions.assertThat(FileUtils.readFileToByteArray(file)).isEqualTo(write);
+        channel.delete();
+        Assertions.checkFalse(channel.download(file));
+        file.delete();
+        channel.close();
+    }
+
+    @Test
+    public void testDownloadBuffer() {
+        final URI destination = getDestination();
+        final WebdavFileChannel channel = new WebdavFileChannel(destination,
+                WebdavFileChannelTest.class.getSimpleName());
+        channel.connect();
+        channel.createUniqueFile();
+        channel.upload("hello world".getBytes());
+        final ByteBuffer first = channel.downloadBuffer();
+        Assertions.assertThat(first.remaining()).isEqualTo("hello world".length());
+        channel.upload("hello".getBytes());
+        final ByteBuffer second = channel.downloadBuffer();
+        //the buffer is reused
+        Assertions.assertThat(second).isSameAs(first);
+        final byte[] secondBytes = new byte[second.remaining()];
+        second.get(secondBytes);
+        Assertions.assertThat(new String(secondBytes)).isEqualTo("hello");
+        final ByteBuffer heap = ByteBuffer.allocate(100);
+        Assertions.assertThat(channel.download(heap)).isEqualTo(5);
+        Assertions.assertThat(heap.position()).isEqualTo(5);
+        final ByteBuffer direct = ByteBuffer.allocateDirect(100);
+        Assertions.assertThat(channel.download(direct)).isEqualTo(5);
+        try {
+            channel.download(ByteBuffer.allocate(3));
+            Assertions.failBecauseExceptionWasNotThrown(BufferOverflowException.class);
+        } catch (final BufferOverflowException e) {
+            //expected
+        }
+        channel.delete();
+        Assertions.checkNull(channel.downloadBuffer());
+        Assertions.assertThat(channel.download(heap)).isEqualTo(-1);
+        channel.close();
+    }
+
     protected URI getDestination() {
         return destinationProvider.getDestination();
     }
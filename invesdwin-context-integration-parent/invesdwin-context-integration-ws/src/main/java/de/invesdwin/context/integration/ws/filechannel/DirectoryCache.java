@@ -0,0 +1,182 @@
+package de.invesdwin.context.integration.ws.filechannel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.util.time.date.FTimeUnit;
+import de.invesdwin.util.time.duration.Duration;
+
+/**
+ * Keeps the listing of a directory in memory, so that metadata lookups for the files in it can be answered without
+ * further roundtrips. Listings expire after the given ttl. Uploads invalidate the entry of the affected file so that it
+ * is looked up on the server again, deletions are applied to the listing directly.
+ *
+ * There should only be one instance per protocol, the directory keys need to identify the server, the user and the
+ * directory.
+ */
+@ThreadSafe
+public final class DirectoryCache<F> {
+
+    private final long ttlMillis;
+    @GuardedBy("this")
+    private final Map<String, CachedDirectory<F>> directories = new HashMap<>();
+
+    public DirectoryCache(final Duration ttl) {
+        this.ttlMillis = ttl.longValue(FTimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns null when the listing is missing, expired or when the entry was invalidated.
+     */
+    public synchronized Entry<F> lookup(final String directoryKey, final String name) {
+        final CachedDirectory<F> directory = getCachedDirectory(directoryKey);
+        if (directory == null || directory.invalidated.contains(name)) {
+            return null;
+        }
+        return new Entry<F>(directory.files.get(name));
+    }
+
+    public synchronized boolean isListed(final String directoryKey) {
+        return getCachedDirectory(directoryKey) != null;
+    }
+
+    /**
+     * Returns null when the listing is missing, expired or when entries got invalidated by uploads. Invalidated entries
+     * can be refreshed via update() to make the listing usable again.
+     */
+    public synchronized List<F> list(final String directoryKey) {
+        final CachedDirectory<F> directory = getCachedDirectory(directoryKey);
+        if (directory == null || !directory.invalidated.isEmpty()) {
+            return null;
+        }
+        final List<F> list = new ArrayList<>(directory.files.size() + 1);
+        if (directory.self != null) {
+            list.add(directory.self);
+        }
+        list.addAll(directory.files.values());
+        return list;
+    }
+
+    /**
+     * Returns the names that were invalidated since the directory was listed, empty when there is no listing.
+     */
+    public synchronized Set<String> getInvalidated(final String directoryKey) {
+        final CachedDirectory<F> directory = getCachedDirectory(directoryKey);
+        if (directory == null) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(directory.invalidated);
+    }
+
+    /**
+     * Self is the entry of the directory itself when the listing contains it (e.g. in a PROPFIND response), it is only
+     * returned as the first element of list(). It can be null.
+     */
+    public synchronized void put(final String directoryKey, final F self, final Map<String, F> files) {
+        removeExpired();
+        final CachedDirectory<F> directory = new CachedDirectory<F>(self);
+        directory.files.putAll(files);
+        directories.put(directoryKey, directory);
+    }
+
+    /**
+     * Stores the result of a lookup on the server. A null file is remembered as missing.
+     */
+    public synchronized void update(final String directoryKey, final String name, final F file) {
+        final CachedDirectory<F> directory = getCachedDirectory(directoryKey);
+        if (directory != null) {
+            directory.invalidated.remove(name);
+            if (file == null) {
+                directory.files.remove(name);
+            } else {
+                directory.files.put(name, file);
+            }
+        }
+    }
+
+    public synchronized void invalidate(final String directoryKey, final String name) {
+        final CachedDirectory<F> directory = getCachedDirectory(directoryKey);
+        if (directory != null) {
+            directory.invalidated.add(name);
+        }
+    }
+
+    public synchronized void remove(final String directoryKey) {
+        directories.remove(directoryKey);
+    }
+
+    public synchronized void clear() {
+        directories.clear();
+    }
+
+    private CachedDirectory<F> getCachedDirectory(final String directoryKey) {
+        final CachedDirectory<F> directory = directories.get(directoryKey);
+        if (directory == null) {
+            return null;
+        }
+        if (isExpired(directory, System.currentTimeMillis())) {
+            directories.remove(directoryKey);
+            return null;
+        }
+        return directory;
+    }
+
+    private void removeExpired() {
+        final long now = System.currentTimeMillis();
+        final Iterator<CachedDirectory<F>> it = directories.values().iterator();
+        while (it.hasNext()) {
+            if (isExpired(it.next(), now)) {
+                it.remove();
+            }
+        }
+    }
+
+    private boolean isExpired(final CachedDirectory<F> directory, final long now) {
+        return now - directory.createdMillis > ttlMillis;
+    }
+
+    /**
+     * A cached answer for a file, the file is null when it does not exist.
+     */
+    @Immutable
+    public static final class Entry<F> {
+
+        private final F file;
+
+        private Entry(final F file) {
+            this.file = file;
+        }
+
+        public F getFile() {
+            return file;
+        }
+
+    }
+
+    @NotThreadSafe
+    private static final class CachedDirectory<F> {
+
+        private final long createdMillis = System.currentTimeMillis();
+        private final F self;
+        private final Map<String, F> files = new LinkedHashMap<>();
+        private final Set<String> invalidated = new HashSet<>();
+
+        private CachedDirectory(final F self) {
+            this.self = self;
+        }
+
+    }
+
+}
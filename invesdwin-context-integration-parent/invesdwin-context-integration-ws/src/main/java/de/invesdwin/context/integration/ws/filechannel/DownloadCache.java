@@ -0,0 +1,234 @@
+package de.invesdwin.context.integration.ws.filechannel;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.commons.io.IOUtils;
+
+import de.invesdwin.util.lang.Files;
+import de.invesdwin.util.lang.UUIDs;
+
+/**
+ * Keeps downloaded files on the local disk, so that repeated downloads of unchanged files don't need to transfer the
+ * content again. The key contains the size and modification time of the remote file, thus a changed file gets a new
+ * entry and the outdated one is evicted eventually. The least recently used entries are deleted when the cache grows
+ * above the max size. Hits touch the file, so that PurgeOldTempFilesScheduler only removes entries that were not used
+ * for a day when the directory lies in the temp directory of a channel.
+ *
+ * There should only be one instance per directory.
+ */
+@ThreadSafe
+public final class DownloadCache {
+
+    //smaller files are cheaper to read with plain io than to map
+    private static final long MMAP_MIN_SIZE = 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final long maxSize;
+    @GuardedBy("this")
+    private final Map<String, Long> nameLength = new LinkedHashMap<>(16, 0.75f, true);
+    @GuardedBy("this")
+    private long size;
+
+    public DownloadCache(final File directory, final long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        loadExistingFiles();
+    }
+
+    /**
+     * Entries from previous runs stay usable, the modification time of the files gives the initial order.
+     */
+    private void loadExistingFiles() {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(final File o1, final File o2) {
+                return Long.compare(o1.lastModified(), o2.lastModified());
+            }
+        });
+        synchronized (this) {
+            for (final File file : files) {
+                if (file.getName().endsWith(TEMP_FILE_SUFFIX)) {
+                    //incomplete download of a previous run
+                    Files.deleteQuietly(file);
+                } else if (file.isFile()) {
+                    final long length = file.length();
+                    nameLength.put(file.getName(), length);
+                    size += length;
+                }
+            }
+            evict(null);
+        }
+    }
+
+    /**
+     * Returns null when there is no entry for the key.
+     */
+    public synchronized File get(final String key) {
+        final String name = newName(key);
+        final Long length = nameLength.get(name);
+        if (length == null) {
+            return null;
+        }
+        final File file = new File(directory, name);
+        if (!file.setLastModified(System.currentTimeMillis())) {
+            //purged in the meantime
+            nameLength.remove(name);
+            size -= length;
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * Writes the content into a new entry for the key and returns the file. The content is written to a temp file
+     * first, so that concurrent readers of a previous entry never see a partial file.
+     */
+    public File put(final String key, final InputStream content) throws IOException {
+        final String name = newName(key);
+        Files.forceMkdir(directory);
+        final File tempFile = new File(directory, name + "_" + UUIDs.newPseudorandomUUID() + TEMP_FILE_SUFFIX);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE)) {
+            IOUtils.copy(content, out, BUFFER_SIZE);
+        } catch (final Throwable t) {
+            Files.deleteQuietly(tempFile);
+            throw t;
+        }
+        final File file = new File(directory, name);
+        synchronized (this) {
+            java.nio.file.Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            final long length = file.length();
+            final Long previousLength = nameLength.put(name, length);
+            if (previousLength != null) {
+                size -= previousLength;
+            }
+            size += length;
+            evict(name);
+        }
+        return file;
+    }
+
+    @GuardedBy("this")
+    private void evict(final String keepName) {
+        final Iterator<Map.Entry<String, Long>> iterator = nameLength.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            final Map.Entry<String, Long> entry = iterator.next();
+            if (entry.getKey().equals(keepName)) {
+                //the entry that was just added is returned even if it is larger than the cache
+                continue;
+            }
+            iterator.remove();
+            size -= entry.getValue();
+            //readers that still have the file open can continue on unix
+            Files.deleteQuietly(new File(directory, entry.getKey()));
+        }
+    }
+
+    public synchronized void clear() {
+        for (final String name : nameLength.keySet()) {
+            Files.deleteQuietly(new File(directory, name));
+        }
+        nameLength.clear();
+        size = 0;
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getCount() {
+        return nameLength.size();
+    }
+
+    /**
+     * Large entries are memory mapped, which saves copying the content through a read buffer.
+     */
+    public static InputStream newInputStream(final File file) throws IOException {
+        final long length = file.length();
+        if (length < MMAP_MIN_SIZE || length > Integer.MAX_VALUE) {
+            return new FileInputStream(file);
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new MappedInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private static String newName(final String key) {
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * The mapping stays valid after the channel is closed and is released by the garbage collector.
+     */
+    @NotThreadSafe
+    private static final class MappedInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private MappedInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int read = Math.min(len, buffer.remaining());
+            buffer.get(b, off, read);
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) {
+            final int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+    }
+
+}
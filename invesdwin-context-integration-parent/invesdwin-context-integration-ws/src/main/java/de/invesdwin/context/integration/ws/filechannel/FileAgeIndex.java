@@ -0,0 +1,714 @@
+package de.invesdwin.context.integration.ws.filechannel;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.log.Log;
+import de.invesdwin.util.lang.Files;
+import de.invesdwin.util.lang.Objects;
+import de.invesdwin.util.lang.Strings;
+import de.invesdwin.util.time.Instant;
+import de.invesdwin.util.time.date.FDate;
+import de.invesdwin.util.time.date.FTimeUnit;
+import de.invesdwin.util.time.duration.Duration;
+
+/**
+ * Remembers which files of a directory were written or read in which hour. Each hour is a bucket file in the index
+ * directory that lists the relative paths used during that hour. Purging old files thus only needs to read the buckets
+ * that are older than the threshold instead of walking the whole directory tree, which allows to purge continuously at
+ * low cost even for millions of files.
+ *
+ * A path that was written again later stays until its newer bucket expires. This is detected by the modification
+ * time and by the newer buckets themselves, since a hard link to existing content keeps the old modification time.
+ * Files that were written without going through add(...) are picked up once by rebuild(), which needs to run when the
+ * index did not exist yet.
+ *
+ * With a quota the least recently used files are evicted as soon as a write exceeds it. Writes and reads via
+ * touch(...) are recorded in the access time of the file, so reads do not grow the index. The used bytes are tracked
+ * from the sizes that writers report, they are initialized by rebuild() or recount(). The quota thus counts logical
+ * bytes, hard links to the same content count once per name. Stores that share content between names should reclaim
+ * it via an eviction listener, since deleting a name alone does not free the space.
+ */
+@ThreadSafe
+public class FileAgeIndex {
+
+    private static final Log LOG = new Log(FileAgeIndex.class);
+    private static final long BUCKET_MILLIS = Duration.ONE_HOUR.longValue(FTimeUnit.MILLISECONDS);
+    private static final String BUCKET_SUFFIX = ".bucket";
+    //buckets are renamed before they are processed so that a crash does not lose them
+    private static final String PURGING_SUFFIX = ".purging";
+    private static final String REBUILD_DIRECTORY_NAME = "rebuild";
+    private static final String COMPLETE_MARKER_NAME = "complete";
+    //evict a bit more than needed so that not every write has to evict again
+    private static final double EVICTION_TARGET_RATIO = 0.9;
+    private static final Map<File, FileAgeIndex> INDEXDIRECTORY_INSTANCE = new ConcurrentHashMap<>();
+
+    private final File root;
+    private final String rootPath;
+    private final File indexDirectory;
+    private final AtomicLong purgedFilesCount = new AtomicLong();
+    private final AtomicLong purgedBytesCount = new AtomicLong();
+    private final AtomicLong evictedFilesCount = new AtomicLong();
+    private final AtomicLong evictedBytesCount = new AtomicLong();
+    //-1 while unknown
+    private final AtomicLong usedBytes = new AtomicLong(-1);
+    //purge and eviction both take buckets out of the index while processing them
+    private final Lock purgeLock = new ReentrantLock();
+    private final List<Runnable> evictionListeners = new CopyOnWriteArrayList<>();
+    private volatile Long maxBytes;
+    //the quota warning is only logged once per bucket
+    private volatile long quotaWarningBucket = -1;
+
+    public FileAgeIndex(final File root, final File indexDirectory) {
+        this.root = root.getAbsoluteFile();
+        this.rootPath = this.root.getPath() + File.separator;
+        this.indexDirectory = indexDirectory;
+    }
+
+    /**
+     * Writers and the purge of a server should share one instance so that they synchronize on the same buckets.
+     */
+    public static FileAgeIndex getInstance(final File root, final File indexDirectory) {
+        final File key = indexDirectory.getAbsoluteFile();
+        FileAgeIndex instance = INDEXDIRECTORY_INSTANCE.get(key);
+        if (instance == null) {
+            final FileAgeIndex newInstance = new FileAgeIndex(root, key);
+            instance = INDEXDIRECTORY_INSTANCE.putIfAbsent(key, newInstance);
+            if (instance == null) {
+                instance = newInstance;
+            }
+        }
+        return instance;
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    public File getIndexDirectory() {
+        return indexDirectory;
+    }
+
+    /**
+     * Returns true when rebuild() was executed for this index directory. Otherwise files that existed before the index
+     * are not known to it.
+     */
+    public boolean isComplete() {
+        return new File(indexDirectory, COMPLETE_MARKER_NAME).exists();
+    }
+
+    public Long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Null disables the quota.
+     */
+    public void setMaxBytes(final Long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * The listener is run after evictToQuota() deleted files, outside of the lock of the eviction.
+     */
+    public void addEvictionListener(final Runnable evictionListener) {
+        evictionListeners.add(evictionListener);
+    }
+
+    public void removeEvictionListener(final Runnable evictionListener) {
+        evictionListeners.remove(evictionListener);
+    }
+
+    /**
+     * Returns -1 when the used bytes are not known yet.
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * Should be called after a new file was written completely. Paths outside of the root directory are ignored.
+     */
+    public void add(final File file) {
+        add(file, 0);
+    }
+
+    /**
+     * Should be called after a file was written completely with the length it had before, which is 0 for new files.
+     * Evicts the least recently used files when the quota is exceeded by this.
+     */
+    public void add(final File file, final long previousLength) {
+        final String relativePath = getRelativePath(file);
+        if (relativePath == null) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        append(relativePath, now / BUCKET_MILLIS);
+        markUsed(file, now);
+        addUsedBytes(file.length() - previousLength);
+        if (isQuotaExceeded()) {
+            evictToQuota();
+        }
+    }
+
+    /**
+     * Should be called before a file is read. Only the first access in each hour gets recorded.
+     */
+    public void touch(final File file) {
+        if (getRelativePath(file) == null) {
+            return;
+        }
+        markUsed(file, System.currentTimeMillis());
+    }
+
+    /**
+     * Hard links to existing content keep the old modification time, thus writes update the access time as well.
+     */
+    private static void markUsed(final File file, final long now) {
+        try {
+            final BasicFileAttributeView view = java.nio.file.Files.getFileAttributeView(file.toPath(),
+                    BasicFileAttributeView.class);
+            if (getLastUsed(view.readAttributes()) >= now / BUCKET_MILLIS * BUCKET_MILLIS) {
+                return;
+            }
+            view.setTimes(null, FileTime.fromMillis(now), null);
+        } catch (final IOException e) {
+            //deleted meanwhile
+        }
+    }
+
+    /**
+     * Should be called when files are deleted by clients, e.g. with a negative length.
+     */
+    public void addUsedBytes(final long delta) {
+        while (true) {
+            final long current = usedBytes.get();
+            if (current < 0 || usedBytes.compareAndSet(current, Math.max(0, current + delta))) {
+                return;
+            }
+        }
+    }
+
+    private boolean isQuotaExceeded() {
+        final Long maxBytesCopy = maxBytes;
+        return maxBytesCopy != null && usedBytes.get() > maxBytesCopy;
+    }
+
+    private static long getLastUsed(final BasicFileAttributes attrs) {
+        return Math.max(attrs.lastModifiedTime().toMillis(), attrs.lastAccessTime().toMillis());
+    }
+
+    private void append(final String relativePath, final long bucket) {
+        final byte[] line = (relativePath + "\n").getBytes(StandardCharsets.UTF_8);
+        try {
+            synchronized (this) {
+                Files.forceMkdir(indexDirectory);
+                java.nio.file.Files.write(getBucketFile(bucket).toPath(), line, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+            }
+        } catch (final IOException e) {
+            //the write itself should not fail because of the index, the next rebuild picks the file up again
+            LOG.warn("Unable to index [%s]: %s", relativePath, e.toString());
+        }
+    }
+
+    private void append(final List<String> relativePaths, final long bucket) throws IOException {
+        if (relativePaths.isEmpty()) {
+            return;
+        }
+        final StringBuilder lines = new StringBuilder();
+        for (final String relativePath : relativePaths) {
+            lines.append(relativePath).append('\n');
+        }
+        synchronized (this) {
+            java.nio.file.Files.write(getBucketFile(bucket).toPath(), lines.toString().getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+    private String getRelativePath(final File file) {
+        final String path = file.getAbsolutePath();
+        if (!path.startsWith(rootPath) || path.indexOf('\n') >= 0) {
+            return null;
+        }
+        return path.substring(rootPath.length()).replace(File.separatorChar, '/');
+    }
+
+    private File getBucketFile(final long bucket) {
+        return new File(indexDirectory, bucket + BUCKET_SUFFIX);
+    }
+
+    /**
+     * Walks the root directory once and indexes all files by their modification time, this also counts the used
+     * bytes. The walk does not block add(...), files written meanwhile might just be indexed and counted twice.
+     */
+    public void rebuild() {
+        final File rebuildDirectory = new File(indexDirectory, REBUILD_DIRECTORY_NAME);
+        Files.deleteQuietly(rebuildDirectory);
+        final Map<Long, Writer> bucketWriter = new HashMap<>();
+        //writes during the walk are counted as well
+        usedBytes.set(0);
+        try {
+            Files.forceMkdir(rebuildDirectory);
+            if (root.exists()) {
+                java.nio.file.Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+                            throws IOException {
+                        final String relativePath = getRelativePath(file.toFile());
+                        if (attrs.isRegularFile() && relativePath != null) {
+                            addUsedBytes(attrs.size());
+                            final long bucket = attrs.lastModifiedTime().toMillis() / BUCKET_MILLIS;
+                            Writer writer = bucketWriter.get(bucket);
+                            if (writer == null) {
+                                writer = new OutputStreamWriter(new FileOutputStream(
+                                        new File(rebuildDirectory, bucket + BUCKET_SUFFIX)), StandardCharsets.UTF_8);
+                                bucketWriter.put(bucket, writer);
+                            }
+                            writer.write(relativePath);
+                            writer.write('\n');
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+                        //files might get deleted while walking
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+            for (final Writer writer : bucketWriter.values()) {
+                writer.close();
+            }
+            bucketWriter.clear();
+            synchronized (this) {
+                //append to the buckets that add(...) wrote meanwhile
+                for (final File rebuiltBucket : rebuildDirectory.listFiles()) {
+                    final File bucket = new File(indexDirectory, rebuiltBucket.getName());
+                    final byte[] lines = java.nio.file.Files.readAllBytes(rebuiltBucket.toPath());
+                    java.nio.file.Files.write(bucket.toPath(), lines, StandardOpenOption.CREATE,
+                            StandardOpenOption.APPEND);
+                }
+                Files.write(new File(indexDirectory, COMPLETE_MARKER_NAME), new FDate().toString(),
+                        StandardCharsets.UTF_8);
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            for (final Writer writer : bucketWriter.values()) {
+                try {
+                    writer.close();
+                } catch (final IOException e) {
+                    //ignore
+                }
+            }
+            Files.deleteQuietly(rebuildDirectory);
+        }
+    }
+
+    /**
+     * Walks the root directory to count the used bytes, which is needed for the quota after a restart.
+     */
+    public void recount() {
+        //writes during the walk are counted as well
+        usedBytes.set(0);
+        if (root.exists()) {
+            try {
+                java.nio.file.Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile()) {
+                            addUsedBytes(attrs.size());
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+                        //files might get deleted while walking
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Deletes the files of all buckets that are completely older than the threshold, together with directories that
+     * became empty by this. Paths that are listed in a newer bucket as well are kept.
+     */
+    public PurgeStatistics purgeOlderThan(final FDate threshold) {
+        final Instant start = new Instant();
+        final long thresholdMillis = threshold.millisValue();
+        final long thresholdBucket = thresholdMillis / BUCKET_MILLIS;
+        purgeLock.lock();
+        try {
+            final List<Long> buckets = listBuckets(thresholdBucket);
+            //only read when there is something to delete
+            Set<String> rewrittenPaths = null;
+            long files = 0;
+            long bytes = 0;
+            for (final long bucket : buckets) {
+                final File processing = takeBucket(bucket);
+                if (processing == null) {
+                    continue;
+                }
+                final Set<File> directories = new HashSet<>();
+                try {
+                    for (final String relativePath : readLines(processing)) {
+                        final File file = new File(root, relativePath);
+                        //returns 0 for files that do not exist anymore
+                        final long lastModified = file.lastModified();
+                        if (lastModified <= 0 || lastModified >= thresholdMillis || !file.isFile()) {
+                            continue;
+                        }
+                        if (rewrittenPaths == null) {
+                            rewrittenPaths = readPathsSince(thresholdBucket);
+                        }
+                        if (rewrittenPaths.contains(relativePath)) {
+                            continue;
+                        }
+                        final long length = file.length();
+                        if (file.delete()) {
+                            files++;
+                            bytes += length;
+                            addUsedBytes(-length);
+                            directories.add(file.getParentFile());
+                        }
+                    }
+                } catch (final IOException e) {
+                    LOG.warn("Unable to purge bucket [%s]: %s", processing, e.toString());
+                    continue;
+                }
+                maybeDeleteEmptyDirectories(directories);
+                Files.deleteQuietly(processing);
+            }
+            purgedFilesCount.addAndGet(files);
+            purgedBytesCount.addAndGet(bytes);
+            return new PurgeStatistics(buckets.size(), files, bytes, start.toDuration());
+        } finally {
+            purgeLock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the least recently used files until the used bytes are below the quota again. Buckets of the current hour
+     * are kept. If that is not enough because the remaining files were used recently, files are evicted by the time
+     * they were written. Returns immediately when another purge or eviction is running already.
+     */
+    public PurgeStatistics evictToQuota() {
+        final Instant start = new Instant();
+        if (!isQuotaExceeded() || !purgeLock.tryLock()) {
+            return new PurgeStatistics(0, 0, 0, start.toDuration());
+        }
+        final PurgeStatistics statistics;
+        try {
+            final Long maxBytesCopy = maxBytes;
+            if (maxBytesCopy == null) {
+                return new PurgeStatistics(0, 0, 0, start.toDuration());
+            }
+            final long targetBytes = (long) (maxBytesCopy * EVICTION_TARGET_RATIO);
+            final List<Long> buckets = listBuckets(System.currentTimeMillis() / BUCKET_MILLIS);
+            final long[] filesAndBytes = new long[2];
+            int processedBuckets = 0;
+            for (final boolean respectAccessTimes : new boolean[] { true, false }) {
+                for (final long bucket : buckets) {
+                    if (usedBytes.get() <= targetBytes) {
+                        break;
+                    }
+                    if (evictBucket(bucket, targetBytes, respectAccessTimes, filesAndBytes)) {
+                        processedBuckets++;
+                    }
+                }
+            }
+            evictedFilesCount.addAndGet(filesAndBytes[0]);
+            evictedBytesCount.addAndGet(filesAndBytes[1]);
+            final long currentBucket = System.currentTimeMillis() / BUCKET_MILLIS;
+            if (usedBytes.get() > maxBytesCopy && quotaWarningBucket != currentBucket) {
+                //files of the current hour are kept, so every write would warn again until the hour is over
+                quotaWarningBucket = currentBucket;
+                LOG.warn("Unable to evict enough files from [%s] for the quota of %s bytes, still using %s bytes", root,
+                        maxBytesCopy, usedBytes.get());
+            }
+            statistics = new PurgeStatistics(processedBuckets, filesAndBytes[0], filesAndBytes[1], start.toDuration());
+        } finally {
+            purgeLock.unlock();
+        }
+        if (statistics.getFiles() > 0) {
+            for (final Runnable evictionListener : evictionListeners) {
+                evictionListener.run();
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Entries that are not evicted are put back into the bucket so that the purge by age still finds them.
+     */
+    private boolean evictBucket(final long bucket, final long targetBytes, final boolean respectAccessTimes,
+            final long[] filesAndBytes) {
+        final File processing = takeBucket(bucket);
+        if (processing == null) {
+            return false;
+        }
+        final long bucketEndMillis = (bucket + 1) * BUCKET_MILLIS;
+        final Set<File> directories = new HashSet<>();
+        final List<String> keep = new ArrayList<>();
+        try {
+            for (final String relativePath : readLines(processing)) {
+                if (usedBytes.get() <= targetBytes) {
+                    keep.add(relativePath);
+                    continue;
+                }
+                final File file = new File(root, relativePath);
+                final BasicFileAttributes attrs;
+                try {
+                    attrs = java.nio.file.Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                } catch (final IOException e) {
+                    //deleted meanwhile
+                    continue;
+                }
+                if (!attrs.isRegularFile()) {
+                    continue;
+                }
+                if (respectAccessTimes && getLastUsed(attrs) >= bucketEndMillis) {
+                    //used after this bucket
+                    keep.add(relativePath);
+                    continue;
+                }
+                if (file.delete()) {
+                    filesAndBytes[0]++;
+                    filesAndBytes[1] += attrs.size();
+                    addUsedBytes(-attrs.size());
+                    directories.add(file.getParentFile());
+                } else {
+                    keep.add(relativePath);
+                }
+            }
+            append(keep, bucket);
+        } catch (final IOException e) {
+            LOG.warn("Unable to evict bucket [%s]: %s", processing, e.toString());
+            return true;
+        }
+        maybeDeleteEmptyDirectories(directories);
+        Files.deleteQuietly(processing);
+        return true;
+    }
+
+    /**
+     * Returns the buckets before the given one in ascending order. Buckets that were left over by an interrupted purge
+     * are put back first.
+     */
+    private List<Long> listBuckets(final long beforeBucket) {
+        final List<Long> buckets = new ArrayList<>();
+        final File[] files = indexDirectory.listFiles();
+        if (files == null) {
+            return buckets;
+        }
+        for (final File file : files) {
+            String name = file.getName();
+            final boolean leftover = name.endsWith(PURGING_SUFFIX);
+            name = Strings.removeEnd(name, PURGING_SUFFIX);
+            if (!name.endsWith(BUCKET_SUFFIX)) {
+                continue;
+            }
+            final long bucket;
+            try {
+                bucket = Long.parseLong(Strings.removeEnd(name, BUCKET_SUFFIX));
+            } catch (final NumberFormatException e) {
+                continue;
+            }
+            if (leftover) {
+                try {
+                    append(readLines(file), bucket);
+                    Files.deleteQuietly(file);
+                } catch (final IOException e) {
+                    LOG.warn("Unable to restore bucket [%s]: %s", file, e.toString());
+                    continue;
+                }
+            }
+            if (bucket < beforeBucket && !buckets.contains(bucket)) {
+                buckets.add(bucket);
+            }
+        }
+        Collections.sort(buckets);
+        return buckets;
+    }
+
+    /**
+     * Returns the paths of all buckets from the given one on, entries that are added meanwhile are not included.
+     */
+    private Set<String> readPathsSince(final long sinceBucket) throws IOException {
+        final Set<String> paths = new HashSet<>();
+        final File[] files = indexDirectory.listFiles();
+        if (files == null) {
+            return paths;
+        }
+        for (final File file : files) {
+            final String name = file.getName();
+            if (!name.endsWith(BUCKET_SUFFIX)) {
+                continue;
+            }
+            final long bucket;
+            try {
+                bucket = Long.parseLong(Strings.removeEnd(name, BUCKET_SUFFIX));
+            } catch (final NumberFormatException e) {
+                continue;
+            }
+            if (bucket >= sinceBucket) {
+                paths.addAll(readLines(file));
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Renames the bucket so that entries which are added meanwhile go into a new file.
+     */
+    private File takeBucket(final long bucket) {
+        final File bucketFile = getBucketFile(bucket);
+        final File processing = new File(indexDirectory, bucketFile.getName() + PURGING_SUFFIX);
+        synchronized (this) {
+            if (bucketFile.renameTo(processing)) {
+                return processing;
+            } else {
+                return null;
+            }
+        }
+    }
+
+    private static List<String> readLines(final File file) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Walks up until a directory is not empty, the root directory itself is kept.
+     */
+    private void maybeDeleteEmptyDirectories(final Set<File> directories) {
+        for (final File directory : directories) {
+            File cur = directory;
+            while (cur != null && !cur.equals(root) && cur.getPath().startsWith(rootPath) && cur.delete()) {
+                cur = cur.getParentFile();
+            }
+        }
+    }
+
+    /**
+     * Total number of files deleted by purgeOlderThan(...) of this instance.
+     */
+    public long getPurgedFilesCount() {
+        return purgedFilesCount.get();
+    }
+
+    /**
+     * Total number of bytes reclaimed by purgeOlderThan(...) of this instance.
+     */
+    public long getPurgedBytesCount() {
+        return purgedBytesCount.get();
+    }
+
+    /**
+     * Total number of files deleted by evictToQuota() of this instance.
+     */
+    public long getEvictedFilesCount() {
+        return evictedFilesCount.get();
+    }
+
+    /**
+     * Total number of bytes reclaimed by evictToQuota() of this instance.
+     */
+    public long getEvictedBytesCount() {
+        return evictedBytesCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("root", root).add("indexDirectory", indexDirectory).toString();
+    }
+
+    @Immutable
+    public static final class PurgeStatistics {
+
+        private final int buckets;
+        private final long files;
+        private final long bytes;
+        private final Duration duration;
+
+        private PurgeStatistics(final int buckets, final long files, final long bytes, final Duration duration) {
+            this.buckets = buckets;
+            this.files = files;
+            this.bytes = bytes;
+            this.duration = duration;
+        }
+
+        public int getBuckets() {
+            return buckets;
+        }
+
+        public long getFiles() {
+            return files;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public Duration getDuration() {
+            return duration;
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this)
+                    .add("buckets", buckets)
+                    .add("files", files)
+                    .add("bytes", bytes)
+                    .add("duration", duration)
+                    .toString();
+        }
+
+    }
+
+}
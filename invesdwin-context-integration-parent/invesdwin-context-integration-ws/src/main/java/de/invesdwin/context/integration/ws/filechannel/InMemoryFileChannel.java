@@ -0,0 +1,386 @@
+package de.invesdwin.context.integration.ws.filechannel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.commons.io.IOUtils;
+
+import de.invesdwin.context.ContextProperties;
+import de.invesdwin.context.integration.filechannel.IFileChannel;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.lang.Files;
+import de.invesdwin.util.lang.Objects;
+import de.invesdwin.util.lang.Strings;
+import de.invesdwin.util.lang.UUIDs;
+import de.invesdwin.util.math.Bytes;
+import de.invesdwin.util.time.date.FDate;
+
+/**
+ * Keeps the files in the heap of this process, which is useful for tests and for exchanging data between components of
+ * one process without touching the disk. Channels with the same namespace see the same files. Directories exist
+ * implicitly as long as they contain files.
+ */
+@ThreadSafe
+public class InMemoryFileChannel implements IFileChannel<InMemoryFileChannel.InMemoryFile> {
+
+    private static final char SEPARATOR = '/';
+    //sorted so that a directory can be listed as a range of keys
+    private static final ConcurrentSkipListMap<String, InMemoryFile> PATH_FILE = new ConcurrentSkipListMap<>();
+
+    private final String namespace;
+    private final String directory;
+    @GuardedBy("this")
+    private String filename;
+    @GuardedBy("this")
+    private byte[] emptyFileContent = Bytes.EMPTY_ARRAY;
+    @GuardedBy("this")
+    private boolean connected;
+
+    public InMemoryFileChannel(final String namespace, final String directory) {
+        if (namespace == null) {
+            throw new NullPointerException("namespace should not be null");
+        }
+        this.namespace = namespace;
+        this.directory = Strings.putSuffix(Strings.putPrefix(directory.replace("\\", "/").replaceAll("[/]+", "/"), "/"),
+                "/");
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    @Override
+    public String getDirectory() {
+        return directory;
+    }
+
+    private String getDirectoryKey() {
+        return namespace + ":" + directory;
+    }
+
+    private String getKey() {
+        return getDirectoryKey() + getFilename();
+    }
+
+    @Override
+    public synchronized void setFilename(final String filename) {
+        this.filename = filename;
+    }
+
+    @Override
+    public synchronized String getFilename() {
+        if (filename == null) {
+            throw new NullPointerException("please call setFilename(...) first");
+        }
+        return filename;
+    }
+
+    @Override
+    public synchronized byte[] getEmptyFileContent() {
+        return emptyFileContent;
+    }
+
+    @Override
+    public synchronized void setEmptyFileContent(final byte[] emptyFileContent) {
+        this.emptyFileContent = emptyFileContent;
+    }
+
+    @Override
+    public synchronized void createUniqueFile() {
+        createUniqueFile(InMemoryFileChannel.class.getSimpleName() + "_", ".channel");
+    }
+
+    @Override
+    public synchronized void createUniqueFile(final String filenamePrefix, final String filenameSuffix) {
+        assertConnected();
+        while (true) {
+            final String filename = filenamePrefix + UUIDs.newPseudorandomUUID() + filenameSuffix;
+            setFilename(filename);
+            if (PATH_FILE.putIfAbsent(getKey(), new InMemoryFile(filename, getEmptyFileContent().clone())) == null) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void connect() {
+        Assertions.checkFalse(connected, "Already connected");
+        connected = true;
+    }
+
+    @Override
+    public synchronized boolean isConnected() {
+        return connected;
+    }
+
+    private void assertConnected() {
+        Assertions.checkTrue(isConnected(), "Please call connect() first");
+    }
+
+    @Override
+    public synchronized boolean exists() {
+        return info() != null;
+    }
+
+    @Override
+    public synchronized long size() {
+        final InMemoryFile info = info();
+        if (info == null) {
+            return -1;
+        } else {
+            return info.getSize();
+        }
+    }
+
+    @Override
+    public synchronized FDate modified() {
+        final InMemoryFile info = info();
+        if (info == null) {
+            return null;
+        } else {
+            return info.getModified();
+        }
+    }
+
+    @Override
+    public synchronized InMemoryFile info() {
+        assertConnected();
+        return PATH_FILE.get(getKey());
+    }
+
+    @Override
+    public synchronized List<InMemoryFile> list() {
+        final List<InMemoryFile> list = new ArrayList<>(listDirectories());
+        list.addAll(listFiles());
+        return list;
+    }
+
+    @Override
+    public synchronized List<InMemoryFile> listFiles() {
+        assertConnected();
+        final String directoryKey = getDirectoryKey();
+        final List<InMemoryFile> files = new ArrayList<>();
+        for (final Map.Entry<String, InMemoryFile> entry : getDirectoryRange(directoryKey).entrySet()) {
+            if (entry.getKey().indexOf(SEPARATOR, directoryKey.length()) < 0) {
+                files.add(entry.getValue());
+            }
+        }
+        return files;
+    }
+
+    @Override
+    public synchronized List<InMemoryFile> listDirectories() {
+        assertConnected();
+        final String directoryKey = getDirectoryKey();
+        final List<InMemoryFile> directories = new ArrayList<>();
+        String previousName = null;
+        for (final String key : getDirectoryRange(directoryKey).keySet()) {
+            final int separatorIndex = key.indexOf(SEPARATOR, directoryKey.length());
+            if (separatorIndex >= 0) {
+                //keys are sorted, thus files of the same subdirectory are adjacent
+                final String name = key.substring(directoryKey.length(), separatorIndex);
+                if (!name.equals(previousName)) {
+                    directories.add(new InMemoryFile(name));
+                    previousName = name;
+                }
+            }
+        }
+        return directories;
+    }
+
+    private static NavigableMap<String, InMemoryFile> getDirectoryRange(final String directoryKey) {
+        return PATH_FILE.subMap(directoryKey, true, directoryKey + Character.MAX_VALUE, false);
+    }
+
+    @Override
+    public synchronized void upload(final File file) {
+        assertConnected();
+        try {
+            put(java.nio.file.Files.readAllBytes(file.toPath()));
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized void upload(final byte[] bytes) {
+        assertConnected();
+        //the caller might modify the array afterwards
+        put(bytes.clone());
+    }
+
+    @Override
+    public synchronized void upload(final InputStream input) {
+        assertConnected();
+        try {
+            put(IOUtils.toByteArray(input));
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void put(final byte[] content) {
+        PATH_FILE.put(getKey(), new InMemoryFile(getFilename(), content));
+    }
+
+    @Override
+    public synchronized byte[] download() {
+        final InMemoryFile info = info();
+        if (info == null) {
+            return null;
+        } else {
+            return info.content.clone();
+        }
+    }
+
+    @Override
+    public synchronized void delete() {
+        assertConnected();
+        PATH_FILE.remove(getKey());
+    }
+
+    @Override
+    public synchronized void close() {
+        connected = false;
+    }
+
+    /**
+     * The content becomes visible when the stream is closed.
+     */
+    @Override
+    public synchronized OutputStream uploadOutputStream() {
+        assertConnected();
+        final String key = getKey();
+        final String filename = getFilename();
+        return new ByteArrayOutputStream() {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                super.close();
+                PATH_FILE.put(key, new InMemoryFile(filename, toByteArray()));
+            }
+        };
+    }
+
+    @Override
+    public synchronized File getLocalTempFile() {
+        final File directory = new File(
+                new File(ContextProperties.TEMP_DIRECTORY, InMemoryFileChannel.class.getSimpleName()),
+                namespace + getDirectory());
+        try {
+            Files.forceMkdir(directory);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+        final File file = new File(directory, getFilename());
+        Files.deleteQuietly(file);
+        return file;
+    }
+
+    @Override
+    public synchronized void reconnect() {
+        close();
+        connect();
+    }
+
+    /**
+     * Reads the stored content without copying it.
+     */
+    @Override
+    public synchronized InputStream downloadInputStream() {
+        final InMemoryFile info = info();
+        if (info == null) {
+            return null;
+        } else {
+            return new ByteArrayInputStream(info.content);
+        }
+    }
+
+    /**
+     * Removes all files of the given namespace.
+     */
+    public static void clear(final String namespace) {
+        final String namespaceKey = namespace + ":";
+        PATH_FILE.subMap(namespaceKey, true, namespaceKey + Character.MAX_VALUE, false).clear();
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("namespace", namespace)
+                .add("directory", directory)
+                .add("filename", filename)
+                .toString();
+    }
+
+    /**
+     * The content is never modified after construction, uploads replace the whole entry.
+     */
+    @Immutable
+    public static final class InMemoryFile {
+
+        private final String name;
+        private final byte[] content;
+        private final FDate modified;
+
+        private InMemoryFile(final String name, final byte[] content) {
+            this.name = name;
+            this.content = content;
+            this.modified = new FDate();
+        }
+
+        private InMemoryFile(final String directoryName) {
+            this.name = directoryName;
+            this.content = null;
+            this.modified = null;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDirectory() {
+            return content == null;
+        }
+
+        public long getSize() {
+            if (content == null) {
+                return -1;
+            } else {
+                return content.length;
+            }
+        }
+
+        /**
+         * Returns null for directories.
+         */
+        public FDate getModified() {
+            return modified;
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this).add("name", name).add("size", getSize()).toString();
+        }
+
+    }
+
+}
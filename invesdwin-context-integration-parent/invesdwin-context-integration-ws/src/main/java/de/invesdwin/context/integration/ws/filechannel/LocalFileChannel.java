@@ -0,0 +1,517 @@
+package de.invesdwin.context.integration.ws.filechannel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.ProxyOutputStream;
+
+import de.invesdwin.context.ContextProperties;
+import de.invesdwin.context.integration.filechannel.IFileChannel;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.lang.Files;
+import de.invesdwin.util.lang.Objects;
+import de.invesdwin.util.lang.Strings;
+import de.invesdwin.util.lang.UUIDs;
+import de.invesdwin.util.math.Bytes;
+import de.invesdwin.util.time.date.FDate;
+
+/**
+ * Works directly on a local directory, e.g. the working directory of a server that runs in the same process. Uploads
+ * are written to a hidden file next to the target and renamed atomically, so readers never see partial content. Large
+ * files are memory mapped for reading.
+ */
+@ThreadSafe
+public class LocalFileChannel implements IFileChannel<File> {
+
+    public static final String UPLOAD_FILE_SUFFIX = ".upload";
+    private static final String UPLOAD_FILE_PREFIX = ".";
+    private static final long MMAP_MIN_SIZE = 1024 * 1024;
+
+    private final File baseDirectory;
+    private final String directory;
+    @GuardedBy("this")
+    private String filename;
+    @GuardedBy("this")
+    private byte[] emptyFileContent = Bytes.EMPTY_ARRAY;
+    @GuardedBy("this")
+    private boolean connected;
+    //not serializable, it is looked up again via LocalFileChannels after deserialization
+    @GuardedBy("this")
+    private transient FileAgeIndex ageIndex;
+    @GuardedBy("this")
+    private transient boolean ageIndexResolved;
+
+    public LocalFileChannel(final File baseDirectory, final String directory) {
+        if (baseDirectory == null) {
+            throw new NullPointerException("baseDirectory should not be null");
+        }
+        this.baseDirectory = baseDirectory;
+        this.directory = Strings.putSuffix(Strings.putPrefix(directory.replace("\\", "/").replaceAll("[/]+", "/"), "/"),
+                "/");
+    }
+
+    public File getBaseDirectory() {
+        return baseDirectory;
+    }
+
+    /**
+     * Unless set explicitly, this is the index of the registered server whose working directory contains the base
+     * directory.
+     */
+    public synchronized FileAgeIndex getAgeIndex() {
+        if (!ageIndexResolved) {
+            ageIndex = LocalFileChannels.getAgeIndex(baseDirectory);
+            ageIndexResolved = true;
+        }
+        return ageIndex;
+    }
+
+    /**
+     * Written files are added to this index so that the server that owns the directory can purge them.
+     */
+    public synchronized void setAgeIndex(final FileAgeIndex ageIndex) {
+        this.ageIndex = ageIndex;
+        this.ageIndexResolved = true;
+    }
+
+    @Override
+    public String getDirectory() {
+        return directory;
+    }
+
+    private File getLocalDirectory() {
+        return new File(baseDirectory, directory);
+    }
+
+    private File getFile() {
+        return new File(getLocalDirectory(), getFilename());
+    }
+
+    @Override
+    public synchronized void setFilename(final String filename) {
+        this.filename = filename;
+    }
+
+    @Override
+    public synchronized String getFilename() {
+        if (filename == null) {
+            throw new NullPointerException("please call setFilename(...) first");
+        }
+        return filename;
+    }
+
+    @Override
+    public synchronized byte[] getEmptyFileContent() {
+        return emptyFileContent;
+    }
+
+    @Override
+    public synchronized void setEmptyFileContent(final byte[] emptyFileContent) {
+        this.emptyFileContent = emptyFileContent;
+    }
+
+    @Override
+    public synchronized void createUniqueFile() {
+        createUniqueFile(LocalFileChannel.class.getSimpleName() + "_", ".channel");
+    }
+
+    @Override
+    public synchronized void createUniqueFile(final String filenamePrefix, final String filenameSuffix) {
+        assertConnected();
+        try {
+            while (true) {
+                final String filename = filenamePrefix + UUIDs.newPseudorandomUUID() + filenameSuffix;
+                setFilename(filename);
+                //atomically reserves the name
+                if (getFile().createNewFile()) {
+                    if (getEmptyFileContent().length > 0) {
+                        upload(getEmptyFileContent());
+                    }
+                    break;
+                }
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized void connect() {
+        Assertions.checkFalse(connected, "Already connected");
+        try {
+            Files.forceMkdir(getLocalDirectory());
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+        connected = true;
+    }
+
+    @Override
+    public synchronized boolean isConnected() {
+        return connected;
+    }
+
+    private void assertConnected() {
+        Assertions.checkTrue(isConnected(), "Please call connect() first");
+    }
+
+    @Override
+    public synchronized boolean exists() {
+        return info() != null;
+    }
+
+    @Override
+    public synchronized long size() {
+        assertConnected();
+        final File file = getFile();
+        if (file.isFile()) {
+            return file.length();
+        } else {
+            return -1;
+        }
+    }
+
+    @Override
+    public synchronized FDate modified() {
+        final File info = info();
+        if (info == null) {
+            return null;
+        } else {
+            return new FDate(new Date(info.lastModified()));
+        }
+    }
+
+    @Override
+    public synchronized File info() {
+        assertConnected();
+        final File file = getFile();
+        if (file.exists()) {
+            return file;
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized List<File> list() {
+        assertConnected();
+        final File[] files = getLocalDirectory().listFiles();
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        final List<File> list = new ArrayList<>(files.length);
+        for (final File file : files) {
+            if (!isUploadFile(file.getName())) {
+                list.add(file);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Uploads that are still in progress are not listed.
+     */
+    public static boolean isUploadFile(final String name) {
+        return name.startsWith(UPLOAD_FILE_PREFIX) && name.endsWith(UPLOAD_FILE_SUFFIX);
+    }
+
+    @Override
+    public synchronized List<File> listFiles() {
+        final List<File> list = list();
+        final List<File> files = new ArrayList<>();
+        for (final File file : list) {
+            if (file.isFile()) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    @Override
+    public synchronized List<File> listDirectories() {
+        final List<File> list = list();
+        final List<File> directories = new ArrayList<>();
+        for (final File directory : list) {
+            if (directory.isDirectory()) {
+                directories.add(directory);
+            }
+        }
+        return directories;
+    }
+
+    @Override
+    public synchronized void upload(final File file) {
+        assertConnected();
+        final File uploadFile = newUploadFile();
+        try {
+            //lets the operating system copy the content without moving it through the heap
+            try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                    FileChannel out = FileChannel.open(uploadFile.toPath(), StandardOpenOption.WRITE,
+                            StandardOpenOption.CREATE_NEW)) {
+                final long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    final long transferred = in.transferTo(position, size - position, out);
+                    if (transferred <= 0) {
+                        //truncated in the meantime
+                        break;
+                    }
+                    position += transferred;
+                }
+            }
+            commitUploadFile(uploadFile);
+        } catch (final IOException e) {
+            Files.deleteQuietly(uploadFile);
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized void upload(final byte[] bytes) {
+        assertConnected();
+        final File uploadFile = newUploadFile();
+        try {
+            try (FileChannel out = FileChannel.open(uploadFile.toPath(), StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE_NEW)) {
+                final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            commitUploadFile(uploadFile);
+        } catch (final IOException e) {
+            Files.deleteQuietly(uploadFile);
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized void upload(final InputStream input) {
+        assertConnected();
+        final File uploadFile = newUploadFile();
+        try {
+            try (OutputStream out = new FileOutputStream(uploadFile)) {
+                IOUtils.copy(input, out, IOUtils.DEFAULT_BUFFER_SIZE * 16);
+            }
+            commitUploadFile(uploadFile);
+        } catch (final IOException e) {
+            Files.deleteQuietly(uploadFile);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private File newUploadFile() {
+        return new File(getLocalDirectory(),
+                UPLOAD_FILE_PREFIX + getFilename() + "." + UUIDs.newPseudorandomUUID() + UPLOAD_FILE_SUFFIX);
+    }
+
+    private void commitUploadFile(final File uploadFile) throws IOException {
+        final File file = getFile();
+        //0 when the file does not exist yet
+        final long previousLength = file.length();
+        try {
+            java.nio.file.Files.move(uploadFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            java.nio.file.Files.move(uploadFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        final FileAgeIndex ageIndex = getAgeIndex();
+        if (ageIndex != null) {
+            ageIndex.add(file, previousLength);
+        }
+    }
+
+    @Override
+    public synchronized byte[] download() {
+        assertConnected();
+        final File file = getFile();
+        if (!file.isFile()) {
+            return null;
+        }
+        touch(file);
+        try {
+            return java.nio.file.Files.readAllBytes(file.toPath());
+        } catch (final NoSuchFileException e) {
+            //deleted in the meantime
+            return null;
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized void delete() {
+        assertConnected();
+        final File file = getFile();
+        final long length = file.length();
+        final FileAgeIndex ageIndex = getAgeIndex();
+        if (Files.deleteQuietly(file) && ageIndex != null) {
+            ageIndex.addUsedBytes(-length);
+        }
+    }
+
+    private void touch(final File file) {
+        final FileAgeIndex ageIndex = getAgeIndex();
+        if (ageIndex != null) {
+            //keeps files that are read often from being evicted
+            ageIndex.touch(file);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        connected = false;
+    }
+
+    @Override
+    public synchronized OutputStream uploadOutputStream() {
+        assertConnected();
+        final File uploadFile = newUploadFile();
+        try {
+            return new ProxyOutputStream(new FileOutputStream(uploadFile)) {
+                private boolean closed;
+
+                @Override
+                public void close() throws IOException {
+                    if (closed) {
+                        return;
+                    }
+                    closed = true;
+                    try {
+                        super.close();
+                        commitUploadFile(uploadFile);
+                    } finally {
+                        Files.deleteQuietly(uploadFile);
+                    }
+                }
+            };
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized File getLocalTempFile() {
+        final File directory = new File(
+                new File(ContextProperties.TEMP_DIRECTORY, LocalFileChannel.class.getSimpleName()), getDirectory());
+        try {
+            Files.forceMkdir(directory);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+        final File file = new File(directory, getFilename());
+        Files.deleteQuietly(file);
+        return file;
+    }
+
+    @Override
+    public synchronized void reconnect() {
+        close();
+        connect();
+    }
+
+    /**
+     * Files of at least 1 MB are memory mapped, which saves copying the content through a read buffer. The mapping
+     * shows the content at the time of the call since uploads replace the file instead of writing into it.
+     */
+    @Override
+    public synchronized InputStream downloadInputStream() {
+        assertConnected();
+        final File file = getFile();
+        if (!file.isFile()) {
+            return null;
+        }
+        touch(file);
+        try {
+            final long length = file.length();
+            if (length < MMAP_MIN_SIZE || length > Integer.MAX_VALUE) {
+                return new FileInputStream(file);
+            }
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                return new MappedInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        } catch (final NoSuchFileException | FileNotFoundException e) {
+            //deleted in the meantime
+            return null;
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("baseDirectory", baseDirectory)
+                .add("directory", directory)
+                .add("filename", filename)
+                .toString();
+    }
+
+    /**
+     * The mapping stays valid after the channel is closed and is released by the garbage collector.
+     */
+    @NotThreadSafe
+    private static final class MappedInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private MappedInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int read = Math.min(len, buffer.remaining());
+            buffer.get(b, off, read);
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) {
+            final int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+    }
+
+}
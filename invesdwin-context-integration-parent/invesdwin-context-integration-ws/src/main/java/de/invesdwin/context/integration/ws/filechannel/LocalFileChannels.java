@@ -0,0 +1,194 @@
+package de.invesdwin.context.integration.ws.filechannel;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.integration.filechannel.IFileChannel;
+import de.invesdwin.util.lang.Strings;
+
+/**
+ * Servers that run in this process register their working directory here. Clients can then skip the network for
+ * destinations that point to such a server and work on the directory directly instead.
+ */
+@ThreadSafe
+public final class LocalFileChannels {
+
+    /**
+     * Destinations like "memory://namespace" select an InMemoryFileChannel.
+     */
+    public static final String IN_MEMORY_SCHEME = "memory";
+    /**
+     * Destinations like "file:///path" select a LocalFileChannel on that path.
+     */
+    public static final String FILE_SCHEME = "file";
+
+    private static final Map<URI, File> SERVERURI_DIRECTORY = new ConcurrentHashMap<>();
+    private static final Map<URI, FileAgeIndex> SERVERURI_AGEINDEX = new ConcurrentHashMap<>();
+    private static final Map<String, Boolean> HOST_LOCAL = new ConcurrentHashMap<>();
+
+    private LocalFileChannels() {}
+
+    public static void registerServerDirectory(final URI serverUri, final File directory) {
+        SERVERURI_DIRECTORY.put(serverUri, directory);
+    }
+
+    /**
+     * Files written by local channels are added to the age index of the server so that they get purged as well.
+     */
+    public static void registerServerDirectory(final URI serverUri, final FileAgeIndex ageIndex) {
+        SERVERURI_AGEINDEX.put(serverUri, ageIndex);
+        registerServerDirectory(serverUri, ageIndex.getRoot());
+    }
+
+    public static void unregisterServerDirectory(final URI serverUri) {
+        SERVERURI_DIRECTORY.remove(serverUri);
+        SERVERURI_AGEINDEX.remove(serverUri);
+    }
+
+    /**
+     * Returns null when the destination is not local, in which case the caller should create its remote channel.
+     */
+    public static IFileChannel<?> newLocalFileChannel(final URI serverUri, final String directory) {
+        final String scheme = serverUri.getScheme();
+        if (IN_MEMORY_SCHEME.equalsIgnoreCase(scheme)) {
+            return new InMemoryFileChannel(Strings.nullToEmpty(serverUri.getAuthority()), directory);
+        }
+        if (FILE_SCHEME.equalsIgnoreCase(scheme)) {
+            return new LocalFileChannel(new File(serverUri), directory);
+        }
+        final URI registeredUri = getRegisteredServerUri(serverUri);
+        if (registeredUri == null) {
+            return null;
+        }
+        final File serverDirectory = getServerDirectory(registeredUri, serverUri);
+        if (serverDirectory == null) {
+            return null;
+        }
+        final LocalFileChannel channel = new LocalFileChannel(serverDirectory, directory);
+        channel.setAgeIndex(SERVERURI_AGEINDEX.get(registeredUri));
+        return channel;
+    }
+
+    /**
+     * Resolves the destination to the directory of a registered server that listens on the same port of this host. The
+     * path of the destination below the path of the server becomes a subdirectory.
+     */
+    public static File getServerDirectory(final URI serverUri) {
+        final URI registeredUri = getRegisteredServerUri(serverUri);
+        if (registeredUri == null) {
+            return null;
+        }
+        return getServerDirectory(registeredUri, serverUri);
+    }
+
+    /**
+     * Returns the age index of the registered server whose directory contains the given directory, null if there is
+     * none.
+     */
+    public static FileAgeIndex getAgeIndex(final File directory) {
+        final String path = normalizePath(directory.getAbsolutePath().replace("\\", "/"));
+        FileAgeIndex longestMatch = null;
+        int longestMatchLength = -1;
+        for (final FileAgeIndex ageIndex : SERVERURI_AGEINDEX.values()) {
+            final String root = normalizePath(ageIndex.getRoot().getAbsolutePath().replace("\\", "/"));
+            if (path.startsWith(root) && root.length() > longestMatchLength) {
+                longestMatch = ageIndex;
+                longestMatchLength = root.length();
+            }
+        }
+        return longestMatch;
+    }
+
+    /**
+     * Servers of different protocols might share a port on different hosts, thus the scheme has to match as well.
+     * When registered paths are nested, the most specific one wins.
+     */
+    private static URI getRegisteredServerUri(final URI serverUri) {
+        if (SERVERURI_DIRECTORY.isEmpty() || serverUri.getHost() == null) {
+            return null;
+        }
+        final String path = normalizePath(serverUri.getPath());
+        URI longestMatch = null;
+        int longestMatchLength = -1;
+        for (final URI registeredUri : SERVERURI_DIRECTORY.keySet()) {
+            if (registeredUri.getPort() != serverUri.getPort()) {
+                continue;
+            }
+            if (!Strings.equalsIgnoreCase(registeredUri.getScheme(), serverUri.getScheme())) {
+                continue;
+            }
+            final String registeredPath = normalizePath(registeredUri.getPath());
+            if (path.startsWith(registeredPath) && registeredPath.length() > longestMatchLength) {
+                longestMatch = registeredUri;
+                longestMatchLength = registeredPath.length();
+            }
+        }
+        if (longestMatch == null || !isLocalHost(serverUri.getHost())) {
+            return null;
+        }
+        return longestMatch;
+    }
+
+    private static File getServerDirectory(final URI registeredUri, final URI serverUri) {
+        final File registeredDirectory = SERVERURI_DIRECTORY.get(registeredUri);
+        if (registeredDirectory == null) {
+            //unregistered meanwhile
+            return null;
+        }
+        final String subdirectory = normalizePath(serverUri.getPath())
+                .substring(normalizePath(registeredUri.getPath()).length());
+        if (subdirectory.isEmpty()) {
+            return registeredDirectory;
+        } else {
+            return new File(registeredDirectory, subdirectory);
+        }
+    }
+
+    private static String normalizePath(final String path) {
+        if (Strings.isBlank(path)) {
+            return "/";
+        }
+        return Strings.putSuffix(Strings.putPrefix(path.replaceAll("[/]+", "/"), "/"), "/");
+    }
+
+    /**
+     * The result is cached per host name since resolving it might require a dns lookup. Failed lookups are not cached,
+     * so that a host that is temporarily unresolvable can still be detected as local later.
+     */
+    public static boolean isLocalHost(final String host) {
+        final Boolean cached = HOST_LOCAL.get(host);
+        if (cached != null) {
+            return cached;
+        }
+        final Boolean local = resolveLocalHost(host);
+        if (local == null) {
+            return false;
+        }
+        HOST_LOCAL.put(host, local);
+        return local;
+    }
+
+    /**
+     * Returns null when the host could not be resolved.
+     */
+    private static Boolean resolveLocalHost(final String host) {
+        try {
+            final InetAddress address = InetAddress.getByName(host);
+            if (address.isLoopbackAddress() || address.isAnyLocalAddress()) {
+                return true;
+            }
+            return NetworkInterface.getByInetAddress(address) != null;
+        } catch (final UnknownHostException | SocketException e) {
+            return null;
+        }
+    }
+
+}
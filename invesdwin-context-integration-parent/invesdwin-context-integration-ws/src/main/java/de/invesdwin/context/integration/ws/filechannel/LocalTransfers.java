@@ -0,0 +1,157 @@
+package de.invesdwin.context.integration.ws.filechannel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import javax.annotation.concurrent.Immutable;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Moves content between streams, arrays and local files with as few intermediate copies as possible.
+ */
+@Immutable
+public final class LocalTransfers {
+
+    //same limit as for arrays in the jdk
+    private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+    private static final int MIN_BUFFER_SIZE = 4 * 1024;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private LocalTransfers() {}
+
+    /**
+     * Reads the rest of the stream into the buffer starting at its position and returns the number of bytes. Throws a
+     * BufferOverflowException when the content does not fit into the remaining space. Heap buffers are read into
+     * directly, other buffers only go through a small transfer array of the stream channel.
+     */
+    public static int read(final InputStream in, final ByteBuffer sink) throws IOException {
+        final int start = sink.position();
+        if (sink.hasArray()) {
+            final byte[] array = sink.array();
+            while (sink.hasRemaining()) {
+                final int read = in.read(array, sink.arrayOffset() + sink.position(), sink.remaining());
+                if (read < 0) {
+                    return sink.position() - start;
+                }
+                sink.position(sink.position() + read);
+            }
+        } else {
+            //not closed, since that would close the stream of the caller
+            final ReadableByteChannel channel = Channels.newChannel(in);
+            while (sink.hasRemaining()) {
+                if (channel.read(sink) < 0) {
+                    return sink.position() - start;
+                }
+            }
+        }
+        if (in.read() >= 0) {
+            throw new BufferOverflowException();
+        }
+        return sink.position() - start;
+    }
+
+    /**
+     * Reads the stream into the given heap buffer (may be null) and returns it flipped for reading. A larger buffer is
+     * only allocated when the content does not fit, thus reusing the returned buffer for the next call allocates
+     * nothing once it has reached the size of the content. A size of -1 means unknown.
+     */
+    public static ByteBuffer read(final InputStream in, final ByteBuffer reuse, final long size) throws IOException {
+        final int minCapacity = (int) Math.max(MIN_BUFFER_SIZE, Math.min(size, MAX_BUFFER_SIZE));
+        ByteBuffer buffer = reuse;
+        if (buffer == null || buffer.capacity() < minCapacity) {
+            buffer = ByteBuffer.allocate(minCapacity);
+        }
+        buffer.clear();
+        while (true) {
+            final int read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            if (read < 0) {
+                break;
+            }
+            buffer.position(buffer.position() + read);
+            if (!buffer.hasRemaining()) {
+                final int next = in.read();
+                if (next < 0) {
+                    break;
+                }
+                if (buffer.capacity() >= MAX_BUFFER_SIZE) {
+                    throw new IOException("Content is larger than the maximum buffer size of " + MAX_BUFFER_SIZE);
+                }
+                final ByteBuffer grown = ByteBuffer
+                        .allocate((int) Math.min(MAX_BUFFER_SIZE, (long) buffer.capacity() * 2));
+                buffer.flip();
+                grown.put(buffer);
+                grown.put((byte) next);
+                buffer = grown;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * With a known size the content is read directly into an array of the final size instead of growing and copying
+     * an output buffer. A size of -1 means unknown. The size is only a hint, the content is still read completely if
+     * the file changed in the meantime.
+     */
+    public static byte[] toByteArray(final InputStream in, final long size) throws IOException {
+        if (size < 0 || size > MAX_BUFFER_SIZE) {
+            return IOUtils.toByteArray(in);
+        }
+        final byte[] bytes = new byte[(int) size];
+        final int read = IOUtils.read(in, bytes);
+        if (read < bytes.length) {
+            return Arrays.copyOf(bytes, read);
+        }
+        final int next = in.read();
+        if (next < 0) {
+            return bytes;
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length + COPY_BUFFER_SIZE);
+        out.write(bytes);
+        out.write(next);
+        IOUtils.copy(in, out, COPY_BUFFER_SIZE);
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes large chunks directly to the file, a buffered stream would only add another copy.
+     */
+    public static void write(final InputStream in, final File file) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            IOUtils.copy(in, out, COPY_BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * Lets the operating system copy the content without moving it through the heap.
+     */
+    public static void copy(final File source, final File target) throws IOException {
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final long size = in.size();
+            long position = 0;
+            while (position < size) {
+                final long transferred = in.transferTo(position, size - position, out);
+                if (transferred <= 0) {
+                    //truncated in the meantime
+                    break;
+                }
+                position += transferred;
+            }
+        }
+    }
+
+}
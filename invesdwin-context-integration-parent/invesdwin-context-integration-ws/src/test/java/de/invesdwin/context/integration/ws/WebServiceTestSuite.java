@@ -6,10 +6,12 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import de.invesdwin.context.integration.ws.filechannel.FileAgeIndexTest;
+import de.invesdwin.context.integration.ws.filechannel.LocalFileChannelsTest;
 import de.invesdwin.context.integration.ws.registry.publication.XsdWebServicePublicationTest;
 
 @RunWith(Suite.class)
-@SuiteClasses({ XsdWebServicePublicationTest.class })
+@SuiteClasses({ XsdWebServicePublicationTest.class, LocalFileChannelsTest.class, FileAgeIndexTest.class })
 @Immutable
 public class WebServiceTestSuite {
 
@@ -0,0 +1,174 @@
+package de.invesdwin.context.integration.ws.filechannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.junit.Test;
+
+import de.invesdwin.context.ContextProperties;
+import de.invesdwin.context.integration.ws.filechannel.FileAgeIndex.PurgeStatistics;
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.lang.Files;
+import de.invesdwin.util.time.date.FDate;
+import de.invesdwin.util.time.date.FTimeUnit;
+import de.invesdwin.util.time.duration.Duration;
+
+@NotThreadSafe
+public class FileAgeIndexTest extends ATest {
+
+    private static final File ROOT = new File(ContextProperties.TEMP_DIRECTORY,
+            FileAgeIndexTest.class.getSimpleName());
+    private static final File INDEX_DIRECTORY = new File(ContextProperties.TEMP_DIRECTORY,
+            FileAgeIndexTest.class.getSimpleName() + "_index");
+
+    @Test
+    public void testPurge() throws IOException {
+        Files.deleteQuietly(ROOT);
+        Files.deleteQuietly(INDEX_DIRECTORY);
+        final FileAgeIndex index = new FileAgeIndex(ROOT, INDEX_DIRECTORY);
+        final File file1 = newFile("dir/sub/file1", "hello");
+        final File file2 = newFile("dir/file2", "world!");
+        index.add(file1);
+        index.add(file2);
+        //outside of the root
+        index.add(INDEX_DIRECTORY);
+
+        //buckets of the current hour are not expired yet
+        final PurgeStatistics none = index.purgeOlderThan(new FDate());
+        Assertions.assertThat(none.getFiles()).isEqualTo(0);
+        Assertions.checkTrue(file1.exists());
+
+        final PurgeStatistics statistics = index.purgeOlderThan(new FDate().add(Duration.ONE_DAY));
+        Assertions.assertThat(statistics.getFiles()).isEqualTo(2);
+        Assertions.assertThat(statistics.getBytes()).isEqualTo(11);
+        Assertions.assertThat(index.getPurgedFilesCount()).isEqualTo(2);
+        Assertions.checkFalse(file1.exists());
+        Assertions.checkFalse(file2.exists());
+        //empty directories are removed, the root stays
+        Assertions.checkFalse(new File(ROOT, "dir").exists());
+        Assertions.checkTrue(ROOT.exists());
+        //nothing left to purge
+        Assertions.assertThat(index.purgeOlderThan(new FDate().add(Duration.ONE_DAY)).getBuckets()).isEqualTo(0);
+        Files.deleteQuietly(ROOT);
+        Files.deleteQuietly(INDEX_DIRECTORY);
+    }
+
+    @Test
+    public void testRebuild() throws IOException {
+        Files.deleteQuietly(ROOT);
+        Files.deleteQuietly(INDEX_DIRECTORY);
+        final File oldFile = newFile("old/file", "old");
+        oldFile.setLastModified(new FDate().subtract(new Duration(3, FTimeUnit.DAYS)).millisValue());
+        final File newFile = newFile("new/file", "new");
+        final FileAgeIndex index = new FileAgeIndex(ROOT, INDEX_DIRECTORY);
+        Assertions.checkFalse(index.isComplete());
+        index.rebuild();
+        Assertions.checkTrue(index.isComplete());
+        final PurgeStatistics statistics = index.purgeOlderThan(new FDate().subtract(Duration.ONE_DAY));
+        Assertions.assertThat(statistics.getFiles()).isEqualTo(1);
+        Assertions.checkFalse(oldFile.exists());
+        Assertions.checkTrue(newFile.exists());
+        Files.deleteQuietly(ROOT);
+        Files.deleteQuietly(INDEX_DIRECTORY);
+    }
+
+    @Test
+    public void testRewrittenFileIsKept() throws IOException {
+        Files.deleteQuietly(ROOT);
+        Files.deleteQuietly(INDEX_DIRECTORY);
+        final FileAgeIndex index = new FileAgeIndex(ROOT, INDEX_DIRECTORY);
+        final File file = newFile("file", "content");
+        index.add(file);
+        //written again after the threshold
+        final FDate threshold = new FDate().add(Duration.ONE_DAY);
+        file.setLastModified(threshold.add(Duration.ONE_DAY).millisValue());
+        Assertions.assertThat(index.purgeOlderThan(threshold).getFiles()).isEqualTo(0);
+        Assertions.checkTrue(file.exists());
+        Files.deleteQuietly(ROOT);
+        Files.deleteQuietly(INDEX_DIRECTORY);
+    }
+
+    @Test
+    public void testRelinkedFileIsKept() throws IOException {
+        Files.deleteQuietly(ROOT);
+        Files.deleteQuietly(INDEX_DIRECTORY);
+        final File file = newFile("file", "content");
+        final long oldLastModified = new FDate().subtract(new Duration(3, FTimeUnit.DAYS)).millisValue();
+        file.setLastModified(oldLastModified);
+        final FileAgeIndex index = new FileAgeIndex(ROOT, INDEX_DIRECTORY);
+        index.rebuild();
+        //a hard link to existing content keeps the old modification time
+        index.add(file);
+        Assertions.assertThat(file.lastModified()).isEqualTo(oldLastModified);
+        Assertions.assertThat(index.purgeOlderThan(new FDate().subtract(Duration.ONE_DAY)).getFiles()).isEqualTo(0);
+        Assertions.checkTrue(file.exists());
+        Files.deleteQuietly(ROOT);
+        Files.deleteQuietly(INDEX_DIRECTORY);
+    }
+
+    @Test
+    public void testQuota() throws IOException {
+        Files.deleteQuietly(ROOT);
+        Files.deleteQuietly(INDEX_DIRECTORY);
+        final String content = "0123456789";
+        final File oldest = newFile("oldest", content);
+        setTimes(oldest, new FDate().subtract(new Duration(3, FTimeUnit.HOURS)));
+        final File hot = newFile("dir/hot", content);
+        setTimes(hot, new FDate().subtract(new Duration(2, FTimeUnit.HOURS)));
+        final File cold = newFile("dir/cold", content);
+        setTimes(cold, new FDate().subtract(new Duration(2, FTimeUnit.HOURS)));
+        final FileAgeIndex index = new FileAgeIndex(ROOT, INDEX_DIRECTORY);
+        index.rebuild();
+        Assertions.assertThat(index.getUsedBytes()).isEqualTo(30);
+        index.touch(hot);
+        final AtomicInteger evictions = new AtomicInteger();
+        index.addEvictionListener(new Runnable() {
+            @Override
+            public void run() {
+                evictions.incrementAndGet();
+            }
+        });
+        index.setMaxBytes(25L);
+        //exceeds the quota
+        final File newest = newFile("newest", content);
+        index.add(newest);
+        Assertions.checkFalse(oldest.exists());
+        Assertions.checkFalse(cold.exists());
+        Assertions.checkTrue(hot.exists());
+        Assertions.checkTrue(newest.exists());
+        Assertions.assertThat(index.getUsedBytes()).isEqualTo(20);
+        Assertions.assertThat(index.getEvictedFilesCount()).isEqualTo(2);
+        Assertions.assertThat(evictions.get()).isEqualTo(1);
+        //replacing a file only counts the difference
+        index.setMaxBytes(null);
+        Files.write(newest, content + content, StandardCharsets.UTF_8);
+        index.add(newest, content.length());
+        Assertions.assertThat(index.getUsedBytes()).isEqualTo(30);
+        Files.deleteQuietly(ROOT);
+        Files.deleteQuietly(INDEX_DIRECTORY);
+    }
+
+    /**
+     * Creating a file sets its access time to now as well.
+     */
+    private void setTimes(final File file, final FDate time) throws IOException {
+        final FileTime fileTime = FileTime.fromMillis(time.millisValue());
+        java.nio.file.Files.getFileAttributeView(file.toPath(), BasicFileAttributeView.class)
+                .setTimes(fileTime, fileTime, null);
+    }
+
+    private File newFile(final String relativePath, final String content) throws IOException {
+        final File file = new File(ROOT, relativePath);
+        Files.forceMkdir(file.getParentFile());
+        Files.write(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+
+}
@@ -0,0 +1,142 @@
+package de.invesdwin.context.integration.ws.filechannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import de.invesdwin.context.ContextProperties;
+import de.invesdwin.context.integration.filechannel.IFileChannel;
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.lang.Files;
+import de.invesdwin.util.lang.uri.URIs;
+
+@NotThreadSafe
+public class LocalFileChannelsTest extends ATest {
+
+    @Test
+    public void testInMemory() throws IOException {
+        final IFileChannel<?> channel = LocalFileChannels.newLocalFileChannel(URIs.asUri("memory://test"),
+                LocalFileChannelsTest.class.getSimpleName());
+        Assertions.assertThat(channel).isInstanceOf(InMemoryFileChannel.class);
+        assertChannel(channel);
+        InMemoryFileChannel.clear("test");
+    }
+
+    @Test
+    public void testInMemoryListDirectories() {
+        final InMemoryFileChannel channel = new InMemoryFileChannel("test", "parent");
+        channel.connect();
+        final InMemoryFileChannel childChannel = new InMemoryFileChannel("test", "parent/child");
+        childChannel.connect();
+        childChannel.createUniqueFile();
+        childChannel.createUniqueFile();
+        Assertions.assertThat(channel.listFiles()).isEmpty();
+        Assertions.assertThat(channel.listDirectories()).hasSize(1);
+        Assertions.assertThat(channel.listDirectories().get(0).getName()).isEqualTo("child");
+        Assertions.assertThat(childChannel.listFiles()).hasSize(2);
+        InMemoryFileChannel.clear("test");
+        Assertions.assertThat(channel.listDirectories()).isEmpty();
+        channel.close();
+        childChannel.close();
+    }
+
+    @Test
+    public void testLocalFile() throws IOException {
+        final File directory = new File(ContextProperties.TEMP_DIRECTORY, LocalFileChannelsTest.class.getSimpleName());
+        final IFileChannel<?> channel = LocalFileChannels.newLocalFileChannel(directory.toURI(), "local");
+        Assertions.assertThat(channel).isInstanceOf(LocalFileChannel.class);
+        assertChannel(channel);
+        Files.deleteQuietly(directory);
+    }
+
+    @Test
+    public void testServerDirectory() {
+        final File directory = new File(ContextProperties.TEMP_DIRECTORY, LocalFileChannelsTest.class.getSimpleName());
+        final URI serverUri = URIs.asUri("http://localhost:12345/server/");
+        Assertions.checkNull(LocalFileChannels.newLocalFileChannel(serverUri, "dir"));
+        LocalFileChannels.registerServerDirectory(serverUri, directory);
+        try {
+            Assertions.assertThat(LocalFileChannels.getServerDirectory(URIs.asUri("http://127.0.0.1:12345/server")))
+                    .isEqualTo(directory);
+            Assertions.assertThat(LocalFileChannels.getServerDirectory(URIs.asUri("http://localhost:12345/server/sub")))
+                    .isEqualTo(new File(directory, "sub"));
+            Assertions.checkNull(LocalFileChannels.getServerDirectory(URIs.asUri("http://localhost:12346/server/")));
+            Assertions.checkNull(LocalFileChannels.getServerDirectory(URIs.asUri("http://localhost:12345/other/")));
+            //another protocol on the same port
+            Assertions.checkNull(LocalFileChannels.getServerDirectory(URIs.asUri("p://localhost:12345/server/")));
+            Assertions.assertThat(LocalFileChannels.newLocalFileChannel(serverUri, "dir"))
+                    .isInstanceOf(LocalFileChannel.class);
+        } finally {
+            LocalFileChannels.unregisterServerDirectory(serverUri);
+        }
+        Files.deleteQuietly(directory);
+    }
+
+    @Test
+    public void testNestedServerDirectory() {
+        final File directory = new File(ContextProperties.TEMP_DIRECTORY, LocalFileChannelsTest.class.getSimpleName());
+        final File nestedDirectory = new File(directory, "nested");
+        final URI serverUri = URIs.asUri("http://localhost:12345/");
+        final URI nestedServerUri = URIs.asUri("http://localhost:12345/server/");
+        LocalFileChannels.registerServerDirectory(serverUri, directory);
+        LocalFileChannels.registerServerDirectory(nestedServerUri, nestedDirectory);
+        try {
+            //the most specific registration wins regardless of the order
+            Assertions.assertThat(LocalFileChannels.getServerDirectory(URIs.asUri("http://localhost:12345/server/sub")))
+                    .isEqualTo(new File(nestedDirectory, "sub"));
+            Assertions.assertThat(LocalFileChannels.getServerDirectory(URIs.asUri("http://localhost:12345/other")))
+                    .isEqualTo(new File(directory, "other"));
+        } finally {
+            LocalFileChannels.unregisterServerDirectory(serverUri);
+            LocalFileChannels.unregisterServerDirectory(nestedServerUri);
+        }
+        Files.deleteQuietly(directory);
+    }
+
+    private void assertChannel(final IFileChannel<?> channel) throws IOException {
+        channel.setFilename("noexisting");
+        channel.connect();
+        Assertions.checkNull(channel.download());
+        Assertions.checkNull(channel.downloadInputStream());
+        Assertions.checkFalse(channel.exists());
+        Assertions.assertThat(channel.size()).isEqualTo(-1);
+        channel.createUniqueFile();
+        Assertions.checkTrue(channel.exists());
+        Assertions.assertThat(channel.size()).isEqualTo(0);
+        Assertions.checkNotNull(channel.modified());
+        final byte[] write = "hello world".getBytes();
+        channel.upload(write);
+        Assertions.assertThat(channel.size()).isEqualTo(write.length);
+        Assertions.assertThat(channel.download()).isEqualTo(write);
+        Assertions.assertThat(channel.listFiles()).hasSize(1);
+        try (OutputStream out = channel.uploadOutputStream()) {
+            out.write(write, 0, 5);
+            //not visible before the stream is closed
+            Assertions.assertThat(channel.size()).isEqualTo(write.length);
+            Assertions.assertThat(channel.listFiles()).hasSize(1);
+        }
+        Assertions.assertThat(channel.size()).isEqualTo(5);
+        //large enough to be memory mapped for the local file
+        final byte[] large = new byte[2 * 1024 * 1024];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) i;
+        }
+        channel.upload(large);
+        try (InputStream in = channel.downloadInputStream()) {
+            Assertions.assertThat(IOUtils.toByteArray(in)).isEqualTo(large);
+        }
+        channel.delete();
+        Assertions.checkFalse(channel.exists());
+        Assertions.assertThat(channel.listFiles()).isEmpty();
+        channel.close();
+    }
+
+}